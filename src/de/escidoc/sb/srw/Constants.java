@@ -148,6 +148,159 @@ public class Constants {
     public static final String PROPERTY_FILTER_LATEST_RELEASE =
         "cqlTranslator.filterLatestRelease";
     
+    //filter latest releases with a bitset of the documents that survive 
+    //the filtering, computed once per index-version, intersected with 
+    //the query (instead of filtering duplicates while collecting hits).
+    //A document is filtered out if its distinction.type is not the 
+    //priority-value and another document in the index has the same 
+    //distinction.rootPid (independent of the query).
+    public static final String PROPERTY_PRECOMPUTE_LATEST_RELEASE =
+        "cqlTranslator.precomputeLatestRelease";
+    
+    //interval in milliseconds the index gets checked for changes
+    //changed indexes get reopened in the background
+    public static final String PROPERTY_INDEX_REFRESH_INTERVAL =
+        "cqlTranslator.indexRefreshInterval";
+    
+    //comma-separated list of sort-fields
+    //FieldCache gets loaded before a new index-version is used for search
+    public static final String PROPERTY_WARM_SORT_FIELDS =
+        "cqlTranslator.warmSortFields";
+    
+    //prefix of numbered cql-queries (cqlTranslator.warmQuery.1, ...)
+    //executed before a new index-version is used for search
+    public static final String PROPERTY_WARM_QUERY =
+        "cqlTranslator.warmQuery";
+    
+    //lucene Directory-implementation used to open the index
+    //fs (default), mmap, nio, simple or ram
+    public static final String PROPERTY_DIRECTORY_TYPE =
+        "cqlTranslator.directoryType";
+    
+    //max size of one memory-mapped chunk in bytes (directoryType mmap)
+    public static final String PROPERTY_DIRECTORY_MAX_CHUNK_SIZE =
+        "cqlTranslator.directoryMaxChunkSize";
+    
+    //read all index-files when opening the index
+    //so they are in the os file-cache
+    public static final String PROPERTY_DIRECTORY_PRELOAD =
+        "cqlTranslator.directoryPreload";
+    
+    //size of thread-pool for searching index-segments concurrently
+    //0 or not set: search sequentially
+    public static final String PROPERTY_SEARCH_THREADS =
+        "cqlTranslator.searchThreads";
+    
+    //minimum number of segments an index must have 
+    //to get searched concurrently
+    public static final String PROPERTY_SEARCH_MIN_SEGMENTS =
+        "cqlTranslator.searchMinSegments";
+    
+    //maximum number of analyzed queries held in cache
+    //0: dont cache queries
+    public static final String PROPERTY_COMPILED_QUERY_CACHE_SIZE =
+        "cqlTranslator.compiledQueryCacheSize";
+    
+    //maximum memory in megabytes used to cache 
+    //the bitsets of the permission-filters per index-segment
+    //0: dont cache permission-filters
+    public static final String PROPERTY_PERMISSION_FILTER_CACHE_SIZE =
+        "cqlTranslator.permissionFilterCacheSize";
+    
+    //maximum number of bitsets (permission-filters and clauses 
+    //per index-segment) held in the permission-filter cache
+    public static final String PROPERTY_PERMISSION_FILTER_CACHE_ENTRIES =
+        "cqlTranslator.permissionFilterCacheEntries";
+    
+    //time in ms a permission-filter retrieved from AA is cached
+    //0: dont cache permission-filters
+    public static final String PROPERTY_PERMISSION_FILTER_QUERY_CACHE_TTL =
+        "cqlTranslator.permissionFilterQueryCacheTtl";
+    
+    //time in ms an expired permission-filter is used 
+    //if AA is temporarily unavailable
+    public static final String 
+        PROPERTY_PERMISSION_FILTER_QUERY_CACHE_MAX_STALE =
+            "cqlTranslator.permissionFilterQueryCacheMaxStale";
+    
+    //maximum number of cached permission-filters
+    public static final String PROPERTY_PERMISSION_FILTER_QUERY_CACHE_SIZE =
+        "cqlTranslator.permissionFilterQueryCacheSize";
+    
+    //number of threads retrieving permission-filters from AA,
+    //at most 256 further retrievals wait for a thread
+    public static final String PROPERTY_PERMISSION_FILTER_THREADS =
+        "cqlTranslator.permissionFilterThreads";
+    
+    //time in ms a search waits for its permission-filter,
+    //search fails with a diagnostic when exceeded
+    //0: no limit, not set: 30000
+    public static final String PROPERTY_PERMISSION_FILTER_TIMEOUT =
+        "cqlTranslator.permissionFilterTimeout";
+    
+    //connect-timeout in ms for requests to AA and gsearch
+    public static final String PROPERTY_HTTP_CONNECT_TIMEOUT =
+        "cqlTranslator.httpConnectTimeout";
+    
+    //read-timeout in ms for requests to AA and gsearch
+    public static final String PROPERTY_HTTP_READ_TIMEOUT =
+        "cqlTranslator.httpReadTimeout";
+    
+    //maximum number of pooled http-connections
+    //the pool is shared by all srw-databases, 
+    //the limits configured last apply to all of them
+    public static final String PROPERTY_HTTP_MAX_CONNECTIONS =
+        "cqlTranslator.httpMaxConnections";
+    
+    //maximum number of pooled http-connections to one host
+    public static final String PROPERTY_HTTP_MAX_CONNECTIONS_PER_ROUTE =
+        "cqlTranslator.httpMaxConnectionsPerRoute";
+    
+    //maximum time in milliseconds for collecting the hits of a search,
+    //partial results are returned when reached
+    //0 or not set: no limit
+    public static final String PROPERTY_SEARCH_TIMEOUT =
+        "cqlTranslator.searchTimeout";
+    
+    //maximum number of index-generations kept open by result sets 
+    //(resultSetTTL requested by the client), 
+    //further result sets get rendered immediately
+    //0: dont keep index-generations open, not set: 4
+    public static final String PROPERTY_MAX_RESULT_SET_GENERATIONS =
+        "cqlTranslator.maxResultSetGenerations";
+    
+    //number of index-terms a wildcard-, prefix- or range-query 
+    //may expand to before it gets executed as constant-score filter
+    public static final String PROPERTY_FILTER_REWRITE_TERMS =
+        "cqlTranslator.filterRewriteTerms";
+    
+    //maximum number of index-terms a wildcard-, prefix-, fuzzy- or 
+    //range-query may scan, queries scanning more terms are rejected
+    //0 or not set: no limit
+    public static final String PROPERTY_MAX_QUERY_TERMS =
+        "cqlTranslator.maxQueryTerms";
+    
+    //maximum estimated number of postings (sum of docFreq of all terms)
+    //of a query, queries with more postings are rejected
+    //0 or not set: no limit
+    public static final String PROPERTY_MAX_QUERY_POSTINGS =
+        "cqlTranslator.maxQueryPostings";
+    
+    //maximum number of boolean clauses (summed up over all nested 
+    //boolean queries) of a query, queries with more clauses are rejected
+    //0: no limit, not set: maxClauseCount of BooleanQuery (1024)
+    public static final String PROPERTY_MAX_QUERY_CLAUSES =
+        "cqlTranslator.maxQueryClauses";
+    
+    //comma-separated list of fieldname:type with type date, long or double.
+    //range-queries (<, >, <=, >=) on these fields become numeric 
+    //range-queries and sorting uses primitive FieldCache-arrays
+    //if the indexer wrote the field as NumericField 
+    //(default precisionStep, dates as milliseconds UTC).
+    //Otherwise string-ranges and string-sorting are used.
+    public static final String PROPERTY_NUMERIC_FIELDS =
+        "cqlTranslator.numericFields";
+    
     public static final String PROPERTY_HIGHLIGHT_TERM_FULLTEXT =
         "cqlTranslator.highlightTermFulltext";
 
@@ -43,6 +43,7 @@ import java.io.StringReader;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 
@@ -68,6 +69,7 @@ import org.z3950.zing.cql.CQLParseException;
 import ORG.oclc.os.SRW.Record;
 import ORG.oclc.os.SRW.RecordIterator;
 import ORG.oclc.os.SRW.SRWDiagnostic;
+import de.escidoc.sb.srw.lucene.IndexDirectoryFactory;
 
 /**
  * Class overwrites org.osuosl.srw.SRWDatabaseImpl. This is done because: -we
@@ -84,6 +86,8 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
     
     private static final int DIAGNOSTIC_CODE_EIGHT = 8;
 
+    private static final int DIAGNOSTIC_CODE_FIFTY_NINE = 59;
+
     private static final int DIAGNOSTIC_CODE_SEVENTY_ONE = 71;
 
     private static final int MILLISECONDS_PER_SECOND = 1000;
@@ -111,6 +115,7 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
         PositiveInteger startRec; // record number to start with
         ResolvingQueryResult results; // results of search, array of
         // Ids/handles
+        ResolvingQueryResult notKeptResults = null; // results to close
 
         try {
             MessageContext msgContext = MessageContext.getCurrentContext();
@@ -262,6 +267,8 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
             	soapRequest.setRecordPacking(request.getRecordPacking());
             	soapRequest.setRecordSchema(request.getRecordSchema());
             	soapRequest.setRecordXPath(request.getRecordXPath());
+            	// MIH: only a resultSetTTL requested by the client is passed, 
+            	// translator then keeps the index-reader of the result set
             	soapRequest.setResultSetTTL(request.getResultSetTTL());
             	soapRequest.setSortKeys(request.getSortKeys());
             	soapRequest.setStartRecord(request.getStartRecord());
@@ -280,6 +287,12 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
                         .search(queryRoot, extraData, soapRequest, dbname);
 
                 results.setResolver(getResolver());
+                String extraResponseData =
+                    getExtraResponseData(results, soapRequest);
+                if (extraResponseData != null) {
+                    setExtraResponseData(
+                        response.getSearchRetrieveResponse(), extraResponseData);
+                }
 
                 /**
                  * if results were found save the result set and setup the timer
@@ -297,6 +310,17 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
                     response.getSearchRetrieveResponse().setResultSetIdleTime(new PositiveInteger(Integer
                         .toString(resultSetTTL)));
                 }
+                else {
+                    // release resources after records are rendered
+                    notKeptResults = results;
+                }
+            }
+
+            if (results.isPartial()) {
+                // search-timeout reached, records found so far are returned
+                response.setSearchRetrieveResponse(diagnostic(
+                    DIAGNOSTIC_CODE_FIFTY_NINE, "search timeout exceeded",
+                    response.getSearchRetrieveResponse()));
             }
 
             int postings = (int) results.getNumberOfRecords();
@@ -396,6 +420,11 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
                 response.getSearchRetrieveResponse()));
         	return response;
         }
+        finally {
+            if (notKeptResults != null) {
+                notKeptResults.close();
+            }
+        }
 
     }
 
@@ -423,6 +452,7 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
         ExtraDataType extraData = null; // extra params sent with request
         ResolvingQueryResult results; // results of search, array of
         // Ids/handles
+        ResolvingQueryResult notKeptResults = null; // results to close
 
         try {
             MessageContext msgContext = MessageContext.getCurrentContext();
@@ -557,6 +587,9 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
                 // 3rd parameter: request (to get sortKeys,
                 // startRecord, maxRecords..)!
                 // 4th parameter: dbname (to get filterQuery for db)!
+                // MIH: only a resultSetTTL requested by the client 
+                // is in the request, 
+                // translator then keeps the index-reader of the result set
                 results =
                     (ResolvingQueryResult) (
                         (EscidocTranslator) getCQLTranslator())
@@ -564,6 +597,11 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
 
                 results.setResolver(getResolver());
                 results.setExtraDataType(extraData);
+                String extraResponseData =
+                    getExtraResponseData(results, request);
+                if (extraResponseData != null) {
+                    setExtraResponseData(response, extraResponseData);
+                }
 
                 /**
                  * if results were found save the result set and setup the timer
@@ -581,6 +619,16 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
                     response.setResultSetIdleTime(new PositiveInteger(Integer
                         .toString(resultSetTTL)));
                 }
+                else {
+                    // release resources after records are rendered
+                    notKeptResults = results;
+                }
+            }
+
+            if (results.isPartial()) {
+                // search-timeout reached, records found so far are returned
+                diagnostic(DIAGNOSTIC_CODE_FIFTY_NINE,
+                    "search timeout exceeded", response);
             }
 
             int postings = (int) results.getNumberOfRecords();
@@ -698,9 +746,45 @@ public class EscidocSRWDatabaseImpl extends org.osuosl.srw.SRWDatabaseImpl {
             return diagnostic(SRWDiagnostic.GeneralSystemError, e.getMessage(),
                 response);
         }
+        finally {
+            if (notKeptResults != null) {
+                notKeptResults.close();
+            }
+        }
 
     }
 
+    /**
+     * returns configInfo for explainPlan.
+     * Overwritten to additionally show the settings 
+     * of the lucene-Directory used to open the index.
+     * 
+     * @return String configInfo xml for explainPlan
+     * @sb
+     */
+    @Override
+    public String getConfigInfo() {
+        String configInfo = super.getConfigInfo();
+        if (!(getCQLTranslator() instanceof EscidocTranslator)
+            || ((EscidocTranslator) getCQLTranslator()).getIndexPath() == null) {
+            return configInfo;
+        }
+        StringBuffer sb = new StringBuffer();
+        Map<String, String> settings = IndexDirectoryFactory.getInstance()
+            .getSettings(((EscidocTranslator) getCQLTranslator()).getIndexPath());
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            sb.append("          <setting type=\"").append(setting.getKey())
+                .append("\">").append(setting.getValue()).append("</setting>\n");
+        }
+        int pos = configInfo.lastIndexOf("</configInfo>");
+        if (pos == -1) {
+            return configInfo;
+        }
+        pos = configInfo.lastIndexOf('\n', pos) + 1;
+        return configInfo.substring(0, pos) + sb.toString() 
+                        + configInfo.substring(pos);
+    }
+
     /**
      * returns info about databases for explainPlan.
      * Overwritten because schema 2.0 doesnt allow 
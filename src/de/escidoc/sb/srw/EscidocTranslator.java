@@ -39,6 +39,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +48,7 @@ import org.apache.axis.types.NonNegativeInteger;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.FieldComparatorSource;
 import org.apache.lucene.search.Query;
@@ -66,6 +68,7 @@ import org.z3950.zing.cql.Modifier;
 import org.z3950.zing.cql.ModifierSet;
 
 import de.escidoc.core.common.util.configuration.EscidocConfiguration;
+import de.escidoc.sb.srw.lucene.queryParser.EscidocQueryParser;
 
 import ORG.oclc.os.SRW.QueryResult;
 
@@ -153,6 +156,71 @@ public abstract class EscidocTranslator extends LuceneTranslator {
         defaultNumberOfScanTerms = Integer.parseInt(inp);
     }
 
+    /**
+     * Connect-timeout for requests to escidoc-services (ms).
+     */
+    private int httpConnectTimeout = HttpClientPool.DEFAULT_CONNECT_TIMEOUT;
+
+    /**
+     * Read-timeout for requests to escidoc-services (ms).
+     */
+    private int httpReadTimeout = HttpClientPool.DEFAULT_READ_TIMEOUT;
+
+    /**
+     * @return int httpConnectTimeout.
+     */
+    public int getHttpConnectTimeout() {
+        return httpConnectTimeout;
+    }
+
+    /**
+     * @return int httpReadTimeout.
+     */
+    public int getHttpReadTimeout() {
+        return httpReadTimeout;
+    }
+
+    /**
+     * Read timeouts for requests to escidoc-services 
+     * and connection-limits of the HttpClientPool from properties.
+     * 
+     * @param properties
+     *            properties
+     */
+    protected void initHttpClient(final Properties properties) {
+        String temp;
+        try {
+            temp = (String) properties.get(
+                    Constants.PROPERTY_HTTP_CONNECT_TIMEOUT);
+            if (temp != null && temp.trim().length() != 0) {
+                httpConnectTimeout = Integer.parseInt(temp.trim());
+            }
+            temp = (String) properties.get(
+                    Constants.PROPERTY_HTTP_READ_TIMEOUT);
+            if (temp != null && temp.trim().length() != 0) {
+                httpReadTimeout = Integer.parseInt(temp.trim());
+            }
+            int maxConnections = HttpClientPool.DEFAULT_MAX_CONNECTIONS;
+            int maxConnectionsPerRoute = 
+                HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+            temp = (String) properties.get(
+                    Constants.PROPERTY_HTTP_MAX_CONNECTIONS);
+            if (temp != null && temp.trim().length() != 0) {
+                maxConnections = Integer.parseInt(temp.trim());
+            }
+            temp = (String) properties.get(
+                    Constants.PROPERTY_HTTP_MAX_CONNECTIONS_PER_ROUTE);
+            if (temp != null && temp.trim().length() != 0) {
+                maxConnectionsPerRoute = Integer.parseInt(temp.trim());
+            }
+            HttpClientPool.getInstance().setMaxConnections(
+                    maxConnections, maxConnectionsPerRoute);
+        }
+        catch (NumberFormatException e) {
+            log.error(e);
+        }
+    }
+
 	/**
 	 * overwritten method from LuceneTranslator. Just calls new implemented
 	 * method in this class, but without SearchRetrieveRequestType-object.
@@ -331,13 +399,7 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 	protected CQLTermNode getDefaultReplacedCqlTermNode(final CQLTermNode ctn)
 			throws SRWDiagnostic {
 		CQLTermNode replacedCtn = ctn;
-		// eventually replace cql.serverChoice with defaultIndexField///////////
-		String qualifier = ctn.getIndex();
-		if (qualifier.matches(".*cql\\.serverChoice.*")
-				&& getDefaultIndexField() != null) {
-			qualifier = qualifier.replaceAll("cql\\.serverChoice",
-					getDefaultIndexField());
-		}
+		String qualifier = getDefaultReplacedIndex(ctn.getIndex());
 		String term = ctn.getTerm();
 		term = escapeSpecialCharacters(term);
 		qualifier = escapeSpecialCharacters(qualifier);
@@ -346,6 +408,23 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 		return replacedCtn;
 	}
 
+	/**
+	 * eventually replace cql.serverChoice with defaultIndexField.
+	 * 
+	 * @param index
+	 *            index of CQLTermNode
+	 * @return String replaced index
+	 */
+	protected String getDefaultReplacedIndex(final String index) {
+		String qualifier = index;
+		if (qualifier.matches(".*cql\\.serverChoice.*")
+				&& getDefaultIndexField() != null) {
+			qualifier = qualifier.replaceAll("cql\\.serverChoice",
+					getDefaultIndexField());
+		}
+		return qualifier;
+	}
+
 	/**
 	 * special characters that Lucene requires to escape: 
 	 * + - & | ! ( ) { } [ ] ^ " ~ * ? : \
@@ -400,31 +479,66 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 	@Override
     public Query makeQuery(final CQLNode node, final Query leftQuery)
 			throws SRWDiagnostic {
+		return makeQuery(node, leftQuery, null);
+	}
+
+	/**
+	 * Convert CQLNode to lucene-query.
+	 * If a parser is given, the terms of the CQLTermNodes get analyzed 
+	 * with the parser while walking the cql-tree, 
+	 * so the lucene-query doesnt have to be written 
+	 * to a String and parsed again.
+	 * If parser is null, the terms are not analyzed.
+	 * 
+	 * @param node
+	 *            CQLNode
+	 * @param leftQuery
+	 *            Query
+	 * @param parser
+	 *            EscidocQueryParser used to analyze terms (may be null)
+	 * @return Query query (null if analyzer removed all terms)
+	 * @throws SRWDiagnostic
+	 *             e
+	 */
+    public Query makeQuery(final CQLNode node, final Query leftQuery, 
+            final EscidocQueryParser parser) throws SRWDiagnostic {
 		Query query = null;
 
 		if (node instanceof CQLBooleanNode) {
 			CQLBooleanNode cbn = (CQLBooleanNode) node;
 
-			Query left = makeQuery(cbn.left);
-			Query right = makeQuery(cbn.right, left);
+			Query left = makeQuery(cbn.left, null, parser);
+			Query right = makeQuery(cbn.right, left, parser);
 			if (node instanceof CQLAndNode) {
 				query = new BooleanQuery();
 				log.debug("  Anding left and right in new query");
-				AndQuery((BooleanQuery) query, left);
-				AndQuery((BooleanQuery) query, right);
+				if (left != null) {
+					AndQuery((BooleanQuery) query, left);
+				}
+				if (right != null) {
+					AndQuery((BooleanQuery) query, right);
+				}
 
 			} else if (node instanceof CQLNotNode) {
 
 				query = new BooleanQuery();
 				log.debug("  Notting left and right in new query");
-				AndQuery((BooleanQuery) query, left);
-				NotQuery((BooleanQuery) query, right);
+				if (left != null) {
+					AndQuery((BooleanQuery) query, left);
+				}
+				if (right != null) {
+					NotQuery((BooleanQuery) query, right);
+				}
 
 			} else if (node instanceof CQLOrNode) {
 				log.debug("  Or'ing left and right in new query");
 				query = new BooleanQuery();
-				OrQuery((BooleanQuery) query, left);
-				OrQuery((BooleanQuery) query, right);
+				if (left != null) {
+					OrQuery((BooleanQuery) query, left);
+				}
+				if (right != null) {
+					OrQuery((BooleanQuery) query, right);
+				}
 			} else {
 				throw new RuntimeException("Unknown boolean");
 			}
@@ -436,7 +550,14 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 			// this is done because cql.serverChoice
 			// gets replaced with defaultIndexField.
 			// Afterwards indexFields has to get analyzed
-			ctn = getDefaultReplacedCqlTermNode(ctn);
+			// If terms get analyzed by the parser, 
+			// only cql.serverChoice has to be replaced
+			if (parser != null) {
+			    ctn = new CQLTermNode(getDefaultReplacedIndex(ctn.getIndex()),
+			            ctn.getRelation(), ctn.getTerm());
+			} else {
+			    ctn = getDefaultReplacedCqlTermNode(ctn);
+			}
 			// /////////////////////////////////////////////////////////////////
 			// MIH get modifiers////////////////////////////////////////////////
 			Vector<Modifier> modifiers = ctn.getRelation().getModifiers();
@@ -463,36 +584,40 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 
 			if (!index.equals("")) {
 				if (relation.equals("=") || relation.equals("scr")) {
-					query = createTermQuery(index, ctn.getTerm() + modifierStr,
-							relation);
+					query = createTermQuery(index, ctn.getTerm(), modifierStr,
+							relation, parser);
                 } else if (relation.equals("<")) {
                     String term = ctn.getTerm();
                     if (term == null || term.equals("")) {
                         term = "0";
                     }
                     // term is upperbound, exclusive
-                    query = new TermRangeQuery(index, null, ctn.getTerm(), false, false);
+                    query = createRangeQuery(
+                            index, null, ctn.getTerm(), false, parser);
                 } else if (relation.equals(">")) {
                     String term = ctn.getTerm();
                     if (term == null || term.equals("")) {
                         term = "0";
                     }
                     // term is lowerbound, exclusive
-                    query = new TermRangeQuery(index, ctn.getTerm(), null, false, false);
+                    query = createRangeQuery(
+                            index, ctn.getTerm(), null, false, parser);
                 } else if (relation.equals("<=")) {
                     String term = ctn.getTerm();
                     if (term == null || term.equals("")) {
                         term = "0";
                     }
                     // term is upperbound, inclusive
-                    query = new TermRangeQuery(index, null, ctn.getTerm(), true, true);
+                    query = createRangeQuery(
+                            index, null, ctn.getTerm(), true, parser);
                 } else if (relation.equals(">=")) {
                     String term = ctn.getTerm();
                     if (term == null || term.equals("")) {
                         term = "0";
                     }
                     // term is lowerbound, inclusive
-                    query = new TermRangeQuery(index, ctn.getTerm(), null, true, true);
+                    query = createRangeQuery(
+                            index, ctn.getTerm(), null, true, parser);
 				} else if (relation.equals("<>")) {
 					/**
 					 * <> is an implicit NOT.
@@ -519,27 +644,29 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 					}
 					// create a term query for the term
 					// then NOT it to the boolean query
-					Query termQuery = createTermQuery(index, ctn.getTerm()
-							+ modifierStr, relation);
-					NotQuery((BooleanQuery) query, termQuery);
+					Query termQuery = createTermQuery(index, ctn.getTerm(),
+							modifierStr, relation, parser);
+					if (termQuery != null) {
+						NotQuery((BooleanQuery) query, termQuery);
+					}
 
 				} else if (relation.equals("any")) {
 					// implicit or
-					query = createTermQuery(index, ctn.getTerm() + modifierStr,
-							relation);
+					query = createTermQuery(index, ctn.getTerm(), modifierStr,
+							relation, parser);
 
 				} else if (relation.equals("all")) {
 					// implicit and
-					query = createTermQuery(index, ctn.getTerm() + modifierStr,
-							relation);
+					query = createTermQuery(index, ctn.getTerm(), modifierStr,
+							relation, parser);
 				} else if (relation.equals("exact")) {
 					/**
 					 * implicit and. this query will only return accurate
 					 * results for indexes that have been indexed using a
 					 * non-tokenizing analyzer
 					 */
-					query = createTermQuery(index, ctn.getTerm() + modifierStr,
-							relation);
+					query = createTermQuery(index, ctn.getTerm(), modifierStr,
+							relation, parser);
 				} else {
 					// anything else is unsupported
 					throw new SRWDiagnostic(DIAGNOSTIC_CODE_NINETEEN, ctn
@@ -549,7 +676,7 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 			}
         } else if (node instanceof CQLSortNode) {
             CQLSortNode csn = (CQLSortNode) node;
-            return makeQuery(csn.subtree, leftQuery);
+            return makeQuery(csn.subtree, leftQuery, parser);
 		} else {
 			throw new SRWDiagnostic(DIAGNOSTIC_CODE_FOURTYSEVEN,
 					"UnknownCQLNode: " + node + ")");
@@ -557,6 +684,72 @@ public abstract class EscidocTranslator extends LuceneTranslator {
 		return query;
 	}
 
+	/**
+	 * Create query for term of CQLTermNode.
+	 * If parser is null, create unanalyzed query.
+	 * 
+	 * @param index
+	 *            index-field
+	 * @param term
+	 *            term
+	 * @param modifierStr
+	 *            ~ if fuzzy, otherwise empty String
+	 * @param relation
+	 *            relation
+	 * @param parser
+	 *            EscidocQueryParser used to analyze term (may be null)
+	 * @return Query query (null if analyzer removed all terms)
+	 * @throws SRWDiagnostic
+	 *             e
+	 */
+	private Query createTermQuery(final String index, final String term,
+			final String modifierStr, final String relation,
+			final EscidocQueryParser parser) throws SRWDiagnostic {
+		if (parser == null) {
+			return createTermQuery(index, term + modifierStr, relation);
+		}
+		try {
+			return parser.getCqlTermQuery(
+					index, term, relation, modifierStr.length() > 0);
+		} catch (ParseException e) {
+			throw new SRWDiagnostic(
+			        SRWDiagnostic.QuerySyntaxError, e.getMessage());
+		}
+	}
+
+	/**
+	 * Create range-query for term of CQLTermNode.
+	 * If parser is null, create unanalyzed query.
+	 * 
+	 * @param index
+	 *            index-field
+	 * @param lower
+	 *            lower bound or null
+	 * @param upper
+	 *            upper bound or null
+	 * @param inclusive
+	 *            boundary-inclusive?
+	 * @param parser
+	 *            EscidocQueryParser used to analyze terms (may be null)
+	 * @return Query query
+	 * @throws SRWDiagnostic
+	 *             e
+	 */
+	private Query createRangeQuery(final String index, final String lower,
+			final String upper, final boolean inclusive,
+			final EscidocQueryParser parser) throws SRWDiagnostic {
+		if (parser == null) {
+			return new TermRangeQuery(
+			        index, lower, upper, inclusive, inclusive);
+		}
+		try {
+			return parser.getCqlRangeQuery(index, lower, upper, inclusive);
+		} catch (ParseException e) {
+			throw new SRWDiagnostic(
+			        SRWDiagnostic.QuerySyntaxError, e.getMessage());
+		}
+	}
+
     /**
      * Create Lucene Sort-Object out of CQLNode.
      * 
@@ -0,0 +1,520 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.RequestAddCookies;
+import org.apache.http.client.protocol.ResponseProcessCookies;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+import de.escidoc.core.common.util.logger.AppLogger;
+
+/**
+ * Singleton that holds one pooled http-client for all requests 
+ * to the escidoc-services (AA, gsearch).
+ * Connections are kept alive and reused, 
+ * the number of connections per host and in total is limited.
+ * The limits are global: the pool is shared by all srw-databases, 
+ * the limits set last apply to all of them.
+ * Connect- and read-timeout are given with each request,
+ * so they can be configured for each srw-database.
+ * 
+ * The response is not read into a String, 
+ * the StreamHandler reads it directly from the connection.
+ * 
+ * @author MIH
+ */
+public final class HttpClientPool {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 100;
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    public static final int DEFAULT_READ_TIMEOUT = 180000;
+
+    /** Connections idle for longer than this get closed (ms). */
+    private static final long IDLE_TIMEOUT = 30000;
+
+    /** Upper bounds of the latency-histogram buckets (ms). */
+    private static final long[] LATENCY_BUCKETS = 
+                        {10, 50, 100, 500, 1000, 5000, Long.MAX_VALUE};
+
+    private static HttpClientPool instance = null;
+
+    private static AppLogger log =
+        new AppLogger(HttpClientPool.class.getName());
+
+    private volatile PooledClient httpClient;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    /** Thread that closes idle connections. */
+    private final ScheduledExecutorService idleConnectionCloser =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "HttpClientPool-idle");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    private final AtomicInteger maxActiveRequests = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong saturatedRequests = new AtomicLong();
+
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    private final AtomicLongArray latencies = 
+                        new AtomicLongArray(LATENCY_BUCKETS.length);
+
+    /**
+     * private Constructor for Singleton.
+     * 
+     */
+    private HttpClientPool() {
+        httpClient = createHttpClient();
+        idleConnectionCloser.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                PooledClient client = httpClient;
+                client.connectionManager.closeExpiredConnections();
+                client.connectionManager.closeIdleConnections(
+                        IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }, IDLE_TIMEOUT, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Only initialize Object once.
+     * 
+     * @return HttpClientPool HttpClientPool
+     */
+    public static synchronized HttpClientPool getInstance() {
+        if (instance == null) {
+            instance = new HttpClientPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Set connection-limits of the pool shared by all srw-databases. 
+     * If they change, a new pool is created, 
+     * the old pool gets shut down 
+     * when its running requests finished.
+     * 
+     * @param maxTotal
+     *            maximum number of connections
+     * @param maxPerRoute
+     *            maximum number of connections to one host
+     */
+    public synchronized void setMaxConnections(
+            final int maxTotal, final int maxPerRoute) {
+        if (maxTotal != maxConnections 
+                || maxPerRoute != maxConnectionsPerRoute) {
+            maxConnections = maxTotal;
+            maxConnectionsPerRoute = maxPerRoute;
+            PooledClient old = httpClient;
+            httpClient = createHttpClient();
+            old.retire();
+        }
+    }
+
+    /**
+     * Get the current client and register a request on it.
+     * 
+     * @return PooledClient client, not retired
+     */
+    private PooledClient acquire() {
+        while (true) {
+            PooledClient client = httpClient;
+            client.activeRequests.incrementAndGet();
+            if (!client.retired) {
+                return client;
+            }
+            // limits changed meanwhile, use new client
+            client.release();
+        }
+    }
+
+    /**
+     * Execute GET-request and let the StreamHandler read the response.
+     * Connection is given back to the pool afterwards.
+     * 
+     * @param url
+     *            url
+     * @param cookie
+     *            cookie to send (may be null)
+     * @param connectTimeout
+     *            connect-timeout in ms
+     * @param readTimeout
+     *            read-timeout in ms
+     * @param handler
+     *            StreamHandler that reads the response
+     * @return T result of the StreamHandler
+     * @throws IOException
+     *             connection failed or status >= 500
+     * @throws Exception
+     *             other status than 200 or exception of the StreamHandler
+     */
+    public <T> T get(final URL url, final Cookie cookie, 
+            final int connectTimeout, final int readTimeout, 
+            final StreamHandler<T> handler) throws Exception {
+        HttpGet get = new HttpGet(toUri(url));
+        HttpConnectionParams.setConnectionTimeout(
+                get.getParams(), connectTimeout);
+        HttpConnectionParams.setSoTimeout(get.getParams(), readTimeout);
+        ConnManagerParams.setTimeout(get.getParams(), connectTimeout);
+        if (cookie != null) {
+            get.addHeader(
+                    "Cookie", cookie.getName() + "=" + cookie.getValue());
+        }
+
+        requests.incrementAndGet();
+        int active = activeRequests.incrementAndGet();
+        if (active > maxConnectionsPerRoute || active > maxConnections) {
+            saturatedRequests.incrementAndGet();
+        }
+        int maxActive = maxActiveRequests.get();
+        while (active > maxActive 
+                && !maxActiveRequests.compareAndSet(maxActive, active)) {
+            maxActive = maxActiveRequests.get();
+        }
+        long time = System.currentTimeMillis();
+        boolean success = false;
+        PooledClient client = acquire();
+        try {
+            HttpResponse response = client.httpClient.execute(get);
+            HttpEntity entity = response.getEntity();
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= 500) {
+                throw new IOException("request to " + url 
+                        + " failed with status " + status);
+            } else if (status != 200) {
+                throw new HttpStatusException(status, "request to " + url 
+                        + " failed with status " + status);
+            }
+            if (entity == null) {
+                throw new IOException("no response from " + url);
+            }
+            String contentType = null;
+            Header contentTypeHeader = entity.getContentType();
+            if (contentTypeHeader != null) {
+                contentType = contentTypeHeader.getValue();
+            }
+            T result = handler.handle(entity.getContent(), contentType);
+            entity.consumeContent();
+            success = true;
+            return result;
+        } finally {
+            if (!success) {
+                // dont read rest of response, close connection
+                get.abort();
+                failedRequests.incrementAndGet();
+            }
+            client.release();
+            activeRequests.decrementAndGet();
+            time = System.currentTimeMillis() - time;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                if (time < LATENCY_BUCKETS[i]) {
+                    latencies.incrementAndGet(i);
+                    break;
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("request to " + url.getPath() + " took " + time 
+                        + " ms (" + getStatistics() + ")");
+            }
+        }
+    }
+
+    /**
+     * @return number of requests.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of requests that were started while 
+     * the connection-limit was reached.
+     */
+    public long getSaturatedRequests() {
+        return saturatedRequests.get();
+    }
+
+    /**
+     * @return number of failed requests.
+     */
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    /**
+     * @return number of currently running requests.
+     */
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    /**
+     * @return number of requests per latency-bucket 
+     * (&lt;10, &lt;50, &lt;100, &lt;500, &lt;1000, &lt;5000, &gt;=5000 ms).
+     */
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[LATENCY_BUCKETS.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencies.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * @return String statistics for logging.
+     */
+    public String getStatistics() {
+        StringBuffer statistics = new StringBuffer();
+        statistics.append("requests=").append(requests.get())
+            .append(", failed=").append(failedRequests.get())
+            .append(", active=").append(activeRequests.get())
+            .append(", maxActive=").append(maxActiveRequests.get())
+            .append(", saturated=").append(saturatedRequests.get())
+            .append(", pooledConnections=").append(
+                httpClient.connectionManager.getConnectionsInPool())
+            .append(", latency=[");
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            if (i > 0) {
+                statistics.append(", ");
+            }
+            if (LATENCY_BUCKETS[i] == Long.MAX_VALUE) {
+                statistics.append(">=").append(LATENCY_BUCKETS[i - 1]);
+            } else {
+                statistics.append('<').append(LATENCY_BUCKETS[i]);
+            }
+            statistics.append("ms:").append(latencies.get(i));
+        }
+        return statistics.append(']').toString();
+    }
+
+    /**
+     * Create http-client with pooled connections.
+     * Cookies are not stored in the client, 
+     * because the client is shared by all users.
+     * 
+     * @return PooledClient http-client
+     */
+    private PooledClient createHttpClient() {
+        HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpConnectionParams.setConnectionTimeout(
+                params, DEFAULT_CONNECT_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(params, DEFAULT_READ_TIMEOUT);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpClientParams.setRedirecting(params, true);
+        ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+        ConnManagerParams.setMaxConnectionsPerRoute(
+                params, new ConnPerRouteBean(maxConnectionsPerRoute));
+
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme(
+                "http", PlainSocketFactory.getSocketFactory(), 80));
+        schemeRegistry.register(new Scheme(
+                "https", SSLSocketFactory.getSocketFactory(), 443));
+
+        ThreadSafeClientConnManager connectionManager = 
+            new ThreadSafeClientConnManager(params, schemeRegistry);
+        DefaultHttpClient client = 
+            new DefaultHttpClient(connectionManager, params);
+        client.removeRequestInterceptorByClass(RequestAddCookies.class);
+        client.removeResponseInterceptorByClass(ResponseProcessCookies.class);
+        return new PooledClient(client, connectionManager);
+    }
+
+    /**
+     * http-client with its connection-manager 
+     * and the number of requests running on it. 
+     * A retired client is shut down when its last request finished.
+     */
+    private static final class PooledClient {
+
+        private final DefaultHttpClient httpClient;
+
+        private final ThreadSafeClientConnManager connectionManager;
+
+        private final AtomicInteger activeRequests = new AtomicInteger();
+
+        private final AtomicBoolean shutdown = new AtomicBoolean();
+
+        private volatile boolean retired = false;
+
+        private PooledClient(final DefaultHttpClient httpClient, 
+                final ThreadSafeClientConnManager connectionManager) {
+            this.httpClient = httpClient;
+            this.connectionManager = connectionManager;
+        }
+
+        /**
+         * No new requests are started on this client, 
+         * shut it down if no request is running.
+         */
+        private void retire() {
+            retired = true;
+            if (activeRequests.get() == 0) {
+                shutdown();
+            }
+        }
+
+        /**
+         * Unregister a finished request, 
+         * shut down a retired client after its last request.
+         */
+        private void release() {
+            if (activeRequests.decrementAndGet() == 0 && retired) {
+                shutdown();
+            }
+        }
+
+        private void shutdown() {
+            if (shutdown.compareAndSet(false, true)) {
+                connectionManager.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Convert URL to URI, quote illegal characters if necessary.
+     * 
+     * @param url
+     *            url
+     * @return URI uri
+     * @throws URISyntaxException
+     *             e
+     */
+    private static URI toUri(final URL url) throws URISyntaxException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            return new URI(url.getProtocol(), url.getUserInfo(), 
+                    url.getHost(), url.getPort(), url.getPath(), 
+                    url.getQuery(), url.getRef());
+        }
+    }
+
+    /**
+     * Reads the response of a request.
+     * 
+     * @param <T>
+     *            result
+     */
+    public interface StreamHandler<T> {
+
+        /**
+         * Read response.
+         * 
+         * @param in
+         *            response-body
+         * @param contentType
+         *            content-type of the response (may be null)
+         * @return T result
+         * @throws Exception
+         *             e
+         */
+        T handle(InputStream in, String contentType) throws Exception;
+    }
+
+    /**
+     * Response had another status than 200.
+     * 
+     */
+    public static class HttpStatusException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        /**
+         * Constructor.
+         * 
+         * @param statusCode
+         *            http-status
+         * @param message
+         *            message
+         */
+        public HttpStatusException(
+                final int statusCode, final String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * @return int http-status.
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+}
@@ -0,0 +1,465 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.osuosl.srw.SRWDiagnostic;
+
+import de.escidoc.core.common.util.logger.AppLogger;
+
+/**
+ * Singleton that caches the permission-filter queries 
+ * retrieved by a PermissionFilterGenerator.
+ * 
+ * Key is dbName, handle, asUserId and withRoleId.
+ * The generator is not part of the key: pooled translators 
+ * of the same database each have their own generator, 
+ * an entry is retrieved with the generator of the translator 
+ * that created it.
+ * A cached permission-filter is used for ttl milliseconds.
+ * If a permission-filter is requested after refreshAhead of its ttl passed,
+ * it gets refreshed in background while the cached value is returned.
+ * If retrieving an expired permission-filter fails because
+ * the service is temporarily unavailable, 
+ * the stale value is returned for maxStale milliseconds after expiry.
+ * Concurrent requests for the same key only retrieve the 
+ * permission-filter once.
+ * 
+ * @author MIH
+ */
+public final class PermissionFilterQueryCache {
+
+    /** Default time a permission-filter is used (ms). */
+    public static final long DEFAULT_TTL = 60000;
+
+    /** Default time an expired permission-filter may be used 
+     * if the service is temporarily unavailable (ms). */
+    public static final long DEFAULT_MAX_STALE = 300000;
+
+    public static final int DEFAULT_SIZE = 10000;
+
+    /** Part of ttl after that a permission-filter gets refreshed. */
+    private static final double REFRESH_AHEAD = 0.8;
+
+    private static final int REFRESH_THREADS = 2;
+
+    private static PermissionFilterQueryCache instance = null;
+
+    private static AppLogger log =
+        new AppLogger(PermissionFilterQueryCache.class.getName());
+
+    private LRUMap entries = new LRUMap(DEFAULT_SIZE);
+
+    private volatile long ttl = DEFAULT_TTL;
+
+    private volatile long maxStale = DEFAULT_MAX_STALE;
+
+    /** Threads that refresh permission-filters before they expire. */
+    private final ExecutorService refresher =
+        Executors.newFixedThreadPool(REFRESH_THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, 
+                        "PermissionFilterQueryCache-refresher-" 
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong staleHits = new AtomicLong();
+
+    private final AtomicLong fetches = new AtomicLong();
+
+    private final AtomicLong fetchErrors = new AtomicLong();
+
+    private final AtomicLong fetchTime = new AtomicLong();
+
+    private final AtomicLong maxFetchTime = new AtomicLong();
+
+    /**
+     * private Constructor for Singleton.
+     * 
+     */
+    private PermissionFilterQueryCache() {
+    }
+
+    /**
+     * Only initialize Object once.
+     * 
+     * @return PermissionFilterQueryCache PermissionFilterQueryCache
+     */
+    public static synchronized PermissionFilterQueryCache getInstance() {
+        if (instance == null) {
+            instance = new PermissionFilterQueryCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Set maximum number of cached permission-filters.
+     * Removes all cached permission-filters if size changes.
+     * 
+     * @param size
+     *            maximum number of cached permission-filters
+     */
+    public synchronized void setSize(final int size) {
+        if (size != entries.maxSize()) {
+            entries = new LRUMap(size);
+        }
+    }
+
+    /**
+     * @param inp
+     *            time a permission-filter is used (ms).
+     */
+    public void setTtl(final long inp) {
+        ttl = inp;
+    }
+
+    /**
+     * @param inp
+     *            time an expired permission-filter may be used
+     *            if the service is temporarily unavailable (ms).
+     */
+    public void setMaxStale(final long inp) {
+        maxStale = inp;
+    }
+
+    /**
+     * get permission-filter subquery from cache 
+     * or from the PermissionFilterGenerator.
+     * 
+     * @param generator
+     *            PermissionFilterGenerator
+     * @param dbName
+     *            dbName
+     * @param handle
+     *            handle
+     * @param asUserId
+     *            asUserId
+     * @param withRoleId
+     *            withRoleId
+     * @return permission-filter subquery
+     * @throws SRWDiagnostic
+     *             e
+     */
+    public String getPermissionFilter(
+            final PermissionFilterGenerator generator, 
+            final String dbName, final String handle, 
+            final String asUserId, final String withRoleId) 
+                                                throws SRWDiagnostic {
+        Entry entry = getEntry(generator, dbName, handle, asUserId, withRoleId);
+        String value = entry.value;
+        long age = System.currentTimeMillis() - entry.fetched;
+        if (value != null && age < ttl) {
+            hits.incrementAndGet();
+            if (age > ttl * REFRESH_AHEAD) {
+                refresh(entry);
+            }
+            return value;
+        }
+        misses.incrementAndGet();
+        try {
+            return fetch(entry);
+        } catch (SRWDiagnostic e) {
+            // stale-while-revalidate
+            value = entry.value;
+            if (value != null 
+                    && e.code == SRWDiagnostic.SystemTemporarilyUnavailable
+                    && System.currentTimeMillis() - entry.fetched 
+                                                    < ttl + maxStale) {
+                staleHits.incrementAndGet();
+                log.warn("using expired permission-filter for " + dbName 
+                        + ": " + e.addInfo);
+                return value;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return String statistics for logging.
+     */
+    public String getStatistics() {
+        long requests = hits.get() + misses.get();
+        long fetchCount = fetches.get();
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return "size=" + size 
+            + ", hits=" + hits.get() + ", misses=" + misses.get() 
+            + ", hitRatio=" 
+            + (requests == 0 ? 0 : (hits.get() * 100 / requests)) + "%" 
+            + ", staleHits=" + staleHits.get() 
+            + ", fetches=" + fetchCount 
+            + ", fetchErrors=" + fetchErrors.get() 
+            + ", avgFetchTime=" 
+            + (fetchCount == 0 ? 0 : fetchTime.get() / fetchCount) + " ms" 
+            + ", maxFetchTime=" + maxFetchTime.get() + " ms";
+    }
+
+    /**
+     * @return number of requests answered from cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests not answered from cache.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of requests answered with expired permission-filter.
+     */
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    /**
+     * @return number of permission-filters retrieved from generator.
+     */
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    /**
+     * @return total time spent retrieving permission-filters (ms).
+     */
+    public long getFetchTime() {
+        return fetchTime.get();
+    }
+
+    /**
+     * Get cache-entry for key, create it if not in cache.
+     * 
+     * @return Entry entry
+     */
+    private synchronized Entry getEntry(
+            final PermissionFilterGenerator generator, 
+            final String dbName, final String handle, 
+            final String asUserId, final String withRoleId) {
+        StringBuffer key = new StringBuffer();
+        key.append(dbName).append('\n').append(handle).append('\n')
+            .append(asUserId).append('\n').append(withRoleId);
+        Entry entry = (Entry) entries.get(key.toString());
+        if (entry == null) {
+            entry = new Entry(
+                    generator, dbName, handle, asUserId, withRoleId);
+            entries.put(key.toString(), entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Retrieve permission-filter. If already being retrieved
+     * by another thread, wait for the result.
+     * 
+     * @param entry
+     *            cache-entry
+     * @return String permission-filter
+     * @throws SRWDiagnostic
+     *             e
+     */
+    private String fetch(final Entry entry) throws SRWDiagnostic {
+        FutureTask<String> task = null;
+        boolean owner = false;
+        synchronized (entry) {
+            if (entry.fetchTask == null) {
+                entry.fetchTask = new FutureTask<String>(entry);
+                owner = true;
+            }
+            task = entry.fetchTask;
+        }
+        if (owner) {
+            runFetch(entry, task);
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SRWDiagnostic(SRWDiagnostic.GeneralSystemError, 
+                    "interrupted while retrieving permissionFilterQuery");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SRWDiagnostic) {
+                throw (SRWDiagnostic) e.getCause();
+            }
+            throw new SRWDiagnostic(SRWDiagnostic.GeneralSystemError, 
+                    "couldnt retrieve permissionFilterQuery " 
+                    + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Refresh permission-filter in background 
+     * if its not already being retrieved.
+     * 
+     * @param entry
+     *            cache-entry
+     */
+    private void refresh(final Entry entry) {
+        final FutureTask<String> task;
+        synchronized (entry) {
+            if (entry.fetchTask != null) {
+                return;
+            }
+            task = new FutureTask<String>(entry);
+            entry.fetchTask = task;
+        }
+        try {
+            refresher.execute(new Runnable() {
+                public void run() {
+                    runFetch(entry, task);
+                    try {
+                        task.get();
+                    } catch (Exception e) {
+                        log.error("couldnt refresh permission-filter for " 
+                                + entry.dbName + ": " + e.getMessage());
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (entry) {
+                entry.fetchTask = null;
+            }
+            log.error(e);
+        }
+    }
+
+    /**
+     * Run fetch-task and remove it from entry.
+     * 
+     * @param entry
+     *            cache-entry
+     * @param task
+     *            fetch-task
+     */
+    private void runFetch(final Entry entry, final FutureTask<String> task) {
+        try {
+            task.run();
+        } finally {
+            synchronized (entry) {
+                entry.fetchTask = null;
+            }
+        }
+    }
+
+    /**
+     * Cache-entry. Retrieves the permission-filter when called.
+     * 
+     */
+    private final class Entry implements Callable<String> {
+
+        private final PermissionFilterGenerator generator;
+
+        private final String dbName;
+
+        private final String handle;
+
+        private final String asUserId;
+
+        private final String withRoleId;
+
+        private volatile String value = null;
+
+        private volatile long fetched = 0;
+
+        /** Running retrieval, guarded by this. */
+        private FutureTask<String> fetchTask = null;
+
+        /**
+         * Constructor.
+         * 
+         */
+        Entry(final PermissionFilterGenerator generator, 
+                final String dbName, final String handle, 
+                final String asUserId, final String withRoleId) {
+            this.generator = generator;
+            this.dbName = dbName;
+            this.handle = handle;
+            this.asUserId = asUserId;
+            this.withRoleId = withRoleId;
+        }
+
+        /**
+         * Retrieve permission-filter from generator.
+         * 
+         * @return String permission-filter
+         * @throws SRWDiagnostic
+         *             e
+         */
+        public String call() throws SRWDiagnostic {
+            long time = System.currentTimeMillis();
+            String result;
+            try {
+                result = generator.getPermissionFilter(
+                        dbName, handle, asUserId, withRoleId);
+            } catch (SRWDiagnostic e) {
+                fetchErrors.incrementAndGet();
+                throw e;
+            } finally {
+                time = System.currentTimeMillis() - time;
+                fetches.incrementAndGet();
+                fetchTime.addAndGet(time);
+                long max = maxFetchTime.get();
+                while (time > max 
+                        && !maxFetchTime.compareAndSet(max, time)) {
+                    max = maxFetchTime.get();
+                }
+            }
+            value = result;
+            fetched = System.currentTimeMillis();
+            if (log.isInfoEnabled()) {
+                log.info("retrieved permission-filter for " + dbName 
+                        + " in " + time + " ms (" + getStatistics() + ")");
+            }
+            return result;
+        }
+    }
+
+}
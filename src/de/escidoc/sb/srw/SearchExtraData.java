@@ -30,6 +30,9 @@ package de.escidoc.sb.srw;
 
 import gov.loc.www.zing.srw.ExtraDataType;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.apache.axis.message.MessageElement;
 
 /**
@@ -75,6 +78,52 @@ public class SearchExtraData {
         											"x-info5-skipFilterLatestRelease";
 	private boolean skipFilterLatestRelease = false;
 
+    /**
+     * extraData in Search containing the cursor returned 
+     * with the previous page (search-after).
+     * startRecord has to be the position of the first record 
+     * of the next page.
+     */
+    public static final String EXTENSION_CURSOR = "x-info5-cursor";
+	private String cursor = null;
+
+    /**
+     * extraResponseData containing the cursor to request the next page.
+     */
+    public static final String EXTENSION_NEXT_CURSOR = "x-info5-nextCursor";
+
+    /**
+     * extraResponseData indicating that collecting hits was stopped 
+     * at the search-timeout and the result is partial.
+     */
+    public static final String EXTENSION_PARTIAL_RESULT = 
+    										"x-info5-partialResult";
+
+    /**
+     * extraData in Search naming the fields to count facet-values for, 
+     * comma-separated, each optionally followed by :n 
+     * for the maximum number of values to return 
+     * (eg escidoc.context.objid:20,escidoc.content-model.objid).
+     * Facet-counts are returned in extraResponseData.
+     */
+    public static final String EXTENSION_FACETS = "x-info5-facets";
+	private Map<String, Integer> facets = null;
+
+    /**
+     * default maximum number of values returned per facet-field.
+     */
+    public static final int DEFAULT_FACET_LIMIT = 10;
+
+    /**
+     * extraResponseData containing the facet-counts.
+     */
+    public static final String EXTENSION_FACET = "x-info5-facet";
+
+    /**
+     * extraResponseData containing one facet-value with its count.
+     */
+    public static final String EXTENSION_FACET_VALUE = "x-info5-facetValue";
+
     /**
      * Fill Variables with elements from extraDataType-Object.
      * 
@@ -108,6 +157,14 @@ public class SearchExtraData {
                         skipFilterLatestRelease = 
                         	new Boolean(messageElement.getValue());
                     }
+                	else if (messageElement.getName().equals(
+                			EXTENSION_CURSOR)) {
+                        cursor = messageElement.getValue();
+                    }
+                	else if (messageElement.getName().equals(
+                			EXTENSION_FACETS)) {
+                        facets = parseFacets(messageElement.getValue());
+                    }
                 }
             }
         }
@@ -134,4 +191,42 @@ public class SearchExtraData {
 		return roleId;
 	}
 
+	public String getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * @return Map facet-fields with maximum number of values 
+	 *             or null if no facets are requested
+	 */
+	public Map<String, Integer> getFacets() {
+		return facets;
+	}
+
+    /**
+     * Parse facet-fields (field[:n],field[:n]).
+     * 
+     * @param value value of extraData
+     * @return Map facet-fields with maximum number of values or null
+     */
+	private Map<String, Integer> parseFacets(final String value) {
+	    if (value == null || value.trim().length() == 0) {
+	        return null;
+	    }
+	    Map<String, Integer> fields = new LinkedHashMap<String, Integer>();
+	    for (String facet : value.split(",")) {
+	        String field = facet.trim();
+	        int limit = DEFAULT_FACET_LIMIT;
+	        int pos = field.lastIndexOf(':');
+	        if (pos > 0 && field.substring(pos + 1).matches("\\d{1,9}")) {
+	            limit = Integer.parseInt(field.substring(pos + 1));
+	            field = field.substring(0, pos).trim();
+	        }
+	        if (field.length() != 0 && limit > 0) {
+	            fields.put(field, Integer.valueOf(limit));
+	        }
+	    }
+	    return fields.isEmpty() ? null : fields;
+	}
+
 }
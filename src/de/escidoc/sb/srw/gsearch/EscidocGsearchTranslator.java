@@ -35,9 +35,8 @@ import gov.loc.www.zing.srw.SearchRetrieveRequestType;
 import gov.loc.www.zing.srw.TermType;
 import gov.loc.www.zing.srw.utils.Stream;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -58,17 +57,18 @@ import org.apache.lucene.index.IndexReader.FieldOption;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Directory;
 import org.osuosl.srw.ResolvingQueryResult;
 import org.osuosl.srw.SRWDiagnostic;
 import org.z3950.zing.cql.CQLNode;
 import org.z3950.zing.cql.CQLTermNode;
 
 import ORG.oclc.os.SRW.QueryResult;
-import de.escidoc.core.common.util.service.ConnectionUtility;
 import de.escidoc.core.common.util.stax.StaxParser;
 import de.escidoc.sb.srw.Constants;
 import de.escidoc.sb.srw.EscidocTranslator;
+import de.escidoc.sb.srw.HttpClientPool;
+import de.escidoc.sb.srw.lucene.IndexDirectoryFactory;
 import de.escidoc.sb.srw.stax.handler.SplitHandler;
 
 /**
@@ -84,8 +84,6 @@ import de.escidoc.sb.srw.stax.handler.SplitHandler;
  */
 public class EscidocGsearchTranslator extends EscidocTranslator {
 
-    private ConnectionUtility connectionUtility = new ConnectionUtility();
-    
     /**
 	 * construct.
 	 * 
@@ -150,6 +148,11 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
 			setDefaultIndexField(temp);
 		}
 
+		IndexDirectoryFactory.getInstance().configure(
+		        getIndexPath(), properties);
+
+		initHttpClient(properties);
+
 	}
 
 	/**
@@ -211,17 +214,21 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
 
 		Stream[] identifiers = null;
 		try {
-		    String records = connectionUtility.getRequestURLAsString(
-                    new URL(Constants.GSEARCH_URL 
-                        + parameters.toString()));
-			StaxParser sp = new StaxParser();
-			SplitHandler handler = new SplitHandler(sp, Constants.XML_HIT_PATH);
-			sp.addHandler(handler);
-
-			sp.parse(new ByteArrayInputStream(
-					records.getBytes(Constants.CHARACTER_ENCODING)));
-
-			Vector<String> parts = handler.getParts();
+			// split response while reading it from the connection
+			Vector<String> parts = HttpClientPool.getInstance().get(
+                    new URL(Constants.GSEARCH_URL + parameters.toString()), 
+                    null, getHttpConnectTimeout(), getHttpReadTimeout(), 
+                    new HttpClientPool.StreamHandler<Vector<String>>() {
+                        public Vector<String> handle(final InputStream in, 
+                                final String contentType) throws Exception {
+                            StaxParser sp = new StaxParser();
+                            SplitHandler handler = 
+                                new SplitHandler(sp, Constants.XML_HIT_PATH);
+                            sp.addHandler(handler);
+                            sp.parse(in);
+                            return handler.getParts();
+                        }
+                    });
 			identifiers = new Stream[parts.size()];
 			int i = 0;
 			for(String identifier : parts) {
@@ -268,6 +275,7 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
 		TermType[] response = new TermType[0];
 		Map termMap = new HashMap();
 		IndexSearcher searcher = null;
+		Directory directory = null;
 
 		try {
 			// convert the CQL search to lucene search
@@ -283,8 +291,9 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
 					.equalsIgnoreCase("exact");
 
 			// perform search
-			searcher = new IndexSearcher(FSDirectory.open(
-                    new File(getIndexPath())));
+			directory = IndexDirectoryFactory.getInstance()
+                    .acquireDirectory(getIndexPath());
+			searcher = new IndexSearcher(directory);
 			TopDocs results = searcher.search(query, 1000);
 			int size = results.scoreDocs.length;
 
@@ -354,6 +363,15 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
 				}
 				searcher = null;
 			}
+			if (directory != null) {
+				try {
+					IndexDirectoryFactory.getInstance()
+							.releaseDirectory(directory);
+				} catch (IOException e) {
+					log.error("Exception while releasing lucene index directory",
+							e);
+				}
+			}
 		}
 
 		return response;
@@ -372,9 +390,11 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
     public Collection<String> getIndexedFieldList() {
 		Collection<String> fieldList = new ArrayList<String>();
 		IndexReader reader = null;
+		Directory directory = null;
 		try {
-			reader = IndexReader.open(FSDirectory.open(
-                    new File(getIndexPath())));
+			directory = IndexDirectoryFactory.getInstance()
+                    .acquireDirectory(getIndexPath());
+			reader = IndexReader.open(directory);
 			fieldList = reader.getFieldNames(FieldOption.INDEXED);
 		} catch (Exception e) {
 			log.error(e);
@@ -387,6 +407,15 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
 				}
 				reader = null;
 			}
+			if (directory != null) {
+				try {
+					IndexDirectoryFactory.getInstance()
+							.releaseDirectory(directory);
+				} catch (IOException e) {
+					log.error("Exception while releasing lucene index directory",
+							e);
+				}
+			}
 		}
 		return fieldList;
 	}
@@ -404,9 +433,11 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
     public Collection<String> getStoredFieldList() {
 		Collection<String> fieldList = new ArrayList<String>();
 		IndexReader reader = null;
+		Directory directory = null;
 		try {
-			reader = IndexReader.open(FSDirectory.open(
-                    new File(getIndexPath())));
+			directory = IndexDirectoryFactory.getInstance()
+                    .acquireDirectory(getIndexPath());
+			reader = IndexReader.open(directory);
 			// Hack, because its not possible to get all stored fields
 			// of an index
 			for (int i = 0; i < 10; i++) {
@@ -434,6 +465,15 @@ public class EscidocGsearchTranslator extends EscidocTranslator {
 				}
 				reader = null;
 			}
+			if (directory != null) {
+				try {
+					IndexDirectoryFactory.getInstance()
+							.releaseDirectory(directory);
+				} catch (IOException e) {
+					log.error("Exception while releasing lucene index directory",
+							e);
+				}
+			}
 		}
 		return fieldList;
 	}
@@ -0,0 +1,283 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+
+/**
+ * Bounded LRU-cache for compiled queries.
+ * Holds the analyzed lucene-query and the Sort-Object 
+ * for a normalized cql-query, 
+ * so identical cql-queries dont have to be translated and analyzed again.
+ * 
+ * The cached Query- and Sort-Objects are shared between requests, 
+ * so they must not get modified. 
+ * The permission-filter depends on the user 
+ * and is not part of the cached query.
+ * 
+ * Translators of the same index share one cache 
+ * (see {@link #getInstance(String, int)}).
+ * 
+ * @author MIH
+ */
+public class CompiledQueryCache {
+
+    public static final int DEFAULT_SIZE = 1000;
+
+    private static final Map<String, CompiledQueryCache> INSTANCES = 
+        new HashMap<String, CompiledQueryCache>();
+
+    /** Guarded by this. */
+    private LRUMap cache;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor with maximum number of cached queries.
+     * 
+     * @param size
+     *            maximum number of cached queries
+     */
+    public CompiledQueryCache(final int size) {
+        cache = newCache(size);
+    }
+
+    /**
+     * get the cache of the index-path.
+     * Creates it if it doesnt exist, otherwise the size is updated.
+     * 
+     * @param indexPath
+     *            index-path
+     * @param size
+     *            maximum number of cached queries
+     * @return CompiledQueryCache shared instance
+     */
+    public static CompiledQueryCache getInstance(
+            final String indexPath, final int size) {
+        synchronized (INSTANCES) {
+            CompiledQueryCache instance = INSTANCES.get(indexPath);
+            if (instance == null) {
+                instance = new CompiledQueryCache(size);
+                INSTANCES.put(indexPath, instance);
+            } else {
+                instance.setSize(size);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Change maximum number of cached queries. 
+     * Cached queries are removed if the size changes.
+     * 
+     * @param size
+     *            maximum number of cached queries
+     */
+    public synchronized void setSize(final int size) {
+        if (size != cache.maxSize()) {
+            cache = newCache(size);
+        }
+    }
+
+    /**
+     * @param size
+     *            maximum number of cached queries
+     * @return LRUMap map counting evictions
+     */
+    private LRUMap newCache(final int size) {
+        return new LRUMap(size) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeLRU(final LinkEntry entry) {
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Generate the key for a cql-query.
+     * Besides the normalized cql-query and sortKeys the key contains
+     * all settings that change the compiled query.
+     * 
+     * @param cql
+     *            normalized cql-query
+     * @param sortKeys
+     *            sortKeys of request (CQL 1.0) or null
+     * @param defaultIndexField
+     *            defaultIndexField
+     * @param analyzer
+     *            name of the analyzer
+     * @param forceScoring
+     *            forceScoring
+     * @return String key
+     */
+    public static String getKey(final String cql, final String sortKeys,
+            final String defaultIndexField, final String analyzer,
+            final boolean forceScoring) {
+        StringBuffer key = new StringBuffer(cql);
+        key.append('\n').append(sortKeys);
+        key.append('\n').append(defaultIndexField);
+        key.append('\n').append(analyzer);
+        key.append('\n').append(forceScoring);
+        return key.toString();
+    }
+
+    /**
+     * Get compiled query from cache.
+     * 
+     * @param key
+     *            key
+     * @return CompiledQuery or null if not in cache
+     */
+    public CompiledQuery get(final String key) {
+        CompiledQuery compiledQuery;
+        synchronized (this) {
+            compiledQuery = (CompiledQuery) cache.get(key);
+        }
+        if (compiledQuery == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return compiledQuery;
+    }
+
+    /**
+     * Put compiled query into cache.
+     * 
+     * @param key
+     *            key
+     * @param compiledQuery
+     *            compiledQuery
+     */
+    public void put(final String key, final CompiledQuery compiledQuery) {
+        synchronized (this) {
+            cache.put(key, compiledQuery);
+        }
+    }
+
+    /**
+     * Remove all cached queries.
+     * 
+     */
+    public void clear() {
+        synchronized (this) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return number of cached queries.
+     */
+    public int size() {
+        synchronized (this) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return number of queries found in cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of queries not found in cache.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of queries removed from the full cache.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return String statistics for logging.
+     */
+    public String getStatistics() {
+        return "size=" + size() + ", hits=" + getHits() 
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions();
+    }
+
+    /**
+     * Holds compiled query and sort.
+     * 
+     */
+    public static final class CompiledQuery {
+
+        private final Query query;
+
+        private final Sort sort;
+
+        /**
+         * Constructor.
+         * 
+         * @param query
+         *            analyzed lucene-query
+         * @param sort
+         *            Sort or null
+         */
+        public CompiledQuery(final Query query, final Sort sort) {
+            this.query = query;
+            this.sort = sort;
+        }
+
+        /**
+         * @return the analyzed lucene-query.
+         */
+        public Query getQuery() {
+            return query;
+        }
+
+        /**
+         * @return the Sort or null.
+         */
+        public Sort getSort() {
+            return sort;
+        }
+    }
+
+}
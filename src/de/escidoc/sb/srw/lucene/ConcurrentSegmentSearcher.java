@@ -0,0 +1,381 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EscidocCollapseCollector;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Searches the segments of an index concurrently 
+ * with a bounded thread-pool.
+ * 
+ * There is one instance (and one pool) for each index-path, 
+ * shared by all translators of the srw-database 
+ * (see {@link #getInstance(String, int, int)}). 
+ * Reconfiguring resizes the pool, 
+ * {@link #release(String)} shuts it down after running searches finished. 
+ * Idle threads terminate after IDLE_TIMEOUT.
+ * 
+ * -Searches without duplicate-filtering use the executor-based
+ *  search of lucene's IndexSearcher (see {@link #newSearcher(IndexSearcher)}).
+ * -Searches with duplicate-filtering (filterLatestRelease) collect 
+ *  each segment with an own EscidocCollapseCollector in an own task.
+ *  The collectors are merged (groups across all segments), 
+ *  so hits and totalHits are the same as when searching sequentially.
+ * -Time-limited searches without duplicate-filtering also collect 
+ *  the top-hits of each segment in an own task (see {@link #search}), 
+ *  because the executor-based search of IndexSearcher 
+ *  cannot get interrupted.
+ * 
+ * Configuration:
+ * cqlTranslator.searchThreads: size of thread-pool (0 = disabled)
+ * cqlTranslator.searchMinSegments: minimum number of segments 
+ *     an index must have to get searched concurrently
+ * 
+ * @author MIH
+ */
+public final class ConcurrentSegmentSearcher {
+
+    /**
+     * Idle time in seconds after that threads of the pool terminate.
+     */
+    private static final long IDLE_TIMEOUT = 60;
+
+    private static final Map<String, ConcurrentSegmentSearcher> INSTANCES = 
+        new HashMap<String, ConcurrentSegmentSearcher>();
+
+    private final ThreadPoolExecutor executor;
+
+    private volatile int minSegmentCount;
+
+    /**
+     * construct with pool-size and threshold.
+     * 
+     * @param threads
+     *            number of threads in pool
+     * @param minSegmentCount
+     *            minimum number of segments an index must have 
+     *            to get searched concurrently
+     * @param name
+     *            name used for the threads
+     */
+    private ConcurrentSegmentSearcher(
+            final int threads, final int minSegmentCount, final String name) {
+        this.minSegmentCount = minSegmentCount;
+        this.executor = new ThreadPoolExecutor(threads, threads, 
+                IDLE_TIMEOUT, TimeUnit.SECONDS, 
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(
+                        r, name + "-search-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * get the ConcurrentSegmentSearcher of the index-path.
+     * Creates it if it doesnt exist, 
+     * otherwise pool-size and threshold are updated.
+     * 
+     * @param indexPath
+     *            index-path (several paths for federated search)
+     * @param threads
+     *            number of threads in pool
+     * @param minSegmentCount
+     *            minimum number of segments an index must have 
+     *            to get searched concurrently
+     * @return ConcurrentSegmentSearcher shared instance
+     */
+    public static ConcurrentSegmentSearcher getInstance(
+            final String indexPath, final int threads, 
+            final int minSegmentCount) {
+        synchronized (INSTANCES) {
+            ConcurrentSegmentSearcher instance = INSTANCES.get(indexPath);
+            if (instance == null) {
+                instance = new ConcurrentSegmentSearcher(
+                    threads, minSegmentCount, 
+                    indexPath.replaceFirst(".*(\\/|\\\\)", ""));
+                INSTANCES.put(indexPath, instance);
+            } else {
+                instance.minSegmentCount = minSegmentCount;
+                if (threads > instance.executor.getMaximumPoolSize()) {
+                    instance.executor.setMaximumPoolSize(threads);
+                    instance.executor.setCorePoolSize(threads);
+                } else {
+                    instance.executor.setCorePoolSize(threads);
+                    instance.executor.setMaximumPoolSize(threads);
+                }
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Remove the ConcurrentSegmentSearcher of the index-path 
+     * and shut down its pool. 
+     * Running searches finish, afterwards the threads terminate.
+     * 
+     * @param indexPath
+     *            index-path
+     */
+    public static void release(final String indexPath) {
+        ConcurrentSegmentSearcher instance;
+        synchronized (INSTANCES) {
+            instance = INSTANCES.remove(indexPath);
+        }
+        if (instance != null) {
+            instance.executor.shutdown();
+        }
+    }
+
+    /**
+     * Check if the index of the searcher has enough segments
+     * to get searched concurrently.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @return boolean true if segments should get searched concurrently
+     */
+    public boolean isConcurrent(final IndexSearcher searcher) {
+        int segments = searcher.getSubReaders().length;
+        return segments > 0 && segments >= minSegmentCount 
+                && !executor.isShutdown();
+    }
+
+    /**
+     * get IndexSearcher that searches the segments of the reader 
+     * of the given searcher concurrently. 
+     * Used for searches without duplicate-filtering.
+     * Returned searcher must not get closed.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @return IndexSearcher concurrent searcher on same reader
+     */
+    public IndexSearcher newSearcher(final IndexSearcher searcher) {
+        IndexSearcher concurrentSearcher = 
+            new IndexSearcher(searcher.getIndexReader(), executor);
+        concurrentSearcher.setSimilarity(searcher.getSimilarity());
+        return concurrentSearcher;
+    }
+
+    /**
+     * Search segments concurrently and filter out duplicates 
+     * with the collapse-rule of EscidocCollapseCollector.
+     * totalHits is the number of hits after collapsing.
+     * If duplicateIdentifierField is null, duplicates are not filtered.
+     * 
+     * Each segment stops collecting when the deadline is reached, 
+     * the hits collected so far are merged.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param filter
+     *            filter or null
+     * @param numHits
+     *            number of hits to return
+     * @param sort
+     *            sort or null (sort by relevance)
+     * @param trackDocScores
+     *            calculate scores when sorting
+     * @param duplicateIdentifierField
+     *            field containing the duplicate-identifier 
+     *            or null (dont filter duplicates)
+     * @param duplicateDistinguisherField
+     *            field containing the duplicate-distinguisher
+     * @param distinguisherPriorityValue
+     *            value of duplicate-distinguisher of documents to keep
+     * @param deadline
+     *            deadline of the search
+     * @return TopDocs filtered top-hits
+     * @throws IOException
+     *             e
+     */
+    public TopDocs search(
+            final IndexSearcher searcher, final Query query, 
+            final Filter filter, final int numHits, 
+            final Sort sort, final boolean trackDocScores, 
+            final String duplicateIdentifierField, 
+            final String duplicateDistinguisherField, 
+            final int distinguisherPriorityValue, 
+            final SearchDeadline deadline) throws IOException {
+        EscidocCollapseCollector.DuplicateFilter filterValue = null;
+        if (duplicateIdentifierField != null) {
+            filterValue = new EscidocCollapseCollector.DuplicateFilter(
+                    searcher.getIndexReader(), duplicateIdentifierField, 
+                    duplicateDistinguisherField, distinguisherPriorityValue);
+        }
+        final EscidocCollapseCollector.DuplicateFilter duplicateFilter = 
+                                                                filterValue;
+        final Weight weight = searcher.createNormalizedWeight(
+                filter == null ? query : new FilteredQuery(query, filter));
+        final int queueSize = Math.max(numHits, 1);
+
+        IndexReader[] subReaders = searcher.getSubReaders();
+        List<Future<SegmentResult>> futures = 
+            new ArrayList<Future<SegmentResult>>(subReaders.length);
+        int docStart = 0;
+        for (final IndexReader subReader : subReaders) {
+            final int docBase = docStart;
+            futures.add(executor.submit(new Callable<SegmentResult>() {
+                public SegmentResult call() throws IOException {
+                    TopDocsCollector< ? > topCollector = null;
+                    EscidocCollapseCollector collapseCollector = null;
+                    Collector collector;
+                    if (duplicateFilter != null) {
+                        collapseCollector = EscidocCollapseCollector.create(
+                                sort, queueSize, trackDocScores, false, 
+                                duplicateFilter);
+                        collector = collapseCollector;
+                    } else {
+                        boolean inOrder = !weight.scoresDocsOutOfOrder();
+                        if (sort == null) {
+                            topCollector = TopScoreDocCollector.create(
+                                    queueSize, inOrder);
+                        } else {
+                            topCollector = TopFieldCollector.create(
+                                sort, queueSize, true, trackDocScores, 
+                                false, inOrder);
+                        }
+                        collector = topCollector;
+                    }
+                    collector = deadline.wrap(collector);
+                    collector.setNextReader(subReader, docBase);
+                    Scorer scorer = weight.scorer(
+                        subReader, !collector.acceptsDocsOutOfOrder(), true);
+                    if (scorer != null) {
+                        try {
+                            scorer.score(collector);
+                        } catch (TimeLimitingCollector.TimeExceededException e) {
+                            deadline.setExceeded();
+                        }
+                    }
+                    if (topCollector == null) {
+                        return new SegmentResult(null, collapseCollector);
+                    }
+                    return new SegmentResult(topCollector.topDocs(), null);
+                }
+            }));
+            docStart += subReader.maxDoc();
+        }
+
+        // merge results of segments
+        TopDocs[] segmentTopDocs = new TopDocs[futures.size()];
+        EscidocCollapseCollector[] collapseCollectors = 
+                        new EscidocCollapseCollector[futures.size()];
+        for (int i = 0; i < futures.size(); i++) {
+            SegmentResult result = getResult(futures.get(i));
+            segmentTopDocs[i] = result.topDocs;
+            collapseCollectors[i] = result.collapseCollector;
+        }
+        if (duplicateFilter != null) {
+            return EscidocCollapseCollector.merge(collapseCollectors);
+        }
+        return TopDocs.merge(sort, queueSize, segmentTopDocs);
+    }
+
+    /**
+     * wait for result of a segment-search.
+     * 
+     * @param future
+     *            future
+     * @return SegmentResult result of segment
+     * @throws IOException
+     *             e
+     */
+    private SegmentResult getResult(
+            final Future<SegmentResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e.toString());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause().toString());
+        }
+    }
+
+    /**
+     * Result of searching one segment.
+     */
+    private static final class SegmentResult {
+
+        private final TopDocs topDocs;
+
+        private final EscidocCollapseCollector collapseCollector;
+
+        private SegmentResult(final TopDocs topDocs, 
+                final EscidocCollapseCollector collapseCollector) {
+            this.topDocs = topDocs;
+            this.collapseCollector = collapseCollector;
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EscidocCollapseCollector;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * Collector that only counts hits, no scoring, no sorting.
+ * Used for searches with maximumRecords=0 
+ * and as first pass of search-after when filtering latest releases.
+ * 
+ * Counts the hits after collapsing duplicates with the same 
+ * collapse-rule as EscidocCollapseCollector 
+ * (see {@link EscidocCollapseCollector.DuplicateFilter}), 
+ * so the count is the same as the totalHits of a search returning records. 
+ * The kept document of each group is remembered, 
+ * see {@link #isKept(int)}.
+ * 
+ * @author MIH
+ */
+public class DistinctCountCollector extends Collector {
+
+    private final EscidocCollapseCollector.DuplicateFilter duplicateFilter;
+
+    private final EscidocCollapseCollector.DuplicateGroups groups;
+
+    private EscidocCollapseCollector.Segment segment;
+
+    private int docBase = 0;
+
+    private int totalHits = 0;
+
+    private int uncollapsedHits = 0;
+
+    /**
+     * construct with top-level reader and duplicate-fields.
+     * 
+     * @param reader
+     *            top-level reader of the searcher
+     * @param duplicateIdentifierField
+     *            field containing the duplicate-identifier
+     * @param duplicateDistinguisherField
+     *            field containing the duplicate-distinguisher
+     * @param distinguisherPriorityValue
+     *            value of duplicate-distinguisher of documents to keep
+     * @throws IOException
+     *             e
+     */
+    public DistinctCountCollector(
+            final IndexReader reader, final String duplicateIdentifierField, 
+            final String duplicateDistinguisherField, 
+            final int distinguisherPriorityValue) throws IOException {
+        this.duplicateFilter = new EscidocCollapseCollector.DuplicateFilter(
+                reader, duplicateIdentifierField, 
+                duplicateDistinguisherField, distinguisherPriorityValue);
+        this.groups = new EscidocCollapseCollector.DuplicateGroups(
+                duplicateFilter, false);
+    }
+
+    /**
+     * @return int number of hits.
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return int number of hits after collapsing duplicates.
+     */
+    public int getDistinctHits() {
+        return uncollapsedHits + groups.size();
+    }
+
+    /**
+     * Check if a hit survives collapsing duplicates.
+     * 
+     * @param doc
+     *            doc-id in top-level reader
+     * @return boolean false if another hit of its group is kept
+     */
+    public boolean isKept(final int doc) {
+        return groups.isKept(doc);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setScorer(final Scorer scorer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void collect(final int doc) {
+        totalHits++;
+        int group = segment.getGroup(doc);
+        if (group != 0) {
+            groups.add(group, docBase + doc, segment.isPriority(doc), 0f);
+        } else {
+            uncollapsedHits++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNextReader(final IndexReader reader, final int base) {
+        segment = duplicateFilter.getSegment(reader, base);
+        docBase = base;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.EscidocCollapseCollector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.ReaderUtil;
+import org.z3950.zing.cql.CQLParser;
+
+import de.escidoc.sb.srw.Constants;
+
+/**
+ * Warms a new IndexSearcher before IndexSearcherCache publishes it:
+ * -loads FieldCache for fields used for duplicate-filtering
+ * (if filterLatestRelease is enabled), 
+ * or computes the precomputed latest-release filter 
+ * (if precomputeLatestRelease is enabled)
+ * -loads FieldCache for configured sort-fields 
+ * (primitive arrays for trie-encoded numeric fields)
+ * -executes configured warm-up cql-queries and reads stored fields of hits.
+ * 
+ * Configuration:
+ * cqlTranslator.warmSortFields: comma-separated list of sort-fields
+ * cqlTranslator.warmQuery.&lt;n&gt;: warm-up cql-queries
+ * 
+ * @author MIH
+ */
+public class EscidocIndexSearcherWarmer implements IndexSearcherWarmer {
+
+    private static Log log = LogFactory.getLog(EscidocIndexSearcherWarmer.class);
+
+    /**
+     * Number of hits to retrieve for each warm-up query.
+     */
+    private static final int WARM_QUERY_HITS = 10;
+
+    private final EscidocLuceneTranslator translator;
+
+    private final List<String> sortFields = new ArrayList<String>();
+
+    private final List<String> warmQueries = new ArrayList<String>();
+
+    /**
+     * construct with translator and srw-database properties.
+     * 
+     * @param translator
+     *            translator, used to convert warm-up queries
+     * @param properties
+     *            properties
+     */
+    public EscidocIndexSearcherWarmer(
+            final EscidocLuceneTranslator translator, 
+            final Properties properties) {
+        this.translator = translator;
+        String temp = (String) properties.get(Constants.PROPERTY_WARM_SORT_FIELDS);
+        if (temp != null && temp.trim().length() != 0) {
+            for (String sortField : temp.split(",")) {
+                if (sortField.trim().length() != 0) {
+                    sortFields.add(sortField.trim());
+                }
+            }
+        }
+        List<String> keys = new ArrayList<String>();
+        for (Object key : properties.keySet()) {
+            if (((String) key).startsWith(
+                    Constants.PROPERTY_WARM_QUERY + ".")) {
+                keys.add((String) key);
+            }
+        }
+        Collections.sort(keys);
+        for (String key : keys) {
+            temp = properties.getProperty(key);
+            if (temp != null && temp.trim().length() != 0) {
+                warmQueries.add(temp.trim());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void warm(final IndexSearcher searcher) throws IOException {
+        long time = System.currentTimeMillis();
+        long stepTime = time;
+        IndexReader reader = searcher.getIndexReader();
+        
+        // precomputed latest-release filter uses FieldCache of segment-readers
+        if (translator.getFilterLatestRelease() 
+            && translator.getLatestReleaseFilterCache() != null) {
+            translator.getLatestReleaseFilterCache().getFilter(reader);
+            if (log.isInfoEnabled()) {
+                log.info("computed latest-release filter in " 
+                        + (System.currentTimeMillis() - stepTime) + " ms");
+            }
+        }
+        // duplicate-filtering collectors use FieldCache of segment-readers
+        // and the group-ids of identifiers shared by more than one document
+        else if (translator.getFilterLatestRelease()) {
+            new EscidocCollapseCollector.DuplicateFilter(reader, 
+                    Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                    Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                    Constants.DISTINGUISHER_PRIORITY_VAL);
+            if (log.isInfoEnabled()) {
+                log.info("warmed duplicate-filter fields in " 
+                        + (System.currentTimeMillis() - stepTime) + " ms");
+            }
+        }
+
+        // sorting uses FieldCache of segment-readers
+        if (!sortFields.isEmpty()) {
+            List<IndexReader> subReaders = new ArrayList<IndexReader>();
+            ReaderUtil.gatherSubReaders(subReaders, reader);
+            for (String sortField : sortFields) {
+                stepTime = System.currentTimeMillis();
+                SortField numericSortField = 
+                    translator.getNumericSortField(reader, sortField, false);
+                for (IndexReader subReader : subReaders) {
+                    if (numericSortField != null) {
+                        if (numericSortField.getParser() 
+                                instanceof FieldCache.DoubleParser) {
+                            FieldCache.DEFAULT.getDoubles(subReader, sortField, 
+                                (FieldCache.DoubleParser) numericSortField.getParser());
+                        } else {
+                            FieldCache.DEFAULT.getLongs(subReader, sortField, 
+                                (FieldCache.LongParser) numericSortField.getParser());
+                        }
+                    } else if (translator.getComparator() != null) {
+                        FieldCache.DEFAULT.getStrings(subReader, sortField);
+                    } else {
+                        FieldCache.DEFAULT.getStringIndex(subReader, sortField);
+                    }
+                }
+                if (log.isInfoEnabled()) {
+                    log.info("warmed sort-field " + sortField + " in " 
+                            + (System.currentTimeMillis() - stepTime) + " ms");
+                }
+            }
+        }
+
+        // execute warm-up queries, also read stored fields of hits
+        for (String warmQuery : warmQueries) {
+            stepTime = System.currentTimeMillis();
+            try {
+                Query query = translator.makeAnalyzedQuery(
+                        new CQLParser().parse(warmQuery));
+                TopDocs hits = searcher.search(query, WARM_QUERY_HITS);
+                for (int i = 0; i < hits.scoreDocs.length; i++) {
+                    searcher.doc(hits.scoreDocs[i].doc);
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("couldnt execute warm-up query " + warmQuery, e);
+            }
+            if (log.isInfoEnabled()) {
+                log.info("warmed query " + warmQuery + " in " 
+                        + (System.currentTimeMillis() - stepTime) + " ms");
+            }
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("warm-up finished in " 
+                    + (System.currentTimeMillis() - time) + " ms");
+        }
+    }
+
+}
@@ -38,8 +38,21 @@ import gov.loc.www.zing.srw.utils.Stream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.axis.types.NonNegativeInteger;
 import org.apache.axis.types.PositiveInteger;
@@ -51,25 +64,30 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.index.IndexReader.FieldOption;
-import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.EscidocTopDocsCollector;
-import org.apache.lucene.search.EscidocTopFieldCollector;
-import org.apache.lucene.search.EscidocTopScoreDocCollector;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EscidocCollapseCollector;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.FieldComparatorSource;
 import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.QueryWrapperFilter;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.osuosl.srw.ResolvingQueryResult;
 import org.osuosl.srw.SRWDiagnostic;
 import org.z3950.zing.cql.CQLNode;
@@ -80,10 +98,13 @@ import de.escidoc.core.common.util.service.UserContext;
 import de.escidoc.sb.srw.Constants;
 import de.escidoc.sb.srw.EscidocTranslator;
 import de.escidoc.sb.srw.PermissionFilterGenerator;
+import de.escidoc.sb.srw.PermissionFilterQueryCache;
 import de.escidoc.sb.srw.SearchExtraData;
+import de.escidoc.sb.srw.lucene.CompiledQueryCache.CompiledQuery;
 import de.escidoc.sb.srw.lucene.document.LazyFieldSelector;
 import de.escidoc.sb.srw.lucene.highlighting.SrwHighlighter;
 import de.escidoc.sb.srw.lucene.queryParser.EscidocQueryParser;
+import de.escidoc.sb.srw.lucene.queryParser.TypedRangeQuery;
 import de.escidoc.sb.srw.lucene.sorting.EscidocSearchResultComparator;
 
 /**
@@ -104,7 +125,6 @@ import de.escidoc.sb.srw.lucene.sorting.EscidocSearchResultComparator;
  */
 public class EscidocLuceneTranslator extends EscidocTranslator {
 
-
     /**
      * SrwHighlighter.
      */
@@ -166,6 +186,25 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
     	comparator = inp;
     }
 
+    /**
+     * Fields declared as date, long or double (fieldname - type).
+     */
+    private Map<String, String> numericFields = new HashMap<String, String>();
+
+    /**
+     * @return Map numericFields.
+     */
+    public Map<String, String> getNumericFields() {
+        return numericFields;
+    }
+
+    /**
+     * @param inp numericFields.
+     */
+    public void setNumericFields(final Map<String, String> inp) {
+        numericFields = inp;
+    }
+
     /**
      * Similarity for custom ranking of search-result.
      */
@@ -244,6 +283,154 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
     public void setFilterLatestRelease(final boolean inp) {
         filterLatestRelease = inp;
     }
+
+    /**
+     * Precomputed latest-release filter per index-version, 
+     * shared by all translators of the index-path, 
+     * null if duplicates are filtered while collecting hits.
+     */
+    private LatestReleaseFilterCache latestReleaseFilterCache = null;
+
+    /**
+     * @return LatestReleaseFilterCache latestReleaseFilterCache or null.
+     */
+    public LatestReleaseFilterCache getLatestReleaseFilterCache() {
+        return latestReleaseFilterCache;
+    }
+    
+    /**
+     * Default minimum number of segments 
+     * for searching segments concurrently.
+     */
+    private static final int DEFAULT_SEARCH_MIN_SEGMENTS = 2;
+
+    /**
+     * Searches segments of the index concurrently, 
+     * shared by all translators of the index-path.
+     * null if disabled (default).
+     */
+    private ConcurrentSegmentSearcher concurrentSegmentSearcher = null;
+
+    /**
+     * @return ConcurrentSegmentSearcher concurrentSegmentSearcher.
+     */
+    public ConcurrentSegmentSearcher getConcurrentSegmentSearcher() {
+        return concurrentSegmentSearcher;
+    }
+
+    /**
+     * @param inp concurrentSegmentSearcher.
+     */
+    public void setConcurrentSegmentSearcher(
+                        final ConcurrentSegmentSearcher inp) {
+        concurrentSegmentSearcher = inp;
+    }
+
+    /**
+     * Estimates cost of queries and limits expansion 
+     * of multi-term queries.
+     */
+    private QueryCostEstimator queryCostEstimator = new QueryCostEstimator(
+            QueryCostEstimator.DEFAULT_FILTER_REWRITE_TERMS, 0, 0, 
+            BooleanQuery.getMaxClauseCount());
+
+    /**
+     * @return QueryCostEstimator queryCostEstimator.
+     */
+    public QueryCostEstimator getQueryCostEstimator() {
+        return queryCostEstimator;
+    }
+
+    /**
+     * @param inp queryCostEstimator.
+     */
+    public void setQueryCostEstimator(final QueryCostEstimator inp) {
+        queryCostEstimator = inp;
+    }
+
+    /**
+     * Maximum time in milliseconds for collecting the hits of a search.
+     * 0: no limit (default).
+     */
+    private long searchTimeout = 0;
+
+    /**
+     * @return long searchTimeout.
+     */
+    public long getSearchTimeout() {
+        return searchTimeout;
+    }
+
+    /**
+     * @param inp searchTimeout.
+     */
+    public void setSearchTimeout(final long inp) {
+        searchTimeout = inp;
+    }
+
+    /**
+     * Number of searches that exceeded searchTimeout.
+     */
+    private final AtomicLong expiredSearches = new AtomicLong(0);
+
+    /**
+     * @return long number of searches that exceeded searchTimeout.
+     */
+    public long getExpiredSearches() {
+        return expiredSearches.get();
+    }
+
+    /**
+     * Default maximum number of reader-generations 
+     * kept open by lazy result sets.
+     */
+    private static final int DEFAULT_MAX_RESULT_SET_GENERATIONS = 4;
+
+    /**
+     * Reader-generations kept open by lazy result sets, 
+     * shared by all translators of the index-path. 
+     * If the maximum is reached, result sets of other generations 
+     * get rendered immediately.
+     * 0: result sets are never lazy.
+     */
+    private ResultSetGenerations resultSetGenerations = 
+        new ResultSetGenerations(DEFAULT_MAX_RESULT_SET_GENERATIONS);
+
+    /**
+     * @return int maxResultSetGenerations.
+     */
+    public int getMaxResultSetGenerations() {
+        return resultSetGenerations.getMaxGenerations();
+    }
+
+    /**
+     * @param inp maxResultSetGenerations.
+     */
+    public void setMaxResultSetGenerations(final int inp) {
+        resultSetGenerations.setMaxGenerations(inp);
+    }
+
+    /**
+     * Cache for analyzed queries and Sort-Objects, 
+     * shared by all translators of the index-path.
+     * null if disabled.
+     */
+    private CompiledQueryCache compiledQueryCache = 
+            new CompiledQueryCache(CompiledQueryCache.DEFAULT_SIZE);
+
+    /**
+     * @return CompiledQueryCache compiledQueryCache.
+     */
+    public CompiledQueryCache getCompiledQueryCache() {
+        return compiledQueryCache;
+    }
+
+    /**
+     * @param inp compiledQueryCache.
+     */
+    public void setCompiledQueryCache(final CompiledQueryCache inp) {
+        compiledQueryCache = inp;
+    }
     
     /**
      * @return IndexSearcher searcher.
@@ -259,7 +446,7 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
     public void releaseSearcher(final IndexSearcher searcher) {
     	if (searcher != null) {
             try {
-    			searcher.getIndexReader().decRef();
+                IndexSearcherCache.getInstance().releaseIndexSearcher(searcher);
     		} catch (IOException e) {
     		    log.error("couldnt dereference IndexReader");
     		}
@@ -278,6 +465,51 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
     private PermissionFilterGenerator permissionFilterGenerator = 
                                     new LucenePermissionFilterGenerator();
 
+    /** Default number of threads retrieving permission-filters. */
+    private static final int DEFAULT_PERMISSION_FILTER_THREADS = 16;
+
+    /** Maximum number of permission-filter retrievals waiting for a thread. */
+    private static final int PERMISSION_FILTER_QUEUE_SIZE = 256;
+
+    /** Default time in ms to wait for a permission-filter. */
+    private static final long DEFAULT_PERMISSION_FILTER_TIMEOUT = 30000;
+
+    /** 
+     * Threads that retrieve permission-filters while query gets compiled.
+     * Bounded, so a stalling AA cannot block an unlimited number of threads.
+     */
+    private static final ThreadPoolExecutor PERMISSION_FILTER_EXECUTOR =
+        new ThreadPoolExecutor(DEFAULT_PERMISSION_FILTER_THREADS, 
+            DEFAULT_PERMISSION_FILTER_THREADS, 60L, TimeUnit.SECONDS, 
+            new ArrayBlockingQueue<Runnable>(PERMISSION_FILTER_QUEUE_SIZE), 
+            new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, 
+                        "EscidocLuceneTranslator-permissionFilter-" 
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    static {
+        PERMISSION_FILTER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Time in ms to wait for the permission-filter, 
+     * search fails with a diagnostic when exceeded.
+     * 0: no limit.
+     */
+    private long permissionFilterTimeout = DEFAULT_PERMISSION_FILTER_TIMEOUT;
+
+    /**
+     * Cache permission-filters retrieved by the permissionFilterGenerator.
+     */
+    private boolean cachePermissionFilters = true;
+
     /**
      * construct with path to lucene-index.
      * 
@@ -322,6 +554,8 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
     public void init(final Properties properties) {
         String temp;
 
+        // indexPath may be a comma-separated list of index-paths,
+        // the indexes are then searched as one index
         temp = (String) properties.get(PROPERTY_INDEXPATH);
         if (temp != null && temp.trim().length() != 0) {
             temp = replaceEnvVariables(temp);
@@ -396,19 +630,391 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
 
         temp = (String) properties.get(Constants.PROPERTY_FORCE_SCORING);
         if (temp != null && temp.trim().length() != 0) {
-            forceScoring = new Boolean(temp).booleanValue();
+            forceScoring = Boolean.valueOf(temp).booleanValue();
         }
 
         temp = (String) properties.get(Constants.PROPERTY_PERMISSION_FILTERING);
         if (temp != null && temp.trim().length() != 0) {
-            permissionFiltering = new Boolean(temp).booleanValue();
+            permissionFiltering = Boolean.valueOf(temp).booleanValue();
         }
 
         temp = (String) properties.get(Constants.PROPERTY_FILTER_LATEST_RELEASE);
         if (temp != null && temp.trim().length() != 0) {
-            filterLatestRelease = new Boolean(temp).booleanValue();
+            filterLatestRelease = Boolean.valueOf(temp).booleanValue();
+        }
+
+        temp = (String) properties.get(
+                Constants.PROPERTY_PRECOMPUTE_LATEST_RELEASE);
+        if (temp != null && temp.trim().length() != 0
+            && Boolean.valueOf(temp).booleanValue()) {
+            if (getIndexPath() != null) {
+                latestReleaseFilterCache = 
+                    LatestReleaseFilterCache.getInstance(getIndexPath(), 
+                        Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                        Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                        Constants.DISTINGUISHER_PRIORITY_VAL);
+            } else {
+                latestReleaseFilterCache = new LatestReleaseFilterCache(
+                        Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                        Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                        Constants.DISTINGUISHER_PRIORITY_VAL);
+            }
+        }
+
+        temp = (String) properties.get(Constants.PROPERTY_INDEX_REFRESH_INTERVAL);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                IndexSearcherCache.getInstance().setRefreshInterval(
+                        Long.parseLong(temp.trim()));
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+
+        temp = (String) properties.get(Constants.PROPERTY_SEARCH_THREADS);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                int threads = Integer.parseInt(temp.trim());
+                int minSegments = DEFAULT_SEARCH_MIN_SEGMENTS;
+                temp = (String) properties.get(
+                        Constants.PROPERTY_SEARCH_MIN_SEGMENTS);
+                if (temp != null && temp.trim().length() != 0) {
+                    minSegments = Integer.parseInt(temp.trim());
+                }
+                if (getIndexPath() == null) {
+                    log.error("searchThreads needs an index-path");
+                } else if (threads > 0) {
+                    concurrentSegmentSearcher = 
+                        ConcurrentSegmentSearcher.getInstance(
+                            getIndexPath(), threads, minSegments);
+                } else {
+                    concurrentSegmentSearcher = null;
+                    ConcurrentSegmentSearcher.release(getIndexPath());
+                }
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+
+        try {
+            int filterRewriteTerms = 
+                QueryCostEstimator.DEFAULT_FILTER_REWRITE_TERMS;
+            int maxQueryTerms = 0;
+            long maxQueryPostings = 0;
+            int maxQueryClauses = BooleanQuery.getMaxClauseCount();
+            temp = (String) properties.get(
+                    Constants.PROPERTY_FILTER_REWRITE_TERMS);
+            if (temp != null && temp.trim().length() != 0) {
+                filterRewriteTerms = Integer.parseInt(temp.trim());
+            }
+            temp = (String) properties.get(
+                    Constants.PROPERTY_MAX_QUERY_TERMS);
+            if (temp != null && temp.trim().length() != 0) {
+                maxQueryTerms = Integer.parseInt(temp.trim());
+            }
+            temp = (String) properties.get(
+                    Constants.PROPERTY_MAX_QUERY_POSTINGS);
+            if (temp != null && temp.trim().length() != 0) {
+                maxQueryPostings = Long.parseLong(temp.trim());
+            }
+            temp = (String) properties.get(
+                    Constants.PROPERTY_MAX_QUERY_CLAUSES);
+            if (temp != null && temp.trim().length() != 0) {
+                maxQueryClauses = Integer.parseInt(temp.trim());
+            }
+            queryCostEstimator = new QueryCostEstimator(
+                    filterRewriteTerms, maxQueryTerms, maxQueryPostings, 
+                    maxQueryClauses);
+        }
+        catch (NumberFormatException e) {
+            log.error(e);
+        }
+
+        temp = (String) properties.get(Constants.PROPERTY_NUMERIC_FIELDS);
+        if (temp != null && temp.trim().length() != 0) {
+            Map<String, String> fields = new HashMap<String, String>();
+            for (String numericField : temp.split(",")) {
+                int pos = numericField.lastIndexOf(':');
+                String type = numericField.substring(pos + 1).trim();
+                if (pos > 0 && (TypedRangeQuery.TYPE_DATE.equals(type) 
+                        || TypedRangeQuery.TYPE_LONG.equals(type) 
+                        || TypedRangeQuery.TYPE_DOUBLE.equals(type))) {
+                    fields.put(numericField.substring(0, pos).trim(), type);
+                } else if (numericField.trim().length() != 0) {
+                    log.error("invalid numeric field " + numericField);
+                }
+            }
+            numericFields = fields;
         }
 
+        temp = (String) properties.get(
+                Constants.PROPERTY_PERMISSION_FILTER_THREADS);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                int threads = Integer.parseInt(temp.trim());
+                if (threads > 0) {
+                    synchronized (PERMISSION_FILTER_EXECUTOR) {
+                        if (threads > PERMISSION_FILTER_EXECUTOR
+                                            .getMaximumPoolSize()) {
+                            PERMISSION_FILTER_EXECUTOR
+                                        .setMaximumPoolSize(threads);
+                            PERMISSION_FILTER_EXECUTOR.setCorePoolSize(threads);
+                        } else {
+                            PERMISSION_FILTER_EXECUTOR.setCorePoolSize(threads);
+                            PERMISSION_FILTER_EXECUTOR
+                                        .setMaximumPoolSize(threads);
+                        }
+                    }
+                }
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+
+        temp = (String) properties.get(
+                Constants.PROPERTY_PERMISSION_FILTER_TIMEOUT);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                permissionFilterTimeout = Long.parseLong(temp.trim());
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+
+        int maxResultSetGenerations = DEFAULT_MAX_RESULT_SET_GENERATIONS;
+        temp = (String) properties.get(
+                Constants.PROPERTY_MAX_RESULT_SET_GENERATIONS);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                maxResultSetGenerations = Integer.parseInt(temp.trim());
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+        if (getIndexPath() != null) {
+            resultSetGenerations = ResultSetGenerations.getInstance(
+                    getIndexPath(), maxResultSetGenerations);
+        } else {
+            resultSetGenerations.setMaxGenerations(maxResultSetGenerations);
+        }
+
+        temp = (String) properties.get(Constants.PROPERTY_SEARCH_TIMEOUT);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                searchTimeout = Long.parseLong(temp.trim());
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+
+        int compiledQueryCacheSize = CompiledQueryCache.DEFAULT_SIZE;
+        temp = (String) properties.get(
+                Constants.PROPERTY_COMPILED_QUERY_CACHE_SIZE);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                compiledQueryCacheSize = Integer.parseInt(temp.trim());
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+        if (compiledQueryCacheSize <= 0) {
+            compiledQueryCache = null;
+        } else if (getIndexPath() != null) {
+            compiledQueryCache = CompiledQueryCache.getInstance(
+                    getIndexPath(), compiledQueryCacheSize);
+        } else {
+            compiledQueryCache = new CompiledQueryCache(compiledQueryCacheSize);
+        }
+
+        temp = (String) properties.get(
+                Constants.PROPERTY_PERMISSION_FILTER_CACHE_SIZE);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                PermissionFilterCache.getInstance().setMaxBytes(
+                        Long.parseLong(temp.trim()) * 1024L * 1024L);
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+
+        temp = (String) properties.get(
+                Constants.PROPERTY_PERMISSION_FILTER_CACHE_ENTRIES);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                PermissionFilterCache.getInstance().setMaxEntries(
+                        Integer.parseInt(temp.trim()));
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+
+        try {
+            temp = (String) properties.get(
+                    Constants.PROPERTY_PERMISSION_FILTER_QUERY_CACHE_TTL);
+            if (temp != null && temp.trim().length() != 0) {
+                long ttl = Long.parseLong(temp.trim());
+                cachePermissionFilters = ttl > 0;
+                if (cachePermissionFilters) {
+                    PermissionFilterQueryCache.getInstance().setTtl(ttl);
+                }
+            }
+            temp = (String) properties.get(
+                    Constants.PROPERTY_PERMISSION_FILTER_QUERY_CACHE_MAX_STALE);
+            if (temp != null && temp.trim().length() != 0) {
+                PermissionFilterQueryCache.getInstance().setMaxStale(
+                        Long.parseLong(temp.trim()));
+            }
+            temp = (String) properties.get(
+                    Constants.PROPERTY_PERMISSION_FILTER_QUERY_CACHE_SIZE);
+            if (temp != null && temp.trim().length() != 0) {
+                PermissionFilterQueryCache.getInstance().setSize(
+                        Integer.parseInt(temp.trim()));
+            }
+        }
+        catch (NumberFormatException e) {
+            log.error(e);
+        }
+
+        initHttpClient(properties);
+        if (permissionFilterGenerator 
+                instanceof LucenePermissionFilterGenerator) {
+            ((LucenePermissionFilterGenerator) permissionFilterGenerator)
+                        .setConnectTimeout(getHttpConnectTimeout());
+            ((LucenePermissionFilterGenerator) permissionFilterGenerator)
+                        .setReadTimeout(getHttpReadTimeout());
+        }
+
+        // several indexes are always searched concurrently
+        if (concurrentSegmentSearcher == null && getIndexPath() != null) {
+            int indexCount = 
+                IndexSearcherCache.splitIndexPaths(getIndexPath()).length;
+            if (indexCount > 1) {
+                concurrentSegmentSearcher = 
+                    ConcurrentSegmentSearcher.getInstance(getIndexPath(), 
+                        indexCount, DEFAULT_SEARCH_MIN_SEGMENTS);
+            }
+        }
+
+        // caches warmed by the warmer are shared by all translators 
+        // of the index-path, so it doesnt matter which translator 
+        // registered the warmer last
+        if (getIndexPath() != null) {
+            IndexDirectoryFactory.getInstance().configure(
+                    getIndexPath(), properties);
+            IndexSearcherCache.getInstance().setIndexSearcherWarmer(
+                    getIndexPath(), 
+                    new EscidocIndexSearcherWarmer(this, properties));
+        }
+
+    }
+
+    /**
+     * Convert cql-query to analyzed lucene-query.
+     * 
+     * @param queryRoot
+     *            cql-query
+     * @return Query analyzed lucene-query
+     * @throws SRWDiagnostic
+     *             e
+     */
+    public Query makeAnalyzedQuery(final CQLNode queryRoot) 
+                                                throws SRWDiagnostic {
+        EscidocQueryParser parser = new EscidocQueryParser(
+                getDefaultIndexField(), analyzer, forceScoring);
+        parser.setNumericFields(numericFields);
+        return makeAnalyzedQuery(queryRoot, parser);
+    }
+
+    /**
+     * Convert cql-query to analyzed lucene-query.
+     * Terms get analyzed while walking the cql-tree.
+     * 
+     * @param queryRoot
+     *            cql-query
+     * @param parser
+     *            EscidocQueryParser used to analyze the terms
+     * @return Query analyzed lucene-query
+     * @throws SRWDiagnostic
+     *             e
+     */
+    private Query makeAnalyzedQuery(
+            final CQLNode queryRoot, final EscidocQueryParser parser) 
+                                                throws SRWDiagnostic {
+        Query query = makeQuery(queryRoot, null, parser);
+        if (query == null) {
+            // analyzer removed all terms
+            query = new BooleanQuery();
+        }
+        return query;
+    }
+
+    /**
+     * Get analyzed lucene-query and Sort-Object for cql-query.
+     * Take them from the compiledQueryCache if they were compiled before.
+     * 
+     * @param queryRoot
+     *            cql-query
+     * @param request
+     *            SearchRetrieveRequestType
+     * @param parser
+     *            EscidocQueryParser used to analyze the terms
+     * @return CompiledQuery analyzed lucene-query and Sort-Object
+     * @throws SRWDiagnostic
+     *             e
+     */
+    private CompiledQuery getCompiledQuery(final CQLNode queryRoot, 
+            final SearchRetrieveRequestType request, 
+            final EscidocQueryParser parser) throws SRWDiagnostic {
+        String sortKeys = request.getSortKeys();
+        if (sortKeys != null && sortKeys.equals("")) {
+            sortKeys = null;
+        }
+        String key = null;
+        CompiledQuery compiledQuery = null;
+        if (compiledQueryCache != null) {
+            key = CompiledQueryCache.getKey(queryRoot.toCQL(), sortKeys, 
+                    getDefaultIndexField(), 
+                    analyzer == null ? null : analyzer.getClass().getName(), 
+                    forceScoring);
+            compiledQuery = compiledQueryCache.get(key);
+            if (log.isInfoEnabled()) {
+                log.info("compiledQueryCache " 
+                        + (compiledQuery == null ? "miss" : "hit") 
+                        + " (" + compiledQueryCache.getStatistics() + ")");
+            }
+            if (compiledQuery != null) {
+                return compiledQuery;
+            }
+        }
+
+        Sort sort = null;
+        if (sortKeys != null) {
+            // Get Lucene Sort-Object (CQL 1.0)
+            sort = getLuceneSortObject(sortKeys);
+        } else {
+            // Get Lucene Sort-Object (CQL 2.0)
+            sort = makeSort(queryRoot, null, comparator);
+        }
+
+        // convert the CQL search to analyzed lucene search
+        // Additionally replaces fieldname cql.serverChoice
+        // (this is the case if user gives no field name)
+        // with the defaultFieldName from configuration
+        compiledQuery = new CompiledQuery(
+                makeAnalyzedQuery(queryRoot, parser), sort);
+        if (compiledQueryCache != null) {
+            compiledQueryCache.put(key, compiledQuery);
+        }
+        return compiledQuery;
     }
 
     /**
@@ -439,93 +1045,117 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
         if (log.isInfoEnabled()) {
             time = System.currentTimeMillis();
         }
-        // Increase maxClauseCount of BooleanQuery for Wildcard-Searches
-        BooleanQuery.setMaxClauseCount(Integer.MAX_VALUE);
-        
         //Fill extraSearchData in Object
         SearchExtraData searchExtraData = new SearchExtraData(extraDataType);
         
+        // cursor of previous page (search-after)
+        SearchCursor cursor = null;
+        if (searchExtraData.getCursor() != null) {
+            try {
+                cursor = SearchCursor.decode(searchExtraData.getCursor());
+            } catch (IllegalArgumentException e) {
+                throw new SRWDiagnostic(
+                    SRWDiagnostic.UnsupportedParameterValue, 
+                    SearchExtraData.EXTENSION_CURSOR);
+            }
+        }
+
         Sort sort = null;
 
         Stream[] identifiers = null;
         IndexSearcher searcher = null;
+        PermissionFilterTask permissionFilterTask = null;
         
         try {
-            if (request.getSortKeys() != null 
-                    && !request.getSortKeys().equals("")) {
-                // Get Lucene Sort-Object (CQL 1.0)
-                sort = getLuceneSortObject(request.getSortKeys());
-            } else {
-                // Get Lucene Sort-Object (CQL 2.0)
-                sort = makeSort(queryRoot, null, comparator);
-            }
-
-            // convert the CQL search to lucene search
-            // Additionally replaces fieldname cql.serverChoice
-            // (this is the case if user gives no field name)
-            // with the defaultFieldName from configuration
-            Query unanalyzedQuery = makeQuery(queryRoot);
-            if (log.isInfoEnabled()) {
-                log.info("query converted at " 
-                        + (System.currentTimeMillis() - time) + " ms");
-            }
-
-            //execute fuzzy-queries with lower maxClauseCount
-            if (unanalyzedQuery.toString().indexOf("~") > -1) {
-                BooleanQuery.setMaxClauseCount(
-                        Constants.FUZZY_BOOLEAN_MAX_CLAUSE_COUNT);
+            // start retrieving permission-filter, 
+            // query gets compiled and searcher acquired in the meantime
+            if (permissionFiltering && !searchExtraData.isSkipPermissions()) {
+                if (log.isInfoEnabled()) {
+                    log.info("starting getting permission filter query at " 
+                            + (System.currentTimeMillis() - time) + " ms");
+                    log.info("calling permissionFilterGenerator with dbName:" 
+                            + dbName + ",handle:" + UserContext.getHandle() 
+                            + ",userId:" + searchExtraData.getUserId() 
+                            + ",roleId:" + searchExtraData.getRoleId());
+                }
+                permissionFilterTask = new PermissionFilterTask(
+                        dbName, UserContext.getHandle(), 
+                        searchExtraData.getUserId(), 
+                        searchExtraData.getRoleId());
+                permissionFilterTask.start();
             }
 
-            // rewrite query to analyzed query
             // EscidocQueryParser also analyzes wildcard-queries
             // If you want scoring with wildcard-queries,
             // set property cqlTranslator.forceScoring in your configuration
             // NOTE: this will slow down search approx by factor 10!!
-            QueryParser parser =
+            EscidocQueryParser parser =
                 new EscidocQueryParser(
                         getDefaultIndexField(), analyzer, forceScoring);
-            Query query = parser.parse(unanalyzedQuery.toString());;
+            parser.setNumericFields(numericFields);
+            CompiledQuery compiledQuery = 
+                        getCompiledQuery(queryRoot, request, parser);
+            Query query = compiledQuery.getQuery();
+            sort = compiledQuery.getSort();
             if (log.isInfoEnabled()) {
-                log.info("query: " + unanalyzedQuery.toString());
+                log.info("query converted at " 
+                        + (System.currentTimeMillis() - time) + " ms");
+                log.info("query: " + query.toString());
             }
-            Filter permissionFilter = null;
-            if (permissionFiltering && !searchExtraData.isSkipPermissions()) {
-                if (log.isInfoEnabled()) {
-                    log.info("starting getting permission filter query at " 
-                            + (System.currentTimeMillis() - time) + " ms");
-                }
 
+            searcher = getSearcher(getIndexPath());
+            //check if custom scoring should be done
+            if (similarity != null) {
+                searcher.setSimilarity(similarity);
+            }
+
+            // estimate cost, limit expansion of multi-term queries
+            query = queryCostEstimator.guard(
+                    searcher.getIndexReader(), query);
+            // sort trie-encoded numeric fields with primitive FieldCache
+            sort = getNumericSort(searcher.getIndexReader(), sort);
+            // intersect query with precomputed latest-release filter
+            if (latestReleaseFilterCache != null && filterLatestRelease 
+                && !searchExtraData.isSkipFilterLatestRelease()) {
+                query = new FilteredQuery(query, latestReleaseFilterCache
+                        .getFilter(searcher.getIndexReader()));
+            }
+
+            Filter permissionFilter = null;
+            if (permissionFilterTask != null) {
+                long waitTime = System.currentTimeMillis();
+                String permissionFilterStr = permissionFilterTask.getResult();
+                waitTime = System.currentTimeMillis() - waitTime;
                 if (log.isInfoEnabled()) {
-                    log.info("direct pre permission-filter at " 
-                            + (System.currentTimeMillis() - time) + " ms");
-                    log.info("calling permissionFilterGenerator with dbName:" 
-                            + dbName + ",handle:" + UserContext.getHandle() 
-                            + ",userId:" + searchExtraData.getUserId() 
-                            + ",roleId:" + searchExtraData.getRoleId());
-                }
-                String permissionFilterStr = permissionFilterGenerator
-                        .getPermissionFilter(dbName, UserContext.getHandle(), 
-                            searchExtraData.getUserId(), searchExtraData.getRoleId());
-                if (log.isInfoEnabled()) {
-                    log.info("direct post permission-filter at " 
-                            + (System.currentTimeMillis() - time) + " ms");
+                    log.info("permission-filter retrieved at " 
+                            + (System.currentTimeMillis() - time) + " ms, "
+                            + "retrieval took " 
+                            + permissionFilterTask.getDuration() + " ms, "
+                            + "waited " + waitTime + " ms, hidden " 
+                            + Math.max(0, permissionFilterTask.getDuration() 
+                                    - waitTime) + " ms");
                 }
                 if (StringUtils.isNotEmpty(permissionFilterStr)) {
-                    permissionFilter = new QueryWrapperFilter(parser.parse(permissionFilterStr));
+                    permissionFilter = PermissionFilterCache.getInstance()
+                            .getFilter(permissionFilterStr, parser);
                     if (log.isInfoEnabled()) {
                     	log.info("permission-filter:" + permissionFilterStr);
                     }
                 }
             }
-            
-            searcher = getSearcher(getIndexPath());
-            //check if custom scoring should be done
-            if (similarity != null) {
-                searcher.setSimilarity(similarity);
+
+            if (cursor != null && !cursor.matches(query, sort)) {
+                if (log.isInfoEnabled()) {
+                    log.info("cursor doesnt match query, ignoring cursor");
+                }
+                cursor = null;
             }
 
             TopDocs results = null;
             int size = 0;
+            boolean countOnly = false;
+            // position of first collected hit (0-based)
+            int hitOffset = 0;
             //calculate maximum hits
             int maximumHits = 0;
             if (request.getStartRecord() != null) {
@@ -541,63 +1171,45 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
                 log.info("search query preparation finished at " 
                             + (System.currentTimeMillis() - time) + " ms");
             }
-            // perform sorted search?
-            if (sort == null) {
-                searcher.setDefaultFieldSortScoring(false, false);
-                if (filterLatestRelease 
-                    && !searchExtraData.isSkipFilterLatestRelease()) {
-                    EscidocTopDocsCollector<ScoreDoc> collector = 
-                        EscidocTopScoreDocCollector.create(
-                                maximumHits, true, searcher.getIndexReader(), 
-                                Constants.DUPLICATE_IDENTIFIER_FIELD, 
-                                Constants.DUPLICATE_DISTINGUISHER_FIELD, 
-                                Constants.DISTINGUISHER_PRIORITY_VAL);
-                    searcher.search(query, permissionFilter, collector);
-                    results = collector.topDocs();
-                    
-                } 
-                else {
-                    results = searcher.search(query, permissionFilter, maximumHits);
-                }
+            SearchDeadline deadline = newSearchDeadline();
+            // count facet-values alongside collecting the hits
+            FacetCollector facetCollector = null;
+            if (searchExtraData.getFacets() != null) {
+                facetCollector = newFacetCollector(
+                        searcher, searchExtraData);
             }
-            else {
-                searcher.setDefaultFieldSortScoring(forceScoring, false);
-                if (filterLatestRelease && !searchExtraData.isSkipFilterLatestRelease()) {
-                    EscidocTopDocsCollector collector = EscidocTopFieldCollector.create(
-                            sort, maximumHits, true, forceScoring, 
-                            false, false, searcher.getIndexReader(),
-                            Constants.DUPLICATE_IDENTIFIER_FIELD, 
-                            Constants.DUPLICATE_DISTINGUISHER_FIELD, 
-                            Constants.DISTINGUISHER_PRIORITY_VAL);
-                    searcher.search(query, permissionFilter, collector);
-                    results = collector.topDocs();
+            // maximumRecords=0: only count hits
+            if (request.getMaximumRecords() != null 
+                && request.getMaximumRecords().intValue() == 0) {
+                countOnly = true;
+                size = countHits(searcher, query, permissionFilter, 
+                        searchExtraData, facetCollector, deadline);
+            } else if (cursor != null) {
+                // only collect the hits after the cursor
+                int pageSize = getDefaultNumberOfRecords();
+                if (request.getMaximumRecords() != null) {
+                    pageSize = request.getMaximumRecords().intValue();
                 }
-                else {
-                    results = searcher.search(query, permissionFilter, maximumHits, sort);
+                if (request.getStartRecord() != null) {
+                    hitOffset = request.getStartRecord().intValue() - 1;
                 }
+                results = searchAfter(searcher, query, permissionFilter, 
+                        sort, pageSize, cursor, searchExtraData, 
+                        facetCollector, deadline);
+                size = results.totalHits;
+            } else {
+                results = searchTopDocs(searcher, query, permissionFilter, 
+                        sort, maximumHits, searchExtraData, 
+                        facetCollector, deadline);
+                size = results.totalHits;
             }
-            size = results.totalHits;
+            boolean partial = checkDeadline(deadline);
             if (log.isInfoEnabled()) {
                 log.info("search finished at " 
                             + (System.currentTimeMillis() - time) + " ms");
                 log.info(size + " handles found");
             }
 
-            // initialize Highlighter
-            if (highlighter != null 
-                && !searchExtraData.isOmitHighlighting()) {
-                try {
-                    highlighter.initialize(searcher, query);
-                } catch (Exception e) {
-                    log.error(e);
-                }
-            }
-
-            if (log.isInfoEnabled()) {
-                log.info("highlighter-initialization finished at " 
-                        + (System.currentTimeMillis() - time) + " ms");
-            }
-
             /**
              * get startRecord
              */
@@ -625,23 +1237,97 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
             if (endRecord > size) {
                 endRecord = size;
             }
+            if (results != null 
+                && endRecord > hitOffset + results.scoreDocs.length) {
+                endRecord = hitOffset + results.scoreDocs.length;
+            }
             if (endRecord < startRecord && endRecord > 0) {
                 throw new SRWDiagnostic(
                     SRWDiagnostic.FirstRecordPositionOutOfRange,
                     "StartRecord > endRecord");
             }
 
+            // cursor to request the next page, partial-result flag
+            StringBuilder responseData = new StringBuilder();
+            if (results != null && endRecord < size 
+                && endRecord > hitOffset) {
+                responseData.append("<")
+                    .append(SearchExtraData.EXTENSION_NEXT_CURSOR)
+                    .append(">").append(SearchCursor.create(searcher, 
+                        query, sort, 
+                        results.scoreDocs[endRecord - hitOffset - 1])
+                        .encode())
+                    .append("</")
+                    .append(SearchExtraData.EXTENSION_NEXT_CURSOR)
+                    .append(">");
+            }
+            if (facetCollector != null) {
+                appendFacets(responseData, facetCollector);
+            }
+            if (partial) {
+                responseData.append("<")
+                    .append(SearchExtraData.EXTENSION_PARTIAL_RESULT)
+                    .append(">true</")
+                    .append(SearchExtraData.EXTENSION_PARTIAL_RESULT)
+                    .append(">");
+            }
+            String extraResponseData = null;
+            if (responseData.length() > 0) {
+                extraResponseData = responseData.toString();
+            }
+
+            // result set is kept as requested by the client: 
+            // keep searcher and hits, render records when requested. 
+            // Not if no records are resolved 
+            // or too many reader-generations are kept open already.
+            if (size > 0 && !countOnly && endRecord >= startRecord 
+                && request.getResultSetTTL() != null 
+                && request.getResultSetTTL().intValue() > 0 
+                && keepResultSetGeneration(searcher.getIndexReader())) {
+                ResolvingQueryResult queryResult = 
+                    new LazyResolvingQueryResult(this, searcher, query, 
+                            permissionFilter, sort, searchExtraData, 
+                            results, hitOffset, size);
+                queryResult.setExtraResponseData(extraResponseData);
+                queryResult.setPartial(partial);
+                // searcher gets released when result set expires
+                searcher = null;
+                return queryResult;
+            }
+
+            if (countOnly) {
+                ResolvingQueryResult queryResult = 
+                    new ResolvingQueryResult(size);
+                queryResult.setExtraResponseData(extraResponseData);
+                queryResult.setPartial(partial);
+                return queryResult;
+            }
+
+            // initialize Highlighter
+            initializeHighlighter(searcher, query, searchExtraData);
+            if (log.isInfoEnabled()) {
+                log.info("highlighter-initialization finished at " 
+                        + (System.currentTimeMillis() - time) + " ms");
+            }
+
+
             // now instantiate the results and put them into the response object
             if (log.isInfoEnabled()) {
                 log.info("iterating resultset from record " + startRecord
                     + " to " + endRecord);
             }
-            identifiers = createIdentifiers(
-                searcher, results, searchExtraData, startRecord, endRecord);
+            identifiers = createIdentifiers(searcher, getDocs(results), 
+                getScores(results), searchExtraData, 
+                startRecord - hitOffset, endRecord - hitOffset);
             if (log.isInfoEnabled()) {
                 log.info("identifier creation finished at " 
                             + (System.currentTimeMillis() - time) + " ms");
             }
+            ResolvingQueryResult queryResult = new ResolvingQueryResult(
+                    size, startRecord - 1, identifiers);
+            queryResult.setExtraResponseData(extraResponseData);
+            queryResult.setPartial(partial);
+            return queryResult;
         }
         catch (Exception e) {
         	if (identifiers != null) {
@@ -658,12 +1344,697 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
             if (log.isInfoEnabled()) {
                 log.info(e.toString());
             }
+            if (e instanceof SRWDiagnostic) {
+                throw (SRWDiagnostic) e;
+            }
+            if (e instanceof BooleanQuery.TooManyClauses) {
+                throw new SRWDiagnostic(
+                    QueryCostEstimator.DIAGNOSTIC_CODE_THIRTYEIGHT, 
+                    e.getMessage());
+            }
             throw new SRWDiagnostic(SRWDiagnostic.GeneralSystemError, e
                 .toString());
         } finally {
+            if (permissionFilterTask != null) {
+                permissionFilterTask.cancel();
+            }
             releaseSearcher(searcher);
         }
-        return new ResolvingQueryResult(identifiers);
+    }
+
+    /**
+     * Register a lazy result set for the reader-generation, 
+     * see {@link ResultSetGenerations#keep(IndexReader)}.
+     * 
+     * @param reader
+     *            top-level reader of the searcher
+     * @return boolean true if the result set may keep the reader open
+     */
+    boolean keepResultSetGeneration(final IndexReader reader) {
+        return resultSetGenerations.keep(reader);
+    }
+
+    /**
+     * Unregister a closed lazy result set.
+     * 
+     * @param reader
+     *            top-level reader of the searcher
+     */
+    void releaseResultSetGeneration(final IndexReader reader) {
+        resultSetGenerations.release(reader);
+    }
+
+    /**
+     * Check if duplicates have to be filtered out while collecting hits. 
+     * Not if latest releases are filtered with the precomputed filter 
+     * that is already intersected with the query.
+     * 
+     * @param searchExtraData
+     *            searchExtraData
+     * @return boolean true if duplicates have to be filtered out
+     */
+    private boolean isFilterDuplicates(
+            final SearchExtraData searchExtraData) {
+        return filterLatestRelease 
+            && !searchExtraData.isSkipFilterLatestRelease()
+            && latestReleaseFilterCache == null;
+    }
+
+    /**
+     * Search top-hits, 
+     * filter out duplicates if filterLatestRelease is set.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param permissionFilter
+     *            permission-filter or null
+     * @param sort
+     *            sort or null (sort by relevance)
+     * @param maximumHits
+     *            number of hits to collect
+     * @param searchExtraData
+     *            searchExtraData
+     * @param facets
+     *            collector counting facet-values or null
+     * @param deadline
+     *            deadline for collecting hits
+     * @return TopDocs top-hits
+     * @throws IOException
+     *             e
+     */
+    TopDocs searchTopDocs(
+            final IndexSearcher searcher, final Query query, 
+            final Filter permissionFilter, final Sort sort, 
+            final int maximumHits, final SearchExtraData searchExtraData, 
+            final Collector facets, final SearchDeadline deadline) 
+                                                    throws IOException {
+        if (facets != null) {
+            return searchTopDocsWithFacets(searcher, query, 
+                    permissionFilter, sort, maximumHits, searchExtraData, 
+                    facets, deadline);
+        }
+        TopDocs results = null;
+        // search segments concurrently?
+        boolean concurrent = concurrentSegmentSearcher != null 
+                && concurrentSegmentSearcher.isConcurrent(searcher);
+        IndexSearcher querySearcher = searcher;
+        if (concurrent) {
+            querySearcher = concurrentSegmentSearcher.newSearcher(searcher);
+        }
+        // perform sorted search?
+        if (sort == null) {
+            querySearcher.setDefaultFieldSortScoring(false, false);
+            if (isFilterDuplicates(searchExtraData) && concurrent) {
+                results = concurrentSegmentSearcher.search(
+                        searcher, query, permissionFilter, maximumHits, 
+                        null, false, 
+                        Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                        Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                        Constants.DISTINGUISHER_PRIORITY_VAL, deadline);
+            }
+            else if (isFilterDuplicates(searchExtraData)) {
+                EscidocCollapseCollector collector = 
+                    EscidocCollapseCollector.create(
+                            maximumHits, searcher.getIndexReader(), 
+                            Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                            Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                            Constants.DISTINGUISHER_PRIORITY_VAL);
+                deadline.search(searcher, query, permissionFilter, collector);
+                results = collector.topDocs();
+                
+            } 
+            else if (deadline.isLimited()) {
+                results = searchTimeLimited(searcher, query, 
+                        permissionFilter, null, maximumHits, concurrent, 
+                        deadline);
+            }
+            else {
+                results = querySearcher.search(query, permissionFilter, maximumHits);
+            }
+        }
+        else {
+            querySearcher.setDefaultFieldSortScoring(forceScoring, false);
+            if (isFilterDuplicates(searchExtraData) && concurrent) {
+                results = concurrentSegmentSearcher.search(
+                        searcher, query, permissionFilter, maximumHits, 
+                        sort, forceScoring, 
+                        Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                        Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                        Constants.DISTINGUISHER_PRIORITY_VAL, deadline);
+            }
+            else if (isFilterDuplicates(searchExtraData)) {
+                EscidocCollapseCollector collector = EscidocCollapseCollector.create(
+                        sort, maximumHits, forceScoring, 
+                        false, searcher.getIndexReader(),
+                        Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                        Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                        Constants.DISTINGUISHER_PRIORITY_VAL);
+                deadline.search(searcher, query, permissionFilter, collector);
+                results = collector.topDocs();
+            }
+            else if (deadline.isLimited()) {
+                results = searchTimeLimited(searcher, query, 
+                        permissionFilter, sort, maximumHits, concurrent, 
+                        deadline);
+            }
+            else {
+                results = querySearcher.search(query, permissionFilter, maximumHits, sort);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Search top-hits and count facet-values in the same pass, 
+     * filter out duplicates if filterLatestRelease is set. 
+     * Segments are not searched concurrently.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param permissionFilter
+     *            permission-filter or null
+     * @param sort
+     *            sort or null (sort by relevance)
+     * @param maximumHits
+     *            number of hits to collect
+     * @param searchExtraData
+     *            searchExtraData
+     * @param facets
+     *            collector counting facet-values
+     * @param deadline
+     *            deadline for collecting hits
+     * @return TopDocs top-hits
+     * @throws IOException
+     *             e
+     */
+    private TopDocs searchTopDocsWithFacets(
+            final IndexSearcher searcher, final Query query, 
+            final Filter permissionFilter, final Sort sort, 
+            final int maximumHits, final SearchExtraData searchExtraData, 
+            final Collector facets, final SearchDeadline deadline) 
+                                                    throws IOException {
+        if (isFilterDuplicates(searchExtraData)) {
+            EscidocCollapseCollector collector = null;
+            if (sort == null) {
+                collector = EscidocCollapseCollector.create(
+                        maximumHits, searcher.getIndexReader(), 
+                        Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                        Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                        Constants.DISTINGUISHER_PRIORITY_VAL);
+            }
+            else {
+                collector = EscidocCollapseCollector.create(
+                        sort, maximumHits, forceScoring, 
+                        false, searcher.getIndexReader(),
+                        Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                        Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                        Constants.DISTINGUISHER_PRIORITY_VAL);
+            }
+            deadline.search(searcher, query, permissionFilter, 
+                    MultiCollector.wrap(collector, facets));
+            return collector.topDocs();
+        }
+        int numHits = Math.max(1, Math.min(maximumHits, searcher.maxDoc()));
+        TopDocsCollector collector = null;
+        if (sort == null) {
+            collector = TopScoreDocCollector.create(numHits, false);
+        }
+        else {
+            collector = TopFieldCollector.create(
+                    sort, numHits, true, forceScoring, false, false);
+        }
+        deadline.search(searcher, query, permissionFilter, 
+                MultiCollector.wrap(collector, facets));
+        return collector.topDocs();
+    }
+
+    /**
+     * Create collector counting the facet-values of all hits, 
+     * if latest releases are filtered 
+     * only hits that are not filtered out are counted.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param searchExtraData
+     *            searchExtraData with facet-fields
+     * @return FacetCollector collector
+     * @throws IOException
+     *             e
+     */
+    private FacetCollector newFacetCollector(final IndexSearcher searcher, 
+            final SearchExtraData searchExtraData) throws IOException {
+        if (isFilterDuplicates(searchExtraData)) {
+            return new FacetCollector(searcher.getIndexReader(), 
+                    searchExtraData.getFacets(), 
+                    Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                    Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                    Constants.DISTINGUISHER_PRIORITY_VAL);
+        }
+        return new FacetCollector(searcher.getIndexReader(), 
+                searchExtraData.getFacets(), null, null, 0);
+    }
+
+    /**
+     * Write facet-values with their counts as extraResponseData.
+     * 
+     * @param responseData
+     *            extraResponseData
+     * @param facets
+     *            collector that counted the facet-values
+     * @throws IOException
+     *             e
+     */
+    private void appendFacets(final StringBuilder responseData, 
+            final FacetCollector facets) throws IOException {
+        responseData.append("<").append(SearchExtraData.EXTENSION_FACETS)
+            .append(">");
+        for (String field : facets.getFields()) {
+            responseData.append("<").append(SearchExtraData.EXTENSION_FACET)
+                .append(" field=\"")
+                .append(StringEscapeUtils.escapeXml(field)).append("\">");
+            for (FacetCollector.FacetValue value 
+                                : facets.getFacetValues(field)) {
+                responseData.append("<")
+                    .append(SearchExtraData.EXTENSION_FACET_VALUE)
+                    .append(" count=\"").append(value.getCount())
+                    .append("\">")
+                    .append(StringEscapeUtils.escapeXml(value.getValue()))
+                    .append("</")
+                    .append(SearchExtraData.EXTENSION_FACET_VALUE)
+                    .append(">");
+            }
+            responseData.append("</").append(SearchExtraData.EXTENSION_FACET)
+                .append(">");
+        }
+        responseData.append("</").append(SearchExtraData.EXTENSION_FACETS)
+            .append(">");
+    }
+
+    /**
+     * Search top-hits without filtering duplicates, 
+     * stop collecting when the deadline is reached.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param permissionFilter
+     *            permission-filter or null
+     * @param sort
+     *            sort or null (sort by relevance)
+     * @param maximumHits
+     *            number of hits to collect
+     * @param concurrent
+     *            search segments concurrently
+     * @param deadline
+     *            deadline for collecting hits
+     * @return TopDocs top-hits
+     * @throws IOException
+     *             e
+     */
+    private TopDocs searchTimeLimited(
+            final IndexSearcher searcher, final Query query, 
+            final Filter permissionFilter, final Sort sort, 
+            final int maximumHits, final boolean concurrent, 
+            final SearchDeadline deadline) throws IOException {
+        int numHits = Math.max(1, Math.min(maximumHits, searcher.maxDoc()));
+        if (concurrent) {
+            return concurrentSegmentSearcher.search(
+                    searcher, query, permissionFilter, numHits, 
+                    sort, forceScoring, null, null, 0, deadline);
+        }
+        TopDocsCollector collector = null;
+        if (sort == null) {
+            collector = TopScoreDocCollector.create(numHits, false);
+        }
+        else {
+            collector = TopFieldCollector.create(
+                    sort, numHits, true, forceScoring, false, false);
+        }
+        deadline.search(searcher, query, permissionFilter, collector);
+        return collector.topDocs();
+    }
+
+    /**
+     * @return SearchDeadline deadline for collecting the hits of a search.
+     */
+    SearchDeadline newSearchDeadline() {
+        return new SearchDeadline(searchTimeout);
+    }
+
+    /**
+     * Count and log searches that exceeded the deadline.
+     * 
+     * @param deadline
+     *            deadline of the search
+     * @return boolean true if deadline was exceeded (partial result)
+     */
+    boolean checkDeadline(final SearchDeadline deadline) {
+        if (!deadline.isExceeded()) {
+            return false;
+        }
+        long expired = expiredSearches.incrementAndGet();
+        log.warn("search exceeded searchTimeout of " + searchTimeout 
+                + " ms, returning partial result (" + expired 
+                + " searches exceeded searchTimeout)");
+        return true;
+    }
+
+    /**
+     * Search the hits after the cursor, 
+     * filter out duplicates if filterLatestRelease is set.
+     * Only a queue of pageSize hits is needed, 
+     * totalHits is the same as with {@link #searchTopDocs}.
+     * 
+     * If duplicates are filtered, 
+     * the kept document of each group of duplicates is determined first, 
+     * so the hits of a page are filtered 
+     * the same way as with {@link #searchTopDocs}.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param permissionFilter
+     *            permission-filter or null
+     * @param sort
+     *            sort or null (sort by relevance)
+     * @param pageSize
+     *            number of hits to collect after the cursor
+     * @param cursor
+     *            cursor of previous page
+     * @param searchExtraData
+     *            searchExtraData
+     * @param facets
+     *            collector counting facet-values or null
+     * @param deadline
+     *            deadline for collecting hits
+     * @return TopDocs hits after the cursor
+     * @throws IOException
+     *             e
+     */
+    private TopDocs searchAfter(
+            final IndexSearcher searcher, final Query query, 
+            final Filter permissionFilter, final Sort sort, 
+            final int pageSize, final SearchCursor cursor, 
+            final SearchExtraData searchExtraData, final Collector facets, 
+            final SearchDeadline deadline) throws IOException {
+        if (!cursor.isSameGeneration(searcher.getIndexReader()) 
+            && log.isInfoEnabled()) {
+            log.info("index changed since cursor was created");
+        }
+        int numHits = Math.max(1, pageSize);
+        DistinctCountCollector duplicates = null;
+        if (isFilterDuplicates(searchExtraData)) {
+            duplicates = new DistinctCountCollector(
+                    searcher.getIndexReader(), 
+                    Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                    Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                    Constants.DISTINGUISHER_PRIORITY_VAL);
+            deadline.search(searcher, query, permissionFilter, duplicates);
+        }
+        TopDocsCollector collector = null;
+        if (sort == null) {
+            collector = TopScoreDocCollector.create(numHits, false);
+        }
+        else {
+            collector = TopFieldCollector.create(
+                    sort, numHits, true, forceScoring, false, false);
+        }
+        SearchAfterCollector searchAfterCollector = new SearchAfterCollector(
+                collector, sort, cursor, duplicates);
+        deadline.search(searcher, query, permissionFilter, 
+                MultiCollector.wrap(searchAfterCollector, facets));
+        TopDocs results = collector.topDocs();
+        int totalHits = searchAfterCollector.getTotalHits();
+        if (duplicates != null) {
+            totalHits = duplicates.getDistinctHits();
+        }
+        if (results instanceof TopFieldDocs) {
+            return new TopFieldDocs(totalHits, results.scoreDocs, 
+                    ((TopFieldDocs) results).fields, results.getMaxScore());
+        }
+        return new TopDocs(totalHits, results.scoreDocs, results.getMaxScore());
+    }
+
+    /**
+     * Initialize highlighter with query, 
+     * if highlighting is not omitted.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param searchExtraData
+     *            searchExtraData
+     */
+    void initializeHighlighter(final IndexSearcher searcher, 
+            final Query query, final SearchExtraData searchExtraData) {
+        if (highlighter != null 
+            && !searchExtraData.isOmitHighlighting()) {
+            try {
+                Query highlightQuery = query;
+                if (query instanceof FilteredQuery 
+                    && ((FilteredQuery) query).getFilter() instanceof 
+                        LatestReleaseFilterCache.LatestReleaseFilter) {
+                    highlightQuery = ((FilteredQuery) query).getQuery();
+                }
+                highlighter.initialize(searcher, highlightQuery);
+            } catch (Exception e) {
+                log.error(e);
+            }
+        }
+    }
+
+    /**
+     * @param hits
+     *            TopDocs or null
+     * @return int[] doc-ids of hits
+     */
+    static int[] getDocs(final TopDocs hits) {
+        if (hits == null) {
+            return new int[0];
+        }
+        int[] docs = new int[hits.scoreDocs.length];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = hits.scoreDocs[i].doc;
+        }
+        return docs;
+    }
+
+    /**
+     * @param hits
+     *            TopDocs or null
+     * @return float[] scores of hits
+     */
+    static float[] getScores(final TopDocs hits) {
+        if (hits == null) {
+            return new float[0];
+        }
+        float[] scores = new float[hits.scoreDocs.length];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = hits.scoreDocs[i].score;
+        }
+        return scores;
+    }
+
+    /**
+     * Only count hits, without scoring, sorting and top-hits-queue. 
+     * If filterLatestRelease is set, 
+     * the number of hits after collapsing duplicates is returned, 
+     * same as totalHits of {@link #searchTopDocs}.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param permissionFilter
+     *            permission-filter or null
+     * @param searchExtraData
+     *            searchExtraData
+     * @param facets
+     *            collector counting facet-values or null
+     * @param deadline
+     *            deadline for collecting hits
+     * @return int number of hits
+     * @throws IOException
+     *             e
+     */
+    private int countHits(
+            final IndexSearcher searcher, final Query query, 
+            final Filter permissionFilter, 
+            final SearchExtraData searchExtraData, final Collector facets, 
+            final SearchDeadline deadline) throws IOException {
+        if (isFilterDuplicates(searchExtraData)) {
+            DistinctCountCollector collector = new DistinctCountCollector(
+                    searcher.getIndexReader(), 
+                    Constants.DUPLICATE_IDENTIFIER_FIELD, 
+                    Constants.DUPLICATE_DISTINGUISHER_FIELD, 
+                    Constants.DISTINGUISHER_PRIORITY_VAL);
+            deadline.search(searcher, query, permissionFilter, 
+                    MultiCollector.wrap(collector, facets));
+            return collector.getDistinctHits();
+        }
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        deadline.search(searcher, query, permissionFilter, 
+                MultiCollector.wrap(collector, facets));
+        return collector.getTotalHits();
+    }
+
+    /**
+     * Retrieve permission-filter subquery,
+     * from the PermissionFilterQueryCache if enabled.
+     * 
+     * @param dbName
+     *            dbName
+     * @param handle
+     *            handle
+     * @param asUserId
+     *            asUserId
+     * @param withRoleId
+     *            withRoleId
+     * @return String permission-filter subquery
+     * @throws SRWDiagnostic
+     *             e
+     */
+    private String getPermissionFilterQuery(final String dbName, 
+            final String handle, final String asUserId, 
+            final String withRoleId) throws SRWDiagnostic {
+        if (cachePermissionFilters) {
+            return PermissionFilterQueryCache.getInstance()
+                .getPermissionFilter(permissionFilterGenerator, 
+                        dbName, handle, asUserId, withRoleId);
+        }
+        return permissionFilterGenerator.getPermissionFilter(
+                dbName, handle, asUserId, withRoleId);
+    }
+
+    /**
+     * Retrieves the permission-filter subquery in another thread.
+     * Handle has to be given because UserContext is bound to the 
+     * thread of the request.
+     * 
+     */
+    private final class PermissionFilterTask implements Callable<String> {
+
+        private final String dbName;
+
+        private final String handle;
+
+        private final String asUserId;
+
+        private final String withRoleId;
+
+        private final FutureTask<String> future = 
+                                        new FutureTask<String>(this);
+
+        private volatile long duration = 0;
+
+        /**
+         * Constructor.
+         * 
+         * @param dbName
+         *            dbName
+         * @param handle
+         *            handle
+         * @param asUserId
+         *            asUserId
+         * @param withRoleId
+         *            withRoleId
+         */
+        PermissionFilterTask(final String dbName, final String handle, 
+                final String asUserId, final String withRoleId) {
+            this.dbName = dbName;
+            this.handle = handle;
+            this.asUserId = asUserId;
+            this.withRoleId = withRoleId;
+        }
+
+        /**
+         * Start retrieval in another thread.
+         * 
+         * @throws SRWDiagnostic
+         *             if too many retrievals are pending
+         */
+        public void start() throws SRWDiagnostic {
+            try {
+                PERMISSION_FILTER_EXECUTOR.execute(future);
+            } catch (RejectedExecutionException e) {
+                throw new SRWDiagnostic(
+                        SRWDiagnostic.SystemTemporarilyUnavailable, 
+                        "too many pending permissionFilterQuery requests");
+            }
+        }
+
+        /**
+         * Retrieve permission-filter subquery.
+         * 
+         * @return String permission-filter subquery
+         * @throws SRWDiagnostic
+         *             e
+         */
+        public String call() throws SRWDiagnostic {
+            long time = System.currentTimeMillis();
+            try {
+                return getPermissionFilterQuery(
+                        dbName, handle, asUserId, withRoleId);
+            } finally {
+                duration = System.currentTimeMillis() - time;
+            }
+        }
+
+        /**
+         * @return time in ms the retrieval took.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Dont wait for the result anymore.
+         * 
+         */
+        public void cancel() {
+            future.cancel(true);
+        }
+
+        /**
+         * Wait for the permission-filter subquery.
+         * 
+         * @return String permission-filter subquery
+         * @throws SRWDiagnostic
+         *             e
+         */
+        public String getResult() throws SRWDiagnostic {
+            try {
+                if (permissionFilterTimeout > 0) {
+                    return future.get(
+                            permissionFilterTimeout, TimeUnit.MILLISECONDS);
+                }
+                return future.get();
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                throw new SRWDiagnostic(
+                        SRWDiagnostic.SystemTemporarilyUnavailable, 
+                        "permissionFilterQuery not retrieved within " 
+                        + permissionFilterTimeout + " ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SRWDiagnostic(SRWDiagnostic.GeneralSystemError, 
+                        "interrupted while retrieving permissionFilterQuery");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SRWDiagnostic) {
+                    throw (SRWDiagnostic) e.getCause();
+                }
+                throw new SRWDiagnostic(SRWDiagnostic.GeneralSystemError, 
+                        "couldnt retrieve permissionFilterQuery " 
+                        + e.getCause());
+            }
+        }
     }
 
     /**
@@ -905,13 +2276,11 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
 		Collection<TermType> termList = new ArrayList<TermType>();
 		IndexSearcher searcher = null;
 		try {
-			// convert the CQL search to lucene search
-			Query unanalyzedQuery = makeQuery(queryRoot);
-
-			// rewrite query to analyzed query
-			QueryParser parser = new EscidocQueryParser(getDefaultIndexField(),
-					analyzer);
-			Query query = parser.parse(unanalyzedQuery.toString());
+			// convert the CQL search to analyzed lucene search
+			EscidocQueryParser parser = 
+			        new EscidocQueryParser(getDefaultIndexField(), analyzer);
+			parser.setNumericFields(numericFields);
+			Query query = makeAnalyzedQuery(queryRoot, parser);
 			if (log.isInfoEnabled()) {
 				log.info("lucene search=" + query);
 			}
@@ -1034,25 +2403,32 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
      * 
      * @param searcher
      *            Lucene IndexSearcher
-     * @param hits
-     *            Lucene TopDocs
+     * @param docs
+     *            doc-ids of hits
+     * @param scores
+     *            scores of hits
+     * @param searchExtraData
+     *            searchExtraData
      * @param startRecord
      *            startRecord
      * @param endRecord endRecord
-     * @return String[] with search-result xmls
+     * @return Stream[] with search-result xmls 
+     *         of records startRecord to endRecord
      * @throws Exception
      *             e
      * 
      * @sb
      */
-    private Stream[] createIdentifiers(
+    Stream[] createIdentifiers(
                     final IndexSearcher searcher,
-                    final TopDocs hits, 
+                    final int[] docs, 
+                    final float[] scores, 
                     final SearchExtraData searchExtraData,
                     final int startRecord, 
                     final int endRecord)
                                 throws Exception {
-    	Stream[] searchResultXmls = new Stream[hits.totalHits];
+    	Stream[] searchResultXmls = 
+    	    new Stream[Math.max(0, endRecord - startRecord + 1)];
 
         long time = 0;
         long docTime = 0;
@@ -1066,27 +2442,28 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
                 docTime1 = System.currentTimeMillis();
             }
             org.apache.lucene.document.Document doc = 
-                        searcher.doc(hits.scoreDocs[i].doc, 
+                        searcher.doc(docs[i], 
                             new LazyFieldSelector());
             if (log.isInfoEnabled()) {
                 docTime += (System.currentTimeMillis() - docTime1);
             }
             
-            searchResultXmls[i] = new Stream();
+            Stream searchResultXml = new Stream();
+            searchResultXmls[i - startRecord + 1] = searchResultXml;
 
             //initialize surrounding xml
-            searchResultXmls[i].write(Constants.SEARCH_RESULT_START_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
+            searchResultXml.write(Constants.SEARCH_RESULT_START_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
             
             //append score-element
-            searchResultXmls[i].write(Constants.SCORE_START_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
+            searchResultXml.write(Constants.SCORE_START_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
             if (log.isInfoEnabled()) {
                 docTime1 = System.currentTimeMillis();
             }
-            searchResultXmls[i].write(Float.toString(hits.scoreDocs[i].score).getBytes(Constants.CHARACTER_ENCODING));
+            searchResultXml.write(Float.toString(scores[i]).getBytes(Constants.CHARACTER_ENCODING));
             if (log.isInfoEnabled()) {
                 docTime2 += (System.currentTimeMillis() - docTime1);
             }
-            searchResultXmls[i].write(Constants.SCORE_END_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
+            searchResultXml.write(Constants.SCORE_END_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
             
             //append highlighting
             long time1 = 0;
@@ -1097,12 +2474,12 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
                 && !searchExtraData.isOmitHighlighting()) {
                 String highlight = null;
                 try {
-                    highlight = highlighter.getFragments(doc, hits.scoreDocs[i].doc);
+                    highlight = highlighter.getFragments(doc, docs[i]);
                 } catch (Exception e) {
                     log.error(e);
                 }
                 if (highlight != null && !highlight.equals("")) {
-                	searchResultXmls[i].write(highlight.getBytes(Constants.CHARACTER_ENCODING));
+                	searchResultXml.write(highlight.getBytes(Constants.CHARACTER_ENCODING));
                 }
             }
             if (log.isInfoEnabled()) {
@@ -1135,14 +2512,14 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
 				}
 
 				// append search-result-xml from lucene
-				searchResultXmls[i].write(idFieldStr
+				searchResultXml.write(idFieldStr
 						.getBytes(Constants.CHARACTER_ENCODING));
-				searchResultXmls[i].write("\n"
+				searchResultXml.write("\n"
 						.getBytes(Constants.CHARACTER_ENCODING));
 			} else {
-            	searchResultXmls[i].write(Constants.DEFAULT_SEARCH_RESULT_START_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
-            	searchResultXmls[i].write(doc.getFieldable("PID").stringValue().getBytes(Constants.CHARACTER_ENCODING));
-            	searchResultXmls[i].write(Constants.DEFAULT_SEARCH_RESULT_END_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
+            	searchResultXml.write(Constants.DEFAULT_SEARCH_RESULT_START_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
+            	searchResultXml.write(doc.getFieldable("PID").stringValue().getBytes(Constants.CHARACTER_ENCODING));
+            	searchResultXml.write(Constants.DEFAULT_SEARCH_RESULT_END_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
 			}
             
             if (log.isInfoEnabled()) {
@@ -1150,8 +2527,8 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
             }
 
             //close surrounding xml
-            searchResultXmls[i].write(Constants.SEARCH_RESULT_END_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
-            searchResultXmls[i].lock();
+            searchResultXml.write(Constants.SEARCH_RESULT_END_ELEMENT.getBytes(Constants.CHARACTER_ENCODING));
+            searchResultXml.lock();
         }
         if (log.isInfoEnabled()) {
             log.info("highlighting-time was " + time + " ms");
@@ -1163,6 +2540,70 @@ public class EscidocLuceneTranslator extends EscidocTranslator {
         return searchResultXmls;
     }
 
+    /**
+     * Get numeric sort-field for a field declared as date, long or double, 
+     * if the indexer wrote the field trie-encoded. 
+     * Sorting then uses primitive FieldCache-arrays instead of String[].
+     * 
+     * @param reader
+     *            reader
+     * @param field
+     *            sort-field
+     * @param reverse
+     *            reverse sort-order
+     * @return SortField numeric sort-field or null
+     * @throws IOException
+     *             e
+     */
+    public SortField getNumericSortField(final IndexReader reader, 
+            final String field, final boolean reverse) throws IOException {
+        String type = numericFields.get(field);
+        if (type == null || !TypedRangeQuery.isTrieEncoded(reader, field)) {
+            return null;
+        }
+        if (TypedRangeQuery.TYPE_DOUBLE.equals(type)) {
+            return new SortField(
+                field, FieldCache.NUMERIC_UTILS_DOUBLE_PARSER, reverse);
+        }
+        return new SortField(
+                field, FieldCache.NUMERIC_UTILS_LONG_PARSER, reverse);
+    }
+
+    /**
+     * Replace sort-fields of trie-encoded numeric fields 
+     * with numeric sort-fields.
+     * 
+     * @param reader
+     *            reader
+     * @param sort
+     *            sort (string-sort or custom comparator)
+     * @return Sort sort with numeric sort-fields
+     * @throws IOException
+     *             e
+     */
+    private Sort getNumericSort(final IndexReader reader, final Sort sort) 
+                                                    throws IOException {
+        if (sort == null || numericFields.isEmpty()) {
+            return sort;
+        }
+        SortField[] sortFields = sort.getSort();
+        SortField[] numericSortFields = null;
+        for (int i = 0; i < sortFields.length; i++) {
+            if (sortFields[i].getField() == null) {
+                continue;
+            }
+            SortField numericSortField = getNumericSortField(reader, 
+                    sortFields[i].getField(), sortFields[i].getReverse());
+            if (numericSortField != null) {
+                if (numericSortFields == null) {
+                    numericSortFields = sortFields.clone();
+                }
+                numericSortFields[i] = numericSortField;
+            }
+        }
+        return numericSortFields == null ? sort : new Sort(numericSortFields);
+    }
+
     /**
      * Extracts sortKeys from request-parameter 
      * and fills them into a Lucene Sort-Object.
@@ -0,0 +1,471 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.EscidocCollapseCollector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Collector that counts the values of facet-fields of all hits, 
+ * runs alongside the collector of the top-hits 
+ * (see {@link org.apache.lucene.search.MultiCollector}).
+ * 
+ * Counts the value-ordinals of each facet-field 
+ * in an int-array per segment, the counts are merged by value 
+ * when the next segment is collected. 
+ * So collecting a hit allocates nothing. 
+ * Facet-fields may be multi-valued (eg organizational-units), 
+ * a hit is counted once for each of its values. 
+ * The values of each document are read once per segment-core 
+ * from the terms of the field (see {@link FacetOrdinals}).
+ * 
+ * If latest releases are filtered, a hit is counted only if 
+ * it is kept by the duplicate-filtering collectors 
+ * (same collapse-rule, 
+ * see {@link EscidocCollapseCollector.DuplicateFilter}): 
+ * hits that cannot get collapsed are counted directly, 
+ * of the other hits the kept document of each group 
+ * is only known after all hits are collected, 
+ * so these are counted at the end.
+ * 
+ * @author MIH
+ */
+public class FacetCollector extends Collector {
+
+    /**
+     * Value of a facet-field with number of hits.
+     */
+    public static class FacetValue {
+
+        private final String value;
+
+        private final int count;
+
+        /**
+         * @param value
+         *            value
+         * @param count
+         *            number of hits
+         */
+        public FacetValue(final String value, final int count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        /**
+         * @return String value.
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return int number of hits.
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private static final Comparator<FacetValue> COUNT_ORDER = 
+        new Comparator<FacetValue>() {
+            public int compare(final FacetValue v1, final FacetValue v2) {
+                if (v1.count != v2.count) {
+                    return v1.count > v2.count ? -1 : 1;
+                }
+                return v1.value.compareTo(v2.value);
+            }
+        };
+
+    private final String[] fields;
+
+    private final int[] limits;
+
+    private final List<Map<String, int[]>> counts;
+
+    private final IndexReader[] subReaders;
+
+    private final int[] docStarts;
+
+    // segment-core - facet-field - value-ordinals of the documents
+    private static final Map<Object, Map<String, FacetOrdinals>> ORDINALS = 
+        new WeakHashMap<Object, Map<String, FacetOrdinals>>();
+
+    // value-ordinals and counts of the current segment
+    private final FacetOrdinals[] segmentOrdinals;
+
+    private final int[][] segmentCounts;
+
+    // duplicate-filtering, null if latest releases are not filtered
+    private final EscidocCollapseCollector.DuplicateFilter duplicateFilter;
+
+    private final EscidocCollapseCollector.DuplicateGroups groups;
+
+    private EscidocCollapseCollector.Segment segment;
+
+    private int docBase = 0;
+
+    private boolean finished = false;
+
+    /**
+     * construct with top-level reader and facet-fields.
+     * 
+     * @param reader
+     *            top-level reader of the searcher
+     * @param facets
+     *            facet-field and maximum number of values to return
+     * @param duplicateIdentifierField
+     *            field containing the duplicate-identifier 
+     *            or null if latest releases are not filtered
+     * @param duplicateDistinguisherField
+     *            field containing the duplicate-distinguisher
+     * @param distinguisherPriorityValue
+     *            distinguisher of hits that are kept
+     * @throws IOException
+     *             e
+     */
+    public FacetCollector(final IndexReader reader, 
+            final Map<String, Integer> facets, 
+            final String duplicateIdentifierField, 
+            final String duplicateDistinguisherField, 
+            final int distinguisherPriorityValue) throws IOException {
+        fields = new String[facets.size()];
+        limits = new int[facets.size()];
+        counts = new ArrayList<Map<String, int[]>>(facets.size());
+        int i = 0;
+        for (Map.Entry<String, Integer> facet : facets.entrySet()) {
+            fields[i] = facet.getKey();
+            limits[i] = facet.getValue().intValue();
+            counts.add(new HashMap<String, int[]>());
+            i++;
+        }
+        segmentOrdinals = new FacetOrdinals[fields.length];
+        segmentCounts = new int[fields.length][];
+
+        List<IndexReader> readers = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders(readers, reader);
+        subReaders = readers.toArray(new IndexReader[readers.size()]);
+        docStarts = new int[subReaders.length];
+        int maxDoc = 0;
+        for (int j = 0; j < subReaders.length; j++) {
+            docStarts[j] = maxDoc;
+            maxDoc += subReaders[j].maxDoc();
+        }
+
+        if (duplicateIdentifierField != null) {
+            duplicateFilter = new EscidocCollapseCollector.DuplicateFilter(
+                    reader, duplicateIdentifierField, 
+                    duplicateDistinguisherField, distinguisherPriorityValue);
+            groups = new EscidocCollapseCollector.DuplicateGroups(
+                    duplicateFilter, false);
+        } else {
+            duplicateFilter = null;
+            groups = null;
+        }
+    }
+
+    /**
+     * @return String[] facet-fields.
+     */
+    public String[] getFields() {
+        return fields;
+    }
+
+    /**
+     * Get the most frequent values of a facet-field, 
+     * ordered by number of hits.
+     * 
+     * @param field
+     *            facet-field
+     * @return List values with number of hits
+     * @throws IOException
+     *             e
+     */
+    public List<FacetValue> getFacetValues(final String field) 
+                                                throws IOException {
+        finish();
+        List<FacetValue> values = new ArrayList<FacetValue>();
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(field)) {
+                for (Map.Entry<String, int[]> entry 
+                                : counts.get(i).entrySet()) {
+                    values.add(new FacetValue(
+                            entry.getKey(), entry.getValue()[0]));
+                }
+                Collections.sort(values, COUNT_ORDER);
+                if (values.size() > limits[i]) {
+                    values = values.subList(0, limits[i]);
+                }
+                break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setScorer(final Scorer scorer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void collect(final int doc) {
+        if (segment != null) {
+            int group = segment.getGroup(doc);
+            if (group != 0) {
+                // count when kept document of group is known
+                groups.add(group, docBase + doc, segment.isPriority(doc), 0f);
+                return;
+            }
+        }
+        for (int i = 0; i < fields.length; i++) {
+            int[] ordinals = segmentOrdinals[i].ordinals;
+            int[] counts = segmentCounts[i];
+            for (int j = segmentOrdinals[i].starts[doc]; 
+                    j < segmentOrdinals[i].starts[doc + 1]; j++) {
+                counts[ordinals[j]]++;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNextReader(final IndexReader reader, final int base) 
+                                                    throws IOException {
+        mergeSegmentCounts();
+        if (duplicateFilter != null) {
+            segment = duplicateFilter.getSegment(reader, base);
+        }
+        docBase = base;
+        for (int i = 0; i < fields.length; i++) {
+            segmentOrdinals[i] = getOrdinals(reader, fields[i]);
+            segmentCounts[i] = 
+                new int[segmentOrdinals[i].lookup.length];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * Merge counts of current segment by value.
+     */
+    private void mergeSegmentCounts() {
+        for (int i = 0; i < fields.length; i++) {
+            if (segmentCounts[i] == null) {
+                continue;
+            }
+            for (int ordinal = 0; ordinal < segmentCounts[i].length; 
+                                                            ordinal++) {
+                if (segmentCounts[i][ordinal] > 0) {
+                    add(i, segmentOrdinals[i].lookup[ordinal], 
+                            segmentCounts[i][ordinal]);
+                }
+            }
+            segmentOrdinals[i] = null;
+            segmentCounts[i] = null;
+        }
+    }
+
+    /**
+     * Merge counts of last segment, 
+     * count kept documents of collapsible groups.
+     * 
+     * @throws IOException
+     *             e
+     */
+    private void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        mergeSegmentCounts();
+        if (groups == null) {
+            return;
+        }
+        for (int doc : groups.getDocs()) {
+            int segment = ReaderUtil.subIndex(doc, docStarts);
+            int segmentDoc = doc - docStarts[segment];
+            for (int i = 0; i < fields.length; i++) {
+                FacetOrdinals facetOrdinals = 
+                    getOrdinals(subReaders[segment], fields[i]);
+                for (int j = facetOrdinals.starts[segmentDoc]; 
+                        j < facetOrdinals.starts[segmentDoc + 1]; j++) {
+                    add(i, facetOrdinals.lookup[
+                            facetOrdinals.ordinals[j]], 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get value-ordinals of the documents of a segment 
+     * from cache or read them from the terms of the field.
+     * 
+     * @param reader
+     *            segment-reader
+     * @param field
+     *            facet-field
+     * @return FacetOrdinals value-ordinals
+     * @throws IOException
+     *             e
+     */
+    private static FacetOrdinals getOrdinals(
+            final IndexReader reader, final String field) 
+                                                throws IOException {
+        Object coreKey = reader.getCoreCacheKey();
+        synchronized (ORDINALS) {
+            Map<String, FacetOrdinals> fieldOrdinals = ORDINALS.get(coreKey);
+            if (fieldOrdinals != null && fieldOrdinals.get(field) != null) {
+                return fieldOrdinals.get(field);
+            }
+        }
+        FacetOrdinals facetOrdinals = new FacetOrdinals(reader, field);
+        synchronized (ORDINALS) {
+            Map<String, FacetOrdinals> fieldOrdinals = ORDINALS.get(coreKey);
+            if (fieldOrdinals == null) {
+                fieldOrdinals = new HashMap<String, FacetOrdinals>();
+                ORDINALS.put(coreKey, fieldOrdinals);
+            }
+            fieldOrdinals.put(field, facetOrdinals);
+        }
+        return facetOrdinals;
+    }
+
+    /**
+     * Value-ordinals of the documents of one segment for one field, 
+     * the field may have several values per document. 
+     * The ordinals of document doc are 
+     * ordinals[starts[doc]] to ordinals[starts[doc + 1] - 1], 
+     * lookup holds the value of each ordinal.
+     */
+    private static final class FacetOrdinals {
+
+        private final String[] lookup;
+
+        private final int[] starts;
+
+        private final int[] ordinals;
+
+        /**
+         * Read the terms of the field, 
+         * first pass counts the values of each document, 
+         * second pass fills in the ordinals.
+         * 
+         * @param reader
+         *            segment-reader
+         * @param field
+         *            facet-field
+         * @throws IOException
+         *             e
+         */
+        private FacetOrdinals(final IndexReader reader, final String field) 
+                                                    throws IOException {
+            List<String> values = new ArrayList<String>();
+            starts = new int[reader.maxDoc() + 1];
+            TermDocs termDocs = reader.termDocs();
+            TermEnum termEnum = reader.terms(new Term(field));
+            try {
+                do {
+                    Term term = termEnum.term();
+                    if (term == null || !term.field().equals(field)) {
+                        break;
+                    }
+                    values.add(term.text());
+                    termDocs.seek(termEnum);
+                    while (termDocs.next()) {
+                        starts[termDocs.doc() + 1]++;
+                    }
+                } while (termEnum.next());
+                for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                    starts[doc + 1] += starts[doc];
+                }
+                lookup = values.toArray(new String[values.size()]);
+                ordinals = new int[starts[reader.maxDoc()]];
+                int[] positions = new int[reader.maxDoc()];
+                System.arraycopy(starts, 0, positions, 0, positions.length);
+                for (int ordinal = 0; ordinal < lookup.length; ordinal++) {
+                    termDocs.seek(new Term(field, lookup[ordinal]));
+                    while (termDocs.next()) {
+                        ordinals[positions[termDocs.doc()]++] = ordinal;
+                    }
+                }
+            } finally {
+                termEnum.close();
+                termDocs.close();
+            }
+        }
+    }
+
+    /**
+     * Add count of a value.
+     * 
+     * @param field
+     *            index of facet-field
+     * @param value
+     *            value
+     * @param count
+     *            number of hits
+     */
+    private void add(final int field, final String value, final int count) {
+        int[] total = counts.get(field).get(value);
+        if (total == null) {
+            counts.get(field).put(value, new int[] {count});
+        } else {
+            total[0] += count;
+        }
+    }
+
+}
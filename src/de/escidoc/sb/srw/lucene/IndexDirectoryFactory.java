@@ -0,0 +1,416 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+
+package de.escidoc.sb.srw.lucene;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.SimpleFSDirectory;
+
+import de.escidoc.core.common.util.logger.AppLogger;
+import de.escidoc.sb.srw.Constants;
+
+/**
+ * Singleton that opens the lucene-Directory for an index.
+ * Every index gets opened through this factory, so the
+ * Directory-implementation configured for the srw-database is used:
+ * 
+ * Configuration is read per index-path, 
+ * if indexPath is a comma-separated list for each of the paths:
+ * 
+ * cqlTranslator.directoryType: 
+ *     fs (default, lucene chooses implementation), 
+ *     mmap, nio, simple 
+ *     or ram (index is copied into memory once, changes are not visible)
+ * cqlTranslator.directoryMaxChunkSize: 
+ *     max size of one mapped chunk in bytes (only mmap)
+ * cqlTranslator.directoryPreload: 
+ *     read all index-files once when opening the directory, 
+ *     so they are in the os file-cache (only fs, mmap, nio, simple)
+ * 
+ * Directories are reference-counted: readers have to be opened 
+ * from a Directory retrieved with {@link #acquireDirectory(String)} 
+ * and the Directory released with {@link #releaseDirectory(Directory)} 
+ * when the readers are closed. If the configuration of an index changes, 
+ * the next acquire opens a new Directory, the old one is closed 
+ * when the last reader opened from it was released.
+ * 
+ * @author MIH
+ */
+public final class IndexDirectoryFactory {
+
+    public static final String TYPE_FS = "fs";
+
+    public static final String TYPE_MMAP = "mmap";
+
+    public static final String TYPE_NIO = "nio";
+
+    public static final String TYPE_SIMPLE = "simple";
+
+    public static final String TYPE_RAM = "ram";
+
+    private static final int PRELOAD_BUFFER_SIZE = 65536;
+
+    private static IndexDirectoryFactory instance = null;
+
+    private static AppLogger log =
+        new AppLogger(IndexDirectoryFactory.class.getName());
+
+    /** Holds configuration for each index. */
+    private final ConcurrentMap<String, DirectoryConfig> configs = 
+        new ConcurrentHashMap<String, DirectoryConfig>();
+
+    /** Holds opened Directory for each index. */
+    private final ConcurrentMap<String, Directory> directories = 
+        new ConcurrentHashMap<String, Directory>();
+
+    /** 
+     * Holds number of references on each open Directory 
+     * (the factory holds one while the Directory is current). 
+     */
+    private final Map<Directory, Integer> refCounts = 
+        new IdentityHashMap<Directory, Integer>();
+
+    /**
+     * private Constructor for Singleton.
+     * 
+     */
+    private IndexDirectoryFactory() {
+    }
+
+    /**
+     * Only initialize Object once.
+     * 
+     * @return IndexDirectoryFactory IndexDirectoryFactory
+     */
+    public static synchronized IndexDirectoryFactory getInstance() {
+        if (instance == null) {
+            instance = new IndexDirectoryFactory();
+        }
+        return instance;
+    }
+
+    /**
+     * Read Directory-configuration for index from srw-database properties.
+     * 
+     * @param indexPath
+     *            path to the lucene-index
+     * @param properties
+     *            properties
+     */
+    public synchronized void configure(
+            final String indexPath, final Properties properties) {
+        if (indexPath == null) {
+            return;
+        }
+        String[] indexPaths = IndexSearcherCache.splitIndexPaths(indexPath);
+        if (indexPaths.length > 1) {
+            for (int i = 0; i < indexPaths.length; i++) {
+                configure(indexPaths[i], properties);
+            }
+            return;
+        }
+        DirectoryConfig config = new DirectoryConfig();
+        String temp = (String) properties.get(Constants.PROPERTY_DIRECTORY_TYPE);
+        if (temp != null && temp.trim().length() != 0) {
+            temp = temp.trim().toLowerCase();
+            if (temp.equals(TYPE_FS) || temp.equals(TYPE_MMAP) 
+                    || temp.equals(TYPE_NIO) || temp.equals(TYPE_SIMPLE) 
+                    || temp.equals(TYPE_RAM)) {
+                config.type = temp;
+            } else {
+                log.error("unknown directoryType " + temp 
+                        + ", using " + TYPE_FS);
+            }
+        }
+        temp = (String) properties.get(
+                Constants.PROPERTY_DIRECTORY_MAX_CHUNK_SIZE);
+        if (temp != null && temp.trim().length() != 0) {
+            try {
+                config.maxChunkSize = Integer.parseInt(temp.trim());
+            }
+            catch (NumberFormatException e) {
+                log.error(e);
+            }
+        }
+        temp = (String) properties.get(Constants.PROPERTY_DIRECTORY_PRELOAD);
+        if (temp != null && temp.trim().length() != 0) {
+            config.preload = Boolean.valueOf(temp.trim()).booleanValue();
+        }
+        if (!config.equals(configs.put(indexPath, config))) {
+            // open Directory with new configuration next time,
+            // old Directory gets closed when its readers are released
+            Directory directory = directories.remove(indexPath);
+            if (directory != null) {
+                try {
+                    releaseDirectory(directory);
+                } catch (IOException e) {
+                    log.error("couldnt close directory of " + indexPath, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * get Directory for given indexPath and hold a reference on it.
+     * Has to get released with {@link #releaseDirectory(Directory)}
+     * after the readers opened from it are closed.
+     * 
+     * @param indexPath
+     *            path to the lucene-index
+     * @return Directory directory
+     * @throws IOException
+     *             e
+     */
+    public synchronized Directory acquireDirectory(final String indexPath) 
+                                                    throws IOException {
+        Directory directory = directories.get(indexPath);
+        if (directory == null) {
+            directory = openDirectory(indexPath);
+        }
+        acquireDirectory(directory);
+        return directory;
+    }
+
+    /**
+     * hold another reference on a Directory 
+     * retrieved with {@link #acquireDirectory(String)}.
+     * 
+     * @param directory
+     *            Directory
+     */
+    public synchronized void acquireDirectory(final Directory directory) {
+        Integer refCount = refCounts.get(directory);
+        if (refCount == null) {
+            throw new IllegalStateException("directory is already closed");
+        }
+        refCounts.put(directory, Integer.valueOf(refCount.intValue() + 1));
+    }
+
+    /**
+     * release reference on Directory.
+     * Close Directory if it was replaced 
+     * and this was the last reference.
+     * 
+     * @param directory
+     *            Directory
+     * @throws IOException
+     *             e
+     */
+    public synchronized void releaseDirectory(final Directory directory) 
+                                                    throws IOException {
+        Integer refCount = refCounts.get(directory);
+        if (refCount == null) {
+            return;
+        }
+        if (refCount.intValue() > 1) {
+            refCounts.put(directory, Integer.valueOf(refCount.intValue() - 1));
+        } else {
+            refCounts.remove(directory);
+            directory.close();
+            if (log.isInfoEnabled()) {
+                log.info("closed replaced directory " + directory);
+            }
+        }
+    }
+
+    /**
+     * get configured directoryType for given indexPath.
+     * 
+     * @param indexPath
+     *            path to the lucene-index
+     * @return String directoryType
+     */
+    public String getDirectoryType(final String indexPath) {
+        return getConfig(indexPath).type;
+    }
+
+    /**
+     * get Directory-settings of index (for explain).
+     * 
+     * @param indexPath
+     *            path to the lucene-index
+     * @return Map settings (name, value)
+     */
+    public Map<String, String> getSettings(final String indexPath) {
+        DirectoryConfig config = 
+            getConfig(IndexSearcherCache.splitIndexPaths(indexPath)[0]);
+        Map<String, String> settings = new LinkedHashMap<String, String>();
+        settings.put("directoryType", config.type);
+        if (config.maxChunkSize > 0) {
+            settings.put("directoryMaxChunkSize", 
+                    Integer.toString(config.maxChunkSize));
+        }
+        settings.put("directoryPreload", Boolean.toString(config.preload));
+        return settings;
+    }
+
+    /**
+     * get configuration for index, default-configuration if not configured.
+     * 
+     * @param indexPath
+     *            path to the lucene-index
+     * @return DirectoryConfig configuration
+     */
+    private DirectoryConfig getConfig(final String indexPath) {
+        DirectoryConfig config = null;
+        if (indexPath != null) {
+            config = configs.get(indexPath);
+        }
+        if (config == null) {
+            config = new DirectoryConfig();
+        }
+        return config;
+    }
+
+    /**
+     * open Directory with configured implementation and put it into cache.
+     * 
+     * @param indexPath
+     *            path to the lucene-index
+     * @return Directory directory
+     * @throws IOException
+     *             e
+     */
+    private synchronized Directory openDirectory(final String indexPath) 
+                                                    throws IOException {
+        Directory directory = directories.get(indexPath);
+        if (directory != null) {
+            return directory;
+        }
+        long time = System.currentTimeMillis();
+        DirectoryConfig config = getConfig(indexPath);
+        File path = new File(indexPath);
+        if (config.type.equals(TYPE_MMAP)) {
+            MMapDirectory mmapDirectory = new MMapDirectory(path);
+            if (config.maxChunkSize > 0) {
+                mmapDirectory.setMaxChunkSize(config.maxChunkSize);
+            }
+            directory = mmapDirectory;
+        } else if (config.type.equals(TYPE_NIO)) {
+            directory = new NIOFSDirectory(path);
+        } else if (config.type.equals(TYPE_SIMPLE)) {
+            directory = new SimpleFSDirectory(path);
+        } else if (config.type.equals(TYPE_RAM)) {
+            FSDirectory fsDirectory = FSDirectory.open(path);
+            try {
+                directory = new RAMDirectory(fsDirectory);
+            } finally {
+                fsDirectory.close();
+            }
+        } else {
+            directory = FSDirectory.open(path);
+        }
+        if (config.preload && !config.type.equals(TYPE_RAM)) {
+            preload(directory);
+        }
+        directories.put(indexPath, directory);
+        refCounts.put(directory, Integer.valueOf(1));
+        if (log.isInfoEnabled()) {
+            log.info("opened " + config.type + "-directory for " + indexPath 
+                    + " in " + (System.currentTimeMillis() - time) + " ms");
+        }
+        return directory;
+    }
+
+    /**
+     * Read all files of the directory once,
+     * so they get loaded into the os file-cache.
+     * 
+     * @param directory
+     *            Directory
+     * @throws IOException
+     *             e
+     */
+    private void preload(final Directory directory) throws IOException {
+        byte[] buffer = new byte[PRELOAD_BUFFER_SIZE];
+        for (String fileName : directory.listAll()) {
+            IndexInput input = null;
+            try {
+                input = directory.openInput(fileName);
+                long length = input.length();
+                long position = 0;
+                while (position < length) {
+                    int len = (int) Math.min(buffer.length, length - position);
+                    input.readBytes(buffer, 0, len);
+                    position += len;
+                }
+            } catch (FileNotFoundException e) {
+                // file was deleted in the meantime
+            } finally {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Directory-configuration of one index.
+     */
+    private static final class DirectoryConfig {
+
+        private String type = TYPE_FS;
+
+        private int maxChunkSize = 0;
+
+        private boolean preload = false;
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof DirectoryConfig)) {
+                return false;
+            }
+            DirectoryConfig other = (DirectoryConfig) obj;
+            return type.equals(other.type) 
+                && maxChunkSize == other.maxChunkSize 
+                && preload == other.preload;
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode() + 31 * maxChunkSize + (preload ? 1 : 0);
+        }
+    }
+
+}
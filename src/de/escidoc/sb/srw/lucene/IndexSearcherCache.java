@@ -23,52 +23,104 @@
 /*
  * Copyright 2006-2008 Fachinformationszentrum Karlsruhe Gesellschaft
  * fuer wissenschaftlich-technische Information mbH and Max-Planck-
- * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.
  * All rights reserved.  Use is subject to license terms.
  */
 package de.escidoc.sb.srw.lucene;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Directory;
 
-import de.escidoc.core.common.exceptions.system.SystemException;
 import de.escidoc.core.common.util.logger.AppLogger;
 
 /**
  * @author mih
- * 
- *         Singleton for caching IndexSearchers (one for each index)
- * 
+ *
+ *         Singleton for caching IndexSearchers (one for each index).
+ *
+ *         The current IndexSearcher of an index is published through an
+ *         AtomicReference, so request-threads neither lock nor access the
+ *         filesystem to get a searcher. A background-thread checks all
+ *         cached indexes for changes every refreshInterval milliseconds,
+ *         reopens the changed ones (only changed segments get loaded)
+ *         and replaces the published searcher. The replaced searcher
+ *         gets closed as soon as the last request using it released it.
+ *         If the Directory of an index was reconfigured, the index gets
+ *         opened with the new Directory instead of reopened, the old
+ *         Directory gets closed with the last searcher using it.
+ *
+ *         indexPath may also be a comma-separated list of index-paths.
+ *         Then the indexes get searched as one logical index through a
+ *         MultiReader (global term-statistics, document-ids across all
+ *         indexes). The MultiReader gets rebuilt whenever one of the
+ *         indexes was reopened.
+ *
  */
 public final class IndexSearcherCache {
 
+    /** Default interval for checking the indexes for changes (ms). */
+    public static final long DEFAULT_REFRESH_INTERVAL = 1000;
+
     private static IndexSearcherCache instance = null;
 
     private static AppLogger log =
         new AppLogger(IndexSearcherCache.class.getName());
 
-    /** Holds IndexSeracher for each index. */
-    private Map<String, IndexSearcher> indexSearchers = 
-                        new HashMap<String, IndexSearcher>();
+    /** Holds IndexSearcher for each index. */
+    private final ConcurrentMap<String, AtomicReference<CachedIndexSearcher>>
+        indexSearchers =
+            new ConcurrentHashMap<String, AtomicReference<CachedIndexSearcher>>();
+
+    /** Holds index-paths of each federated index (list of indexes). */
+    private final ConcurrentMap<String, String[]> federatedIndexes =
+            new ConcurrentHashMap<String, String[]>();
+
+    /** Holds IndexSearcherWarmer for each index. */
+    private final ConcurrentMap<String, IndexSearcherWarmer> warmers =
+            new ConcurrentHashMap<String, IndexSearcherWarmer>();
+
+    /** Thread that checks indexes for changes. */
+    private final ScheduledExecutorService refresher =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "IndexSearcherCache-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private ScheduledFuture< ? > refreshTask = null;
+
+    private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
 
     /**
      * private Constructor for Singleton.
-     * 
+     *
      */
     private IndexSearcherCache() {
+        scheduleRefresh();
     }
 
     /**
      * Only initialize Object once. Check for old objects in cache.
-     * 
+     *
      * @return IndexerResourceCache IndexerResourceCache
-     * 
+     *
      * @om
      */
     public static synchronized IndexSearcherCache getInstance() {
@@ -79,31 +131,444 @@ public final class IndexSearcherCache {
     }
 
     /**
-     * get IndexSearcher for given indexPath and write it into
-     * cache.
-     * 
-     * @param identifier
-     *            identifier
-     * @throws SystemException
+     * get IndexSearcher for given indexPath.
+     * If index was not opened yet, open it and write it into cache.
+     * Returned searcher has to get released
+     * with {@link #releaseIndexSearcher(IndexSearcher)}.
+     *
+     * @param indexPath
+     *            path to the lucene-index
+     * @return IndexSearcher searcher
+     * @throws IOException
+     *             e
+     * @throws CorruptIndexException
+     *             e
+     */
+    public IndexSearcher getIndexSearcher(final String indexPath)
+            throws IOException, CorruptIndexException {
+        AtomicReference<CachedIndexSearcher> reference =
+                                    indexSearchers.get(indexPath);
+        if (reference == null) {
+            String[] indexPaths = splitIndexPaths(indexPath);
+            if (indexPaths.length > 1) {
+                reference = openFederatedIndexSearcher(indexPath, indexPaths);
+            } else {
+                reference = openIndexSearcher(indexPath);
+            }
+        }
+        while (true) {
+            CachedIndexSearcher current = reference.get();
+            if (current.tryIncRef()) {
+                return current;
+            }
+            //searcher was replaced and closed in the meantime, retry
+        }
+    }
+
+    /**
+     * split comma-separated list of index-paths.
+     *
+     * @param indexPath
+     *            path to the lucene-index or comma-separated list of paths
+     * @return String[] index-paths
+     */
+    public static String[] splitIndexPaths(final String indexPath) {
+        String[] indexPaths = indexPath.split(",");
+        for (int i = 0; i < indexPaths.length; i++) {
+            indexPaths[i] = indexPaths[i].trim();
+        }
+        return indexPaths;
+    }
+
+    /**
+     * release IndexSearcher retrieved with getIndexSearcher.
+     *
+     * @param searcher
+     *            IndexSearcher
+     * @throws IOException
+     *             e
+     */
+    public void releaseIndexSearcher(final IndexSearcher searcher)
+            throws IOException {
+        if (searcher instanceof CachedIndexSearcher) {
+            ((CachedIndexSearcher) searcher).decRef();
+        } else if (searcher != null) {
+            searcher.getIndexReader().decRef();
+        }
+    }
+
+    /**
+     * Set the warmer that is called with each newly opened IndexSearcher
+     * of the given index before the searcher gets published.
+     *
+     * @param indexPath
+     *            path to the lucene-index
+     * @param warmer
+     *            IndexSearcherWarmer
+     */
+    public void setIndexSearcherWarmer(
+            final String indexPath, final IndexSearcherWarmer warmer) {
+        if (warmer == null) {
+            warmers.remove(indexPath);
+        } else {
+            warmers.put(indexPath, warmer);
+        }
+    }
+
+    /**
+     * Set the interval in milliseconds
+     * the indexes get checked for changes.
+     *
+     * @param interval
+     *            interval in milliseconds
+     */
+    public synchronized void setRefreshInterval(final long interval) {
+        if (interval > 0 && interval != refreshInterval) {
+            refreshInterval = interval;
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * @return long refreshInterval in milliseconds.
+     */
+    public synchronized long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * open index for given indexPath and put it into the cache.
+     * Only blocks threads that request an index
+     * that was not opened before.
+     *
+     * @param indexPath
+     *            path to the lucene-index
+     * @return AtomicReference reference holding the IndexSearcher
+     * @throws IOException
+     *             e
+     */
+    private synchronized AtomicReference<CachedIndexSearcher> openIndexSearcher(
+            final String indexPath) throws IOException {
+        AtomicReference<CachedIndexSearcher> reference =
+                                indexSearchers.get(indexPath);
+        if (reference == null) {
+            CachedIndexSearcher searcher = openIndexSearcher(
+                    IndexDirectoryFactory.getInstance()
+                        .acquireDirectory(indexPath), null);
+            warm(indexPath, searcher);
+            reference = new AtomicReference<CachedIndexSearcher>(searcher);
+            indexSearchers.put(indexPath, reference);
+        }
+        return reference;
+    }
+
+    /**
+     * open IndexSearcher on a MultiReader over the given indexes
+     * and put it into the cache.
+     *
+     * @param indexPath
+     *            comma-separated list of index-paths (key in cache)
+     * @param indexPaths
+     *            index-paths
+     * @return AtomicReference reference holding the IndexSearcher
+     * @throws IOException
+     *             e
+     */
+    private synchronized AtomicReference<CachedIndexSearcher>
+            openFederatedIndexSearcher(final String indexPath,
+                    final String[] indexPaths) throws IOException {
+        AtomicReference<CachedIndexSearcher> reference =
+                                indexSearchers.get(indexPath);
+        if (reference == null) {
+            CachedIndexSearcher searcher = openMultiSearcher(indexPaths);
+            warm(indexPath, searcher);
+            reference = new AtomicReference<CachedIndexSearcher>(searcher);
+            federatedIndexes.put(indexPath, indexPaths);
+            indexSearchers.put(indexPath, reference);
+        }
+        return reference;
+    }
+
+    /**
+     * open IndexSearcher with a reader of an acquired Directory.
+     * If the reader cannot get opened, the Directory is released.
+     *
+     * @param directory
+     *            Directory acquired from IndexDirectoryFactory
+     * @param reader
+     *            reader to reopen, null to open a new reader
+     * @return CachedIndexSearcher searcher, 
+     *         null if reader is unchanged
+     * @throws IOException
      *             e
      */
-	public synchronized IndexSearcher getIndexSearcher(final String indexPath)
-			throws IOException, CorruptIndexException {
-		if (indexSearchers.get(indexPath) == null
-				|| !indexSearchers.get(indexPath).getIndexReader().isCurrent()) {
-			if (indexSearchers.get(indexPath) != null) {
-				try {
-					indexSearchers.get(indexPath).close();
-				} catch (Exception e) {
-				}
-			}
-			indexSearchers.put(indexPath,
-					new IndexSearcher(FSDirectory.open(new File(indexPath)),
-							true));
-		}
-		IndexSearcher current = indexSearchers.get(indexPath);
-		current.getIndexReader().incRef();
-		return current;
-	}
+    private CachedIndexSearcher openIndexSearcher(
+            final Directory directory, final IndexReader reader)
+                                                throws IOException {
+        IndexReader newReader = null;
+        try {
+            if (reader == null) {
+                newReader = IndexReader.open(directory, true);
+            } else if (!reader.isCurrent()) {
+                newReader = reader.reopen();
+            }
+        } finally {
+            if (newReader == null || newReader == reader) {
+                IndexDirectoryFactory.getInstance()
+                                .releaseDirectory(directory);
+            }
+        }
+        if (newReader == null || newReader == reader) {
+            return null;
+        }
+        return new CachedIndexSearcher(
+                newReader, new Directory[] {directory});
+    }
+
+    /**
+     * open IndexSearcher on a MultiReader over the currently 
+     * published readers of the given indexes. 
+     * The MultiReader holds a reference on each of the readers, 
+     * the searcher on each of their Directories.
+     *
+     * @param indexPaths
+     *            index-paths
+     * @return CachedIndexSearcher searcher
+     * @throws IOException
+     *             e
+     */
+    private CachedIndexSearcher openMultiSearcher(final String[] indexPaths)
+                                                throws IOException {
+        IndexSearcher[] searchers = new IndexSearcher[indexPaths.length];
+        try {
+            IndexReader[] readers = new IndexReader[indexPaths.length];
+            Directory[] directories = new Directory[indexPaths.length];
+            for (int i = 0; i < indexPaths.length; i++) {
+                searchers[i] = getIndexSearcher(indexPaths[i]);
+                readers[i] = searchers[i].getIndexReader();
+                directories[i] = 
+                    ((CachedIndexSearcher) searchers[i]).directories[0];
+            }
+            MultiReader reader = new MultiReader(readers, false);
+            for (int i = 0; i < directories.length; i++) {
+                IndexDirectoryFactory.getInstance()
+                                .acquireDirectory(directories[i]);
+            }
+            return new CachedIndexSearcher(reader, directories);
+        } finally {
+            for (int i = 0; i < searchers.length; i++) {
+                releaseIndexSearcher(searchers[i]);
+            }
+        }
+    }
+
+    /**
+     * (Re)schedule the task that checks the indexes for changes.
+     */
+    private synchronized void scheduleRefresh() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+        refreshTask = refresher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                refreshAll();
+            }
+        }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Check all cached indexes for changes.
+     * Exceptions are logged, so the refresher-thread keeps running.
+     */
+    private void refreshAll() {
+        // first reopen single indexes, then rebuild federated indexes
+        for (Map.Entry<String, AtomicReference<CachedIndexSearcher>> entry
+                                        : indexSearchers.entrySet()) {
+            if (federatedIndexes.containsKey(entry.getKey())) {
+                continue;
+            }
+            try {
+                refresh(entry.getKey(), entry.getValue());
+            } catch (Throwable e) {
+                log.error("couldnt refresh IndexSearcher for "
+                        + entry.getKey(), e);
+            }
+        }
+        for (Map.Entry<String, String[]> entry
+                                        : federatedIndexes.entrySet()) {
+            try {
+                refreshFederated(entry.getKey(), entry.getValue(),
+                        indexSearchers.get(entry.getKey()));
+            } catch (Throwable e) {
+                log.error("couldnt refresh IndexSearcher for "
+                        + entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Check if one of the indexes of a federated index was reopened.
+     * If so, open a new MultiReader, publish a new IndexSearcher
+     * and release the old one.
+     *
+     * @param indexPath
+     *            comma-separated list of index-paths (key in cache)
+     * @param indexPaths
+     *            index-paths
+     * @param reference
+     *            reference holding the current IndexSearcher
+     * @throws IOException
+     *             e
+     */
+    private void refreshFederated(
+            final String indexPath, final String[] indexPaths,
+            final AtomicReference<CachedIndexSearcher> reference)
+                                                    throws IOException {
+        CachedIndexSearcher current = reference.get();
+        IndexReader[] currentReaders =
+            current.getIndexReader().getSequentialSubReaders();
+        boolean changed = false;
+        for (int i = 0; i < indexPaths.length; i++) {
+            AtomicReference<CachedIndexSearcher> indexReference =
+                                    indexSearchers.get(indexPaths[i]);
+            if (indexReference == null
+                || indexReference.get().getIndexReader() != currentReaders[i]) {
+                changed = true;
+                break;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        CachedIndexSearcher searcher = openMultiSearcher(indexPaths);
+        warm(indexPath, searcher);
+        reference.set(searcher);
+        current.decRef();
+        if (log.isInfoEnabled()) {
+            log.info("reopened federated index " + indexPath + " in "
+                    + (System.currentTimeMillis() - time) + " ms");
+        }
+    }
+
+    /**
+     * Check index for changes. If changed, reopen the IndexReader,
+     * publish a new IndexSearcher and release the old one.
+     * If the Directory of the index was reconfigured, 
+     * open a new IndexReader with the new Directory.
+     *
+     * @param indexPath
+     *            path to the lucene-index
+     * @param reference
+     *            reference holding the current IndexSearcher
+     * @throws IOException
+     *             e
+     */
+    private void refresh(
+            final String indexPath,
+            final AtomicReference<CachedIndexSearcher> reference)
+                                                    throws IOException {
+        CachedIndexSearcher current = reference.get();
+        long time = System.currentTimeMillis();
+        Directory directory = 
+            IndexDirectoryFactory.getInstance().acquireDirectory(indexPath);
+        CachedIndexSearcher searcher;
+        if (directory == current.directories[0]) {
+            searcher = openIndexSearcher(
+                            directory, current.getIndexReader());
+        } else {
+            searcher = openIndexSearcher(directory, null);
+        }
+        if (searcher == null) {
+            return;
+        }
+        warm(indexPath, searcher);
+        reference.set(searcher);
+        current.decRef();
+        if (log.isInfoEnabled()) {
+            log.info("reopened index " + indexPath + " in "
+                    + (System.currentTimeMillis() - time) + " ms");
+        }
+    }
+
+    /**
+     * Call warmer configured for the index with the not yet published
+     * IndexSearcher. If warming fails, the searcher gets published anyway.
+     *
+     * @param indexPath
+     *            path to the lucene-index
+     * @param searcher
+     *            IndexSearcher
+     */
+    private void warm(final String indexPath, final IndexSearcher searcher) {
+        IndexSearcherWarmer warmer = warmers.get(indexPath);
+        if (warmer == null) {
+            return;
+        }
+        try {
+            warmer.warm(searcher);
+        } catch (Throwable e) {
+            log.error("couldnt warm IndexSearcher for " + indexPath, e);
+        }
+    }
+
+    /**
+     * IndexSearcher with own reference-count.
+     * The cache holds one reference as long as the searcher is published,
+     * each request holds one reference while searching.
+     * When the last reference is released,
+     * the underlying IndexReader gets closed.
+     */
+    private static final class CachedIndexSearcher extends IndexSearcher {
+
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        // Directories the reader was opened from, 
+        // one reference on each is held until the reader is released
+        private final Directory[] directories;
+
+        private CachedIndexSearcher(
+                final IndexReader reader, final Directory[] directories) {
+            super(reader);
+            this.directories = directories;
+        }
+
+        /**
+         * Increment reference-count if searcher is not closed yet.
+         *
+         * @return boolean true if reference could be acquired
+         */
+        private boolean tryIncRef() {
+            int count;
+            while ((count = refCount.get()) > 0) {
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Decrement reference-count.
+         * Close reader and release its Directories 
+         * if reference-count drops to 0.
+         *
+         * @throws IOException
+         *             e
+         */
+        private void decRef() throws IOException {
+            if (refCount.decrementAndGet() == 0) {
+                try {
+                    getIndexReader().decRef();
+                } finally {
+                    for (int i = 0; i < directories.length; i++) {
+                        IndexDirectoryFactory.getInstance()
+                                .releaseDirectory(directories[i]);
+                    }
+                }
+            }
+        }
+
+    }
 
 }
@@ -21,45 +21,33 @@
  */
 
 /*
- * Copyright 2008 Fachinformationszentrum Karlsruhe Gesellschaft
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
  * fuer wissenschaftlich-technische Information mbH and Max-Planck-
  * Gesellschaft zur Foerderung der Wissenschaft e.V.  
  * All rights reserved.  Use is subject to license terms.
  */
-package de.escidoc.sb.srw.stax.handler;
 
+package de.escidoc.sb.srw.lucene;
 
-import de.escidoc.core.common.util.stax.StaxParser;
-import de.escidoc.core.common.util.xml.stax.events.StartElement;
-import de.escidoc.core.common.util.xml.stax.handler.DefaultHandler;
+import java.io.IOException;
 
-public class PermissionFilterHandler extends DefaultHandler {
-    protected StaxParser parser;
-    protected String permissionFilterQuery = null;
-    private final String permissionFilterQueryPath = "/result/filter";
+import org.apache.lucene.search.IndexSearcher;
 
-    /*
-     * 
-     */public PermissionFilterHandler(StaxParser parser) {
-        this.parser = parser;
-
-    }
-
-    public String characters(String data, StartElement element) {
-        String currentPath = parser.getCurPath();
-
-        if (permissionFilterQueryPath.equals(currentPath)) {
-            permissionFilterQuery = data;
-        }
-        return data;
-    }
-
-	/**
-	 * @return the permissionFilterQuery
-	 */
-	public String getPermissionFilterQuery() {
-		return permissionFilterQuery;
-	}
-    
+/**
+ * Interface for searcher-warmers.
+ * IndexSearcherCache calls the warmer with a newly opened or reopened
+ * IndexSearcher before the searcher gets visible for search-requests.
+ * 
+ * @author MIH
+ */
+public interface IndexSearcherWarmer {
 
+    /**
+     * warm the given searcher (load caches, run warm-up queries).
+     * 
+     * @param searcher IndexSearcher that is not yet published
+     * @throws IOException e
+     * 
+     */
+    void warm(IndexSearcher searcher) throws IOException;
 }
@@ -0,0 +1,440 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.ReaderUtil;
+
+import de.escidoc.core.common.util.logger.AppLogger;
+
+/**
+ * Computes the documents that survive latest-release filtering 
+ * once per reader generation and provides them as Filter.
+ * 
+ * Same collapse-rule as EscidocCollapseCollector.DuplicateFilter: 
+ * a document survives if it has no duplicate-identifier 
+ * or if no other (not deleted) document of the reader has the same 
+ * duplicate-identifier. Of the other documents exactly one 
+ * per duplicate-identifier survives: the one with the priority-value 
+ * as duplicate-distinguisher, otherwise (and between several such 
+ * documents) the one with the lowest doc-id. 
+ * Unlike the duplicate-filtering collectors this does not depend 
+ * on the query, so the filter can get intersected with any query 
+ * and the plain top-N collectors return exact totalHits.
+ * 
+ * Work is done per segment and reused by later generations: 
+ * the number of documents per duplicate-identifier of a segment 
+ * is computed once per segment-reader, 
+ * the bitset of a segment only gets recomputed if the 
+ * duplicate-identifiers shared with other segments 
+ * or the segments keeping them changed.
+ * Per generation only the sorted identifier-lists 
+ * of the segments are merged.
+ * 
+ * Translators of the same index share one cache 
+ * (see {@link #getInstance(String, String, String, int)}), 
+ * so each generation is computed once, by the warmer.
+ * 
+ * @author MIH
+ */
+public class LatestReleaseFilterCache {
+
+    private static AppLogger log =
+        new AppLogger(LatestReleaseFilterCache.class.getName());
+
+    private static final Map<String, LatestReleaseFilterCache> INSTANCES = 
+        new HashMap<String, LatestReleaseFilterCache>();
+
+    private final String duplicateIdentifierField;
+
+    private final String duplicateDistinguisherField;
+
+    private final int distinguisherPriorityValue;
+
+    /**
+     * segment-reader - state of the segment.
+     */
+    private final Map<IndexReader, Segment> segments = 
+                            new WeakHashMap<IndexReader, Segment>();
+
+    /**
+     * top-level reader - filter.
+     */
+    private final Map<IndexReader, LatestReleaseFilter> filters = 
+                            new WeakHashMap<IndexReader, LatestReleaseFilter>();
+
+    /**
+     * construct with fields used for latest-release filtering.
+     * 
+     * @param duplicateIdentifierField
+     *            field containing the duplicate-identifier
+     * @param duplicateDistinguisherField
+     *            field containing the duplicate-distinguisher
+     * @param distinguisherPriorityValue
+     *            duplicate-distinguisher of documents to keep
+     */
+    public LatestReleaseFilterCache(final String duplicateIdentifierField, 
+            final String duplicateDistinguisherField, 
+            final int distinguisherPriorityValue) {
+        this.duplicateIdentifierField = duplicateIdentifierField;
+        this.duplicateDistinguisherField = duplicateDistinguisherField;
+        this.distinguisherPriorityValue = distinguisherPriorityValue;
+    }
+
+    /**
+     * get the cache of the index-path, create it if it doesnt exist.
+     * 
+     * @param indexPath
+     *            index-path
+     * @param duplicateIdentifierField
+     *            field containing the duplicate-identifier
+     * @param duplicateDistinguisherField
+     *            field containing the duplicate-distinguisher
+     * @param distinguisherPriorityValue
+     *            duplicate-distinguisher of documents to keep
+     * @return LatestReleaseFilterCache shared instance
+     */
+    public static LatestReleaseFilterCache getInstance(
+            final String indexPath, final String duplicateIdentifierField, 
+            final String duplicateDistinguisherField, 
+            final int distinguisherPriorityValue) {
+        synchronized (INSTANCES) {
+            LatestReleaseFilterCache instance = INSTANCES.get(indexPath);
+            if (instance == null 
+                || !instance.duplicateIdentifierField.equals(
+                        duplicateIdentifierField) 
+                || !instance.duplicateDistinguisherField.equals(
+                        duplicateDistinguisherField) 
+                || instance.distinguisherPriorityValue 
+                        != distinguisherPriorityValue) {
+                instance = new LatestReleaseFilterCache(
+                        duplicateIdentifierField, 
+                        duplicateDistinguisherField, 
+                        distinguisherPriorityValue);
+                INSTANCES.put(indexPath, instance);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Get filter with the documents of the reader 
+     * that survive latest-release filtering. 
+     * Computed on first call for a reader (generation).
+     * 
+     * @param reader
+     *            top-level reader of the searcher
+     * @return Filter latest-release filter
+     * @throws IOException
+     *             e
+     */
+    public synchronized Filter getFilter(final IndexReader reader) 
+                                                    throws IOException {
+        LatestReleaseFilter filter = filters.get(reader);
+        if (filter != null) {
+            return filter;
+        }
+        long time = System.currentTimeMillis();
+        List<IndexReader> subReaders = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders(subReaders, reader);
+        Segment[] readerSegments = new Segment[subReaders.size()];
+        for (int i = 0; i < readerSegments.length; i++) {
+            IndexReader subReader = subReaders.get(i);
+            readerSegments[i] = segments.get(subReader);
+            if (readerSegments[i] == null) {
+                readerSegments[i] = new Segment(subReader);
+                segments.put(subReader, readerSegments[i]);
+            }
+        }
+        OpenBitSet[] duplicates = new OpenBitSet[readerSegments.length];
+        OpenBitSet[] kept = new OpenBitSet[readerSegments.length];
+        getDuplicates(readerSegments, duplicates, kept);
+        filter = new LatestReleaseFilter();
+        for (int i = 0; i < readerSegments.length; i++) {
+            filter.docIdSets.put(subReaders.get(i), 
+                    readerSegments[i].getDocIdSet(
+                            subReaders.get(i), duplicates[i], kept[i]));
+        }
+        filters.put(reader, filter);
+        if (log.isInfoEnabled()) {
+            log.info("computed latest-release filter for " 
+                    + readerSegments.length + " segments in " 
+                    + (System.currentTimeMillis() - time) + " ms");
+        }
+        return filter;
+    }
+
+    /**
+     * Merge the sorted duplicate-identifiers of all segments, 
+     * mark identifiers that occur in more than one document 
+     * and the segment that keeps the document of the identifier: 
+     * the first segment with a priority-document, 
+     * otherwise the first segment with a (not deleted) document. 
+     * Segments are in doc-id order, so this is the document 
+     * the collapse-rule keeps.
+     * 
+     * @param readerSegments
+     *            segments of the reader
+     * @param duplicates
+     *            filled per segment: ordinals of duplicate-identifiers 
+     *            found more than once in the reader
+     * @param kept
+     *            filled per segment: ordinals of duplicate-identifiers 
+     *            whose document is kept in this segment
+     */
+    private void getDuplicates(final Segment[] readerSegments, 
+            final OpenBitSet[] duplicates, final OpenBitSet[] kept) {
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(
+                Math.max(1, readerSegments.length));
+        for (int i = 0; i < readerSegments.length; i++) {
+            duplicates[i] = new OpenBitSet(readerSegments[i].lookup.length);
+            kept[i] = new OpenBitSet(readerSegments[i].lookup.length);
+            // ordinal 0: documents without duplicate-identifier
+            if (readerSegments[i].lookup.length > 1) {
+                queue.add(new Cursor(i, readerSegments[i]));
+            }
+        }
+        List<Cursor> group = new ArrayList<Cursor>();
+        while (!queue.isEmpty()) {
+            String identifier = queue.peek().value();
+            int total = 0;
+            group.clear();
+            while (!queue.isEmpty() 
+                    && queue.peek().value().equals(identifier)) {
+                Cursor cursor = queue.poll();
+                total += cursor.segment.counts[cursor.ordinal];
+                group.add(cursor);
+            }
+            Cursor keeping = null;
+            for (Cursor cursor : group) {
+                if (total > 1) {
+                    duplicates[cursor.index].fastSet(cursor.ordinal);
+                    if (cursor.segment.counts[cursor.ordinal] > 0 
+                        && (keeping == null || cursor.isBetter(keeping))) {
+                        keeping = cursor;
+                    }
+                }
+            }
+            if (keeping != null) {
+                kept[keeping.index].fastSet(keeping.ordinal);
+            }
+            for (Cursor cursor : group) {
+                if (++cursor.ordinal < cursor.segment.lookup.length) {
+                    queue.add(cursor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Position in the sorted duplicate-identifiers of a segment.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final int index;
+
+        private final Segment segment;
+
+        private int ordinal = 1;
+
+        private Cursor(final int index, final Segment segment) {
+            this.index = index;
+            this.segment = segment;
+        }
+
+        private String value() {
+            return segment.lookup[ordinal];
+        }
+
+        /**
+         * @param other cursor on the same duplicate-identifier
+         * @return true if the segment keeps the document 
+         *          instead of the segment of the other cursor
+         */
+        private boolean isBetter(final Cursor other) {
+            boolean priority = segment.priorityDocs[ordinal] >= 0;
+            if (priority != (other.segment.priorityDocs[other.ordinal] >= 0)) {
+                return priority;
+            }
+            return index < other.index;
+        }
+
+        public int compareTo(final Cursor other) {
+            return value().compareTo(other.value());
+        }
+    }
+
+    /**
+     * State of one segment-reader: 
+     * duplicate-identifiers, number of (not deleted) documents 
+     * per duplicate-identifier, 
+     * first (not deleted) document and first priority-document 
+     * per duplicate-identifier, last computed bitset.
+     */
+    private final class Segment {
+
+        private final int[] order;
+
+        private final String[] lookup;
+
+        private final int[] counts;
+
+        private final int[] firstDocs;
+
+        private final int[] priorityDocs;
+
+        private OpenBitSet duplicates;
+
+        private OpenBitSet kept;
+
+        private OpenBitSet docIdSet;
+
+        private Segment(final IndexReader reader) throws IOException {
+            FieldCache.StringIndex stringIndex = FieldCache.DEFAULT
+                .getStringIndex(reader, duplicateIdentifierField);
+            int[] distinguishers = FieldCache.DEFAULT.getInts(
+                    reader, duplicateDistinguisherField);
+            order = stringIndex.order;
+            lookup = stringIndex.lookup;
+            counts = new int[lookup.length];
+            firstDocs = new int[lookup.length];
+            priorityDocs = new int[lookup.length];
+            Arrays.fill(firstDocs, -1);
+            Arrays.fill(priorityDocs, -1);
+            boolean deletions = reader.hasDeletions();
+            for (int doc = 0; doc < order.length; doc++) {
+                if (!deletions || !reader.isDeleted(doc)) {
+                    int ordinal = order[doc];
+                    counts[ordinal]++;
+                    if (firstDocs[ordinal] < 0) {
+                        firstDocs[ordinal] = doc;
+                    }
+                    if (priorityDocs[ordinal] < 0 
+                        && distinguishers[doc] == distinguisherPriorityValue) {
+                        priorityDocs[ordinal] = doc;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Get documents of the segment that survive 
+         * latest-release filtering, 
+         * recompute if duplicate-identifiers changed.
+         * 
+         * @param reader
+         *            segment-reader
+         * @param readerDuplicates
+         *            ordinals of duplicate-identifiers 
+         *            found more than once in the reader
+         * @param readerKept
+         *            ordinals of duplicate-identifiers 
+         *            whose document is kept in this segment
+         * @return OpenBitSet documents
+         */
+        private OpenBitSet getDocIdSet(final IndexReader reader, 
+                final OpenBitSet readerDuplicates, 
+                final OpenBitSet readerKept) {
+            if (docIdSet != null && readerDuplicates.equals(duplicates) 
+                    && readerKept.equals(kept)) {
+                return docIdSet;
+            }
+            boolean deletions = reader.hasDeletions();
+            OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+            for (int doc = 0; doc < order.length; doc++) {
+                if (deletions && reader.isDeleted(doc)) {
+                    continue;
+                }
+                int ordinal = order[doc];
+                if (ordinal == 0 || !readerDuplicates.fastGet(ordinal)) {
+                    bits.fastSet(doc);
+                } else if (readerKept.fastGet(ordinal)) {
+                    int keptDoc = priorityDocs[ordinal] >= 0 
+                            ? priorityDocs[ordinal] : firstDocs[ordinal];
+                    if (doc == keptDoc) {
+                        bits.fastSet(doc);
+                    }
+                }
+            }
+            duplicates = readerDuplicates;
+            kept = readerKept;
+            docIdSet = bits;
+            return bits;
+        }
+    }
+
+    /**
+     * Filter providing the precomputed bitset of each segment.
+     */
+    static final class LatestReleaseFilter extends Filter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Map<IndexReader, DocIdSet> docIdSets = 
+                            new IdentityHashMap<IndexReader, DocIdSet>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public DocIdSet getDocIdSet(final IndexReader reader) {
+            DocIdSet docIdSet = docIdSets.get(reader);
+            if (docIdSet == null) {
+                throw new IllegalStateException(
+                    "reader is not a segment of the filtered reader");
+            }
+            return docIdSet;
+        }
+
+        /**
+         * Same String for all generations (used in cursors).
+         * 
+         * @return String name of filter
+         */
+        @Override
+        public String toString() {
+            return "LatestReleaseFilter";
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import gov.loc.www.zing.srw.ExtraDataType;
+import gov.loc.www.zing.srw.utils.Stream;
+
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.osuosl.srw.ResolvingQueryResult;
+import org.osuosl.srw.ResolvingRecordIterator;
+
+import ORG.oclc.os.SRW.RecordIterator;
+import de.escidoc.core.common.util.logger.AppLogger;
+import de.escidoc.sb.srw.SearchExtraData;
+
+/**
+ * Result of a lucene-search that is kept as result set (resultSetTTL > 0).
+ * 
+ * Instead of rendered search-result-xmls only the doc-ids and scores 
+ * of the hits are held, together with the IndexSearcher 
+ * the search was executed with. 
+ * The IndexSearcher stays referenced, so the reader-generation 
+ * doesnt change while the result set is kept. 
+ * Records are rendered when they are requested, 
+ * so paging a result set only reads the stored fields 
+ * of the requested records. 
+ * If records outside the collected hits are requested, 
+ * the query is executed again on the same reader-generation.
+ * 
+ * Only created if the client requested a resultSetTTL, 
+ * the number of reader-generations kept open by result sets is limited 
+ * (see cqlTranslator.maxResultSetGenerations).
+ * 
+ * The IndexSearcher is released in {@link #close()}, 
+ * that gets called when the result set expires.
+ * 
+ * @author MIH
+ */
+public class LazyResolvingQueryResult extends ResolvingQueryResult {
+
+    private static AppLogger log =
+        new AppLogger(LazyResolvingQueryResult.class.getName());
+
+    private final EscidocLuceneTranslator translator;
+
+    private IndexSearcher searcher;
+
+    private final Query query;
+
+    private final Filter permissionFilter;
+
+    private final Sort sort;
+
+    private final SearchExtraData searchExtraData;
+
+    private int offset;
+
+    private int[] docs;
+
+    private float[] scores;
+
+    /**
+     * Constructor. 
+     * The IndexSearcher is released when this result gets closed.
+     * 
+     * @param translator
+     *            translator that executed the search
+     * @param searcher
+     *            IndexSearcher the search was executed with
+     * @param query
+     *            query
+     * @param permissionFilter
+     *            permission-filter or null
+     * @param sort
+     *            sort or null
+     * @param searchExtraData
+     *            searchExtraData
+     * @param hits
+     *            collected hits or null
+     * @param offset
+     *            position of the first collected hit (0-based), 
+     *            > 0 if only the hits after a cursor were collected
+     * @param numberOfRecords
+     *            number of records found
+     */
+    public LazyResolvingQueryResult(
+            final EscidocLuceneTranslator translator, 
+            final IndexSearcher searcher, final Query query, 
+            final Filter permissionFilter, final Sort sort, 
+            final SearchExtraData searchExtraData, 
+            final TopDocs hits, final int offset, 
+            final long numberOfRecords) {
+        super(numberOfRecords);
+        this.translator = translator;
+        this.searcher = searcher;
+        this.query = query;
+        this.permissionFilter = permissionFilter;
+        this.sort = sort;
+        this.searchExtraData = searchExtraData;
+        setHits(hits, offset);
+    }
+
+    /**
+     * Render the requested records.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized RecordIterator newRecordIterator(
+            final long index, final int numRecs, final String schemaId, 
+            final ExtraDataType extraDataType) 
+                                        throws InstantiationException {
+        if (searcher == null) {
+            throw new InstantiationException("result set is closed");
+        }
+        try {
+            int endRecord = (int) Math.min(
+                    index + numRecs, getNumberOfRecords());
+            if (index < offset || offset + docs.length < endRecord) {
+                if (log.isInfoEnabled()) {
+                    log.info("collecting " + endRecord 
+                            + " hits of kept result set");
+                }
+                SearchDeadline deadline = translator.newSearchDeadline();
+                setHits(translator.searchTopDocs(searcher, query, 
+                        permissionFilter, sort, endRecord, searchExtraData, 
+                        null, deadline), 0);
+                translator.checkDeadline(deadline);
+                endRecord = Math.min(endRecord, docs.length);
+            }
+            translator.initializeHighlighter(
+                    searcher, query, searchExtraData);
+            Stream[] identifiers = translator.createIdentifiers(
+                    searcher, docs, scores, searchExtraData, 
+                    (int) index + 1 - offset, endRecord - offset);
+            return new ResolvingRecordIterator(
+                    identifiers, schemaId, extraDataType, getResolver());
+        } catch (Exception e) {
+            log.error(e);
+            throw new InstantiationException(e.toString());
+        }
+    }
+
+    /**
+     * Release the IndexSearcher.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() {
+        super.close();
+        if (searcher != null) {
+            translator.releaseResultSetGeneration(searcher.getIndexReader());
+            translator.releaseSearcher(searcher);
+            searcher = null;
+            docs = null;
+            scores = null;
+        }
+    }
+
+    /**
+     * Store doc-ids and scores of hits.
+     * 
+     * @param hits
+     *            TopDocs or null
+     * @param hitOffset
+     *            position of the first hit (0-based)
+     */
+    private void setHits(final TopDocs hits, final int hitOffset) {
+        offset = hitOffset;
+        docs = EscidocLuceneTranslator.getDocs(hits);
+        scores = EscidocLuceneTranslator.getScores(hits);
+    }
+
+}
@@ -29,7 +29,8 @@
 
 package de.escidoc.sb.srw.lucene;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 
 import org.apache.http.impl.cookie.BasicClientCookie;
@@ -37,11 +38,10 @@ import org.osuosl.srw.SRWDiagnostic;
 
 import ORG.oclc.os.SRW.SRWServlet;
 import de.escidoc.core.common.util.configuration.EscidocConfiguration;
-import de.escidoc.core.common.util.service.ConnectionUtility;
-import de.escidoc.core.common.util.stax.StaxParser;
 import de.escidoc.sb.srw.Constants;
+import de.escidoc.sb.srw.HttpClientPool;
 import de.escidoc.sb.srw.PermissionFilterGenerator;
-import de.escidoc.sb.srw.stax.handler.PermissionFilterHandler;
+import de.escidoc.sb.srw.stax.PermissionFilterReader;
 
 /**
  * generates a lucene-subquery for permission-filtering.
@@ -50,12 +50,28 @@ import de.escidoc.sb.srw.stax.handler.PermissionFilterHandler;
  */
 public class LucenePermissionFilterGenerator implements PermissionFilterGenerator {
 
-    private ConnectionUtility connectionUtility = new ConnectionUtility();
-    
+    private int connectTimeout = HttpClientPool.DEFAULT_CONNECT_TIMEOUT;
+
+    private int readTimeout = HttpClientPool.DEFAULT_READ_TIMEOUT;
+
     public LucenePermissionFilterGenerator() {
-        connectionUtility.setTimeout(180000);
     }
     
+    /**
+     * @param inp connect-timeout in ms.
+     */
+    public void setConnectTimeout(final int inp) {
+        connectTimeout = inp;
+    }
+
+    /**
+     * @param inp read-timeout in ms.
+     */
+    public void setReadTimeout(final int inp) {
+        readTimeout = inp;
+    }
+
+
     /**
      * get permission-filter subquery for user with given userId.
      * 
@@ -78,23 +94,33 @@ public class LucenePermissionFilterGenerator implements PermissionFilterGenerato
             if (withRoleId != null && !withRoleId.equals("")) {
             	url.append("&role=").append(withRoleId);
             }
-            String permissionFilterXml = connectionUtility
-            .getRequestURLAsString(
+            // parse response while reading it from the connection
+            return HttpClientPool.getInstance().get(
                     new URL(url.toString()),
-                    new BasicClientCookie(SRWServlet.COOKIE_LOGIN, handle));
-            //Check if login-page comes back because of expired handle
-            if (permissionFilterXml.matches("(?s).*<html>.*")) {
-            	throw new SecurityException(
-            			"Authorization failed because of expired handle. "
-            			+ "Try to login first.");
-            }
-            StaxParser sp = new StaxParser();
-            PermissionFilterHandler handler = new PermissionFilterHandler(sp);
-            sp.addHandler(handler);
-
-            sp.parse(new ByteArrayInputStream(permissionFilterXml.getBytes(
-                    Constants.CHARACTER_ENCODING)));
-            return handler.getPermissionFilterQuery();
+                    handle == null ? null 
+                        : new BasicClientCookie(SRWServlet.COOKIE_LOGIN, handle),
+                    connectTimeout, readTimeout, 
+                    new HttpClientPool.StreamHandler<String>() {
+                        public String handle(final InputStream in, 
+                                final String contentType) throws Exception {
+                            //Check if login-page comes back 
+                            //because of expired handle
+                            if (contentType != null 
+                                    && contentType.matches("(?i).*html.*")) {
+                                throw new SecurityException(
+                                    "Authorization failed because of "
+                                    + "expired handle. Try to login first.");
+                            }
+                            // login-page is also recognized 
+                            // from its first element
+                            return PermissionFilterReader.read(in);
+                        }
+                    });
+        } catch (IOException e) {
+            // service not reachable, cached permission-filters may be used
+            throw new SRWDiagnostic(
+                    SRWDiagnostic.SystemTemporarilyUnavailable,
+                    "couldnt retrieve permissionFilterQuery " + e.getMessage());
         } catch (Exception e) {
             throw new SRWDiagnostic(
                     SRWDiagnostic.GeneralSystemError,
@@ -0,0 +1,673 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.OpenBitSetDISI;
+
+import de.escidoc.core.common.util.logger.AppLogger;
+import de.escidoc.sb.srw.lucene.queryParser.EscidocQueryParser;
+
+/**
+ * Singleton that caches the documents matching a permission-filter
+ * as bitset for each index-segment.
+ * 
+ * Key is the normalized permission-filter String 
+ * and the core of the segment-reader. 
+ * Deletions are not part of the key, 
+ * deleted documents are never returned by the query, 
+ * so segments that didnt change keep their bitsets 
+ * when the index gets reopened.
+ * 
+ * Permission-filters of different users mostly are ORs 
+ * of the same grant-clauses (contexts, organizational-units, 
+ * roles, public-status). 
+ * So additionally each top-level clause of a permission-filter 
+ * is cached as bitset for each segment, 
+ * key is the String-representation of the parsed clause. 
+ * Disjunctions the parser split into chunks of maxClauseCount 
+ * are flattened, so the keys are the original grant-clauses. 
+ * If a permission-filter is not in cache, 
+ * its bitset is assembled from the clause-bitsets 
+ * with OR/AND/ANDNOT, only clauses not in cache 
+ * get evaluated against the index.
+ * 
+ * Memory used by the bitsets, their keys and the cache-entries 
+ * and the number of entries are bounded, 
+ * least recently used bitsets are removed first.
+ * Segment-cores are referenced weakly, 
+ * entries of segments that got garbage-collected 
+ * (closed and merged away) are removed.
+ * 
+ * @author MIH
+ */
+public final class PermissionFilterCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /** Estimated memory of a cache-entry besides bitset and key-String. */
+    private static final long ENTRY_BYTES = 128;
+
+    private static PermissionFilterCache instance = null;
+
+    private static AppLogger log =
+        new AppLogger(PermissionFilterCache.class.getName());
+
+    /** Holds bitsets in access-order. */
+    private final LinkedHashMap<SegmentKey, DocIdSet> bitsets = 
+        new LinkedHashMap<SegmentKey, DocIdSet>(16, 0.75f, true);
+
+    /** core cache key of segment-reader - weak reference shared by keys. */
+    private final Map<Object, WeakReference<Object>> coreReferences = 
+        new WeakHashMap<Object, WeakReference<Object>>();
+
+    /** References to garbage-collected segment-cores. */
+    private final ReferenceQueue<Object> collectedCores = 
+                                        new ReferenceQueue<Object>();
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong clauseHits = new AtomicLong();
+
+    private final AtomicLong clauseMisses = new AtomicLong();
+
+    /**
+     * private Constructor for Singleton.
+     * 
+     */
+    private PermissionFilterCache() {
+    }
+
+    /**
+     * Only initialize Object once.
+     * 
+     * @return PermissionFilterCache PermissionFilterCache
+     */
+    public static synchronized PermissionFilterCache getInstance() {
+        if (instance == null) {
+            instance = new PermissionFilterCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Set maximum memory used by the cached bitsets.
+     * 0 disables caching.
+     * 
+     * @param inp
+     *            maximum number of bytes
+     */
+    public synchronized void setMaxBytes(final long inp) {
+        maxBytes = inp;
+        evict();
+    }
+
+    /**
+     * Set maximum number of cached bitsets.
+     * 
+     * @param inp
+     *            maximum number of bitsets
+     */
+    public synchronized void setMaxEntries(final int inp) {
+        maxEntries = inp;
+        evict();
+    }
+
+    /**
+     * Get Filter for permission-filter String.
+     * The filter-query gets parsed when a segment is not in cache.
+     * 
+     * @param filterString
+     *            permission-filter as lucene-query String
+     * @param parser
+     *            QueryParser used to parse the filterString
+     * @return Filter Filter
+     */
+    public Filter getFilter(
+            final String filterString, final QueryParser parser) {
+        return new CachingPermissionFilter(
+                normalize(filterString), parser);
+    }
+
+    /**
+     * @return String statistics for logging.
+     */
+    public synchronized String getStatistics() {
+        return "segments=" + bitsets.size() + ", bytes=" + bytes 
+                + ", hits=" + hits.get() + ", misses=" + misses.get() 
+                + ", clauseHits=" + clauseHits.get() 
+                + ", clauseMisses=" + clauseMisses.get() 
+                + ", evictions=" + evictions.get();
+    }
+
+    /**
+     * Normalize whitespace of permission-filter String.
+     * 
+     * @param filterString
+     *            permission-filter
+     * @return String normalized permission-filter
+     */
+    private static String normalize(final String filterString) {
+        return filterString.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Get key of cached bitset.
+     * 
+     * @param filterString
+     *            normalized permission-filter or parsed clause
+     * @param reader
+     *            segment-reader
+     * @param clause
+     *            true if filterString is a parsed clause
+     * @return SegmentKey key
+     */
+    private synchronized SegmentKey getKey(final String filterString, 
+            final IndexReader reader, final boolean clause) {
+        Object coreKey = reader.getCoreCacheKey();
+        WeakReference<Object> coreReference = coreReferences.get(coreKey);
+        if (coreReference == null) {
+            coreReference = 
+                new WeakReference<Object>(coreKey, collectedCores);
+            coreReferences.put(coreKey, coreReference);
+        }
+        return new SegmentKey(filterString, coreReference, clause);
+    }
+
+    /**
+     * Get cached bitset.
+     * 
+     * @param key
+     *            SegmentKey
+     * @return DocIdSet or null
+     */
+    private synchronized DocIdSet get(final SegmentKey key) {
+        purge();
+        return bitsets.get(key);
+    }
+
+    /**
+     * Put bitset into cache and remove least recently used bitsets 
+     * if memory-bound is exceeded.
+     * 
+     * @param key
+     *            SegmentKey
+     * @param docIdSet
+     *            DocIdSet
+     */
+    private synchronized void put(
+            final SegmentKey key, final DocIdSet docIdSet) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        purge();
+        DocIdSet old = bitsets.put(key, docIdSet);
+        if (old != null) {
+            bytes -= getBytes(key, old);
+        }
+        bytes += getBytes(key, docIdSet);
+        evict();
+    }
+
+    /**
+     * remove least recently used bitsets 
+     * until memory-bound and maximum number of entries are reached.
+     * 
+     */
+    private synchronized void evict() {
+        Iterator<Map.Entry<SegmentKey, DocIdSet>> iterator = 
+                                    bitsets.entrySet().iterator();
+        while ((bytes > maxBytes || bitsets.size() > maxEntries) 
+                && iterator.hasNext()) {
+            Map.Entry<SegmentKey, DocIdSet> entry = iterator.next();
+            bytes -= getBytes(entry.getKey(), entry.getValue());
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * remove bitsets of garbage-collected segment-cores.
+     * 
+     */
+    private synchronized void purge() {
+        if (collectedCores.poll() == null) {
+            return;
+        }
+        while (collectedCores.poll() != null) {
+            // all collected cores are removed in one pass
+        }
+        Iterator<Map.Entry<SegmentKey, DocIdSet>> iterator = 
+                                    bitsets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<SegmentKey, DocIdSet> entry = iterator.next();
+            if (entry.getKey().coreReference.get() == null) {
+                bytes -= getBytes(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param key
+     *            SegmentKey
+     * @param docIdSet
+     *            DocIdSet
+     * @return long memory used by cache-entry, key and bitset
+     */
+    private static long getBytes(
+            final SegmentKey key, final DocIdSet docIdSet) {
+        long entryBytes = ENTRY_BYTES + key.filterString.length() * 2L;
+        if (docIdSet instanceof OpenBitSet) {
+            entryBytes += ((OpenBitSet) docIdSet).getNumWords() * 8L;
+        }
+        return entryBytes;
+    }
+
+    /**
+     * Filter that gets the bitset for each segment from the cache.
+     * 
+     */
+    private final class CachingPermissionFilter extends Filter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String filterString;
+
+        private final transient QueryParser parser;
+
+        private List<BooleanClause> clauses = null;
+
+        private List<String> clauseKeys = null;
+
+        private Filter filter = null;
+
+        /**
+         * Constructor.
+         * 
+         * @param filterString
+         *            normalized permission-filter
+         * @param parser
+         *            QueryParser
+         */
+        CachingPermissionFilter(
+                final String filterString, final QueryParser parser) {
+            this.filterString = filterString;
+            this.parser = parser;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public DocIdSet getDocIdSet(final IndexReader reader) 
+                                                throws IOException {
+            SegmentKey key = getKey(filterString, reader, false);
+            DocIdSet docIdSet = get(key);
+            if (docIdSet != null) {
+                hits.incrementAndGet();
+                return docIdSet;
+            }
+            misses.incrementAndGet();
+            parse();
+            if (filter != null) {
+                docIdSet = getBitSet(filter, reader);
+            } else {
+                docIdSet = assemble(reader);
+            }
+            if (docIdSet == null) {
+                docIdSet = DocIdSet.EMPTY_DOCIDSET;
+            }
+            put(key, docIdSet);
+            if (log.isDebugEnabled()) {
+                log.debug("cached permission-filter for segment (" 
+                        + getStatistics() + ")");
+            }
+            return docIdSet;
+        }
+
+        /**
+         * Assemble bitset of the permission-filter 
+         * from the bitsets of its clauses.
+         * Same semantics as BooleanQuery: 
+         * if there are required clauses, optional clauses are ignored, 
+         * otherwise one of the optional clauses has to match.
+         * 
+         * @param reader
+         *            segment-reader
+         * @return OpenBitSet or null if no document matches
+         * @throws IOException
+         *             e
+         */
+        private OpenBitSet assemble(final IndexReader reader) 
+                                                throws IOException {
+            OpenBitSet result = null;
+            boolean hasRequired = false;
+            for (int i = 0; i < clauses.size(); i++) {
+                if (clauses.get(i).getOccur() == BooleanClause.Occur.MUST) {
+                    hasRequired = true;
+                    OpenBitSet bitSet = getClauseBitSet(i, reader);
+                    if (bitSet == null) {
+                        return null;
+                    }
+                    if (result == null) {
+                        result = (OpenBitSet) bitSet.clone();
+                    } else {
+                        result.and(bitSet);
+                    }
+                }
+            }
+            if (!hasRequired) {
+                for (int i = 0; i < clauses.size(); i++) {
+                    if (clauses.get(i).getOccur() 
+                            == BooleanClause.Occur.SHOULD) {
+                        OpenBitSet bitSet = getClauseBitSet(i, reader);
+                        if (bitSet == null) {
+                            continue;
+                        }
+                        if (result == null) {
+                            result = new OpenBitSet(reader.maxDoc());
+                        }
+                        result.union(bitSet);
+                    }
+                }
+            }
+            if (result == null) {
+                return null;
+            }
+            for (int i = 0; i < clauses.size(); i++) {
+                if (clauses.get(i).getOccur() 
+                        == BooleanClause.Occur.MUST_NOT) {
+                    OpenBitSet bitSet = getClauseBitSet(i, reader);
+                    if (bitSet != null) {
+                        result.andNot(bitSet);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Get bitset of one clause from cache 
+         * or evaluate the clause and put it into the cache.
+         * 
+         * @param i
+         *            index of clause
+         * @param reader
+         *            segment-reader
+         * @return OpenBitSet or null if no document matches
+         * @throws IOException
+         *             e
+         */
+        private OpenBitSet getClauseBitSet(
+                final int i, final IndexReader reader) throws IOException {
+            SegmentKey key = getKey(clauseKeys.get(i), reader, true);
+            DocIdSet docIdSet = get(key);
+            if (docIdSet != null) {
+                clauseHits.incrementAndGet();
+            } else {
+                clauseMisses.incrementAndGet();
+                docIdSet = getBitSet(new QueryWrapperFilter(
+                        clauses.get(i).getQuery()), reader);
+                if (docIdSet == null) {
+                    docIdSet = DocIdSet.EMPTY_DOCIDSET;
+                }
+                put(key, docIdSet);
+            }
+            if (docIdSet instanceof OpenBitSet) {
+                return (OpenBitSet) docIdSet;
+            }
+            return null;
+        }
+
+        /**
+         * Evaluate filter against segment.
+         * 
+         * @param queryFilter
+         *            Filter
+         * @param reader
+         *            segment-reader
+         * @return OpenBitSet or null if no document matches
+         * @throws IOException
+         *             e
+         */
+        private OpenBitSet getBitSet(
+                final Filter queryFilter, final IndexReader reader) 
+                                                throws IOException {
+            DocIdSet queryDocIdSet = queryFilter.getDocIdSet(reader);
+            if (queryDocIdSet == null) {
+                return null;
+            }
+            DocIdSetIterator iterator = queryDocIdSet.iterator();
+            if (iterator == null) {
+                return null;
+            }
+            return new OpenBitSetDISI(iterator, reader.maxDoc());
+        }
+
+        /**
+         * Parse filter-query once and split it into its top-level clauses. 
+         * Queries that cannot be split are evaluated as a whole.
+         * 
+         * @throws IOException
+         *             e
+         */
+        private synchronized void parse() throws IOException {
+            if (filter != null || clauses != null) {
+                return;
+            }
+            Query query;
+            try {
+                synchronized (parser) {
+                    query = parser.parse(filterString);
+                }
+            } catch (ParseException e) {
+                throw new IOException(
+                    "couldnt parse permission-filter: " + e.getMessage());
+            }
+            query = unwrap(query);
+            if (query instanceof BooleanQuery 
+                && ((BooleanQuery) query).getMinimumNumberShouldMatch() == 0
+                && ((BooleanQuery) query).clauses().size() > 1) {
+                List<BooleanClause> booleanClauses = 
+                                new ArrayList<BooleanClause>();
+                flatten((BooleanQuery) query, booleanClauses);
+                List<String> keys = 
+                    new ArrayList<String>(booleanClauses.size());
+                for (BooleanClause clause : booleanClauses) {
+                    keys.add(clause.getQuery().toString());
+                }
+                clauseKeys = keys;
+                clauses = booleanClauses;
+            } else {
+                filter = new QueryWrapperFilter(query);
+            }
+        }
+
+        /**
+         * Collect the clauses of the query, 
+         * optional clauses that are chunks of a split disjunction 
+         * are replaced by the clauses of the chunk.
+         * 
+         * @param query
+         *            BooleanQuery
+         * @param booleanClauses
+         *            list the clauses are added to
+         */
+        private void flatten(final BooleanQuery query, 
+                        final List<BooleanClause> booleanClauses) {
+            for (BooleanClause clause : query.clauses()) {
+                if (clause.getOccur() == BooleanClause.Occur.SHOULD 
+                    && clause.getQuery() instanceof 
+                            EscidocQueryParser.SplitBooleanQuery) {
+                    flatten((BooleanQuery) clause.getQuery(), booleanClauses);
+                } else {
+                    booleanClauses.add(clause);
+                }
+            }
+        }
+
+        /**
+         * Remove BooleanQueries that only wrap one non-prohibited clause.
+         * 
+         * @param query
+         *            Query
+         * @return Query unwrapped query
+         */
+        private Query unwrap(final Query query) {
+            Query unwrapped = query;
+            while (unwrapped instanceof BooleanQuery) {
+                BooleanQuery booleanQuery = (BooleanQuery) unwrapped;
+                if (booleanQuery.clauses().size() != 1 
+                    || booleanQuery.clauses().get(0).isProhibited()) {
+                    break;
+                }
+                unwrapped = booleanQuery.clauses().get(0).getQuery();
+            }
+            return unwrapped;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof CachingPermissionFilter 
+                && filterString.equals(
+                        ((CachingPermissionFilter) o).filterString);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return filterString.hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "CachingPermissionFilter(" + filterString + ")";
+        }
+    }
+
+    /**
+     * Key of cached bitset: permission-filter or clause 
+     * and core of segment-reader. 
+     * The core is referenced weakly, all keys of a core 
+     * share the same reference.
+     * 
+     */
+    private static final class SegmentKey {
+
+        private final String filterString;
+
+        private final WeakReference<Object> coreReference;
+
+        private final boolean clause;
+
+        /**
+         * Constructor.
+         * 
+         * @param filterString
+         *            normalized permission-filter or parsed clause
+         * @param coreReference
+         *            reference to core cache key of segment-reader
+         * @param clause
+         *            true if filterString is a parsed clause
+         */
+        SegmentKey(final String filterString, 
+                final WeakReference<Object> coreReference, 
+                final boolean clause) {
+            this.filterString = filterString;
+            this.coreReference = coreReference;
+            this.clause = clause;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof SegmentKey)) {
+                return false;
+            }
+            SegmentKey other = (SegmentKey) o;
+            return coreReference == other.coreReference 
+                && clause == other.clause 
+                && filterString.equals(other.filterString);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return 31 * filterString.hashCode() 
+                + System.identityHashCode(coreReference) + (clause ? 1 : 0);
+        }
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.WildcardTermEnum;
+import org.osuosl.srw.SRWDiagnostic;
+
+import de.escidoc.core.common.util.logger.AppLogger;
+import de.escidoc.sb.srw.Constants;
+import de.escidoc.sb.srw.lucene.queryParser.TypedRangeQuery;
+
+/**
+ * Estimates the cost of a query before it gets executed 
+ * and guards the expansion of multi-term queries 
+ * (wildcard, prefix, fuzzy, range).
+ * 
+ * For each multi-term query the terms of the term-dictionary 
+ * that have to get scanned are counted (terms under the prefix 
+ * that all matching terms share, terms in the range), 
+ * together with their docFreq (postings). 
+ * Scanning stops as soon as a threshold is exceeded, 
+ * so estimating never reads postings 
+ * and scans at most a threshold of terms. 
+ * The postings of other queries (term, phrase) are 
+ * taken from the docFreq of their terms.
+ * 
+ * -Multi-term queries scanning more than filterRewriteTerms terms 
+ *  are rewritten as constant-score filter 
+ *  instead of a BooleanQuery with one clause per term.
+ * -Fuzzy queries are rewritten to the 
+ *  FUZZY_BOOLEAN_MAX_CLAUSE_COUNT most similar terms, 
+ *  but never to more than BooleanQuery.getMaxClauseCount().
+ * -Multi-term queries scanning more than maxTerms terms are rejected 
+ *  (diagnostic 130, too many terms matched by masked query term).
+ * -Queries with more than maxPostings estimated postings are rejected
+ *  (diagnostic 60, too many matching records).
+ * -Queries with more than maxClauses boolean clauses 
+ *  (summed up over all nested boolean queries) are rejected
+ *  (diagnostic 38, too many boolean operators in query).
+ * -Multi-term queries never expand to more terms than 
+ *  BooleanQuery.maxClauseCount, above they are rewritten as filter.
+ * 
+ * The given query is not modified (it can be held in CompiledQueryCache), 
+ * queries that have to get changed are cloned. 
+ * No global state (BooleanQuery.maxClauseCount) is changed.
+ * 
+ * @author MIH
+ */
+public class QueryCostEstimator {
+
+    private static AppLogger log =
+        new AppLogger(QueryCostEstimator.class.getName());
+
+    /**
+     * Default number of terms a multi-term query can expand to 
+     * before it gets rewritten as filter 
+     * (default maxClauseCount of BooleanQuery).
+     */
+    public static final int DEFAULT_FILTER_REWRITE_TERMS = 1024;
+
+    private static final int DIAGNOSTIC_CODE_SIXTY = 60;
+
+    /**
+     * SRW-diagnostic: too many boolean operators in query.
+     */
+    public static final int DIAGNOSTIC_CODE_THIRTYEIGHT = 38;
+
+    private final int filterRewriteTerms;
+
+    private final int maxTerms;
+
+    private final long maxPostings;
+
+    private final int maxClauses;
+
+    /**
+     * Constructor.
+     * 
+     * @param filterRewriteTerms
+     *            number of terms above which multi-term queries 
+     *            are rewritten as constant-score filter
+     * @param maxTerms
+     *            number of terms above which multi-term queries 
+     *            are rejected, 0: no limit
+     * @param maxPostings
+     *            number of postings above which queries are rejected, 
+     *            0: no limit
+     * @param maxClauses
+     *            number of boolean clauses above which queries 
+     *            are rejected, 0: no limit
+     */
+    public QueryCostEstimator(final int filterRewriteTerms, 
+            final int maxTerms, final long maxPostings, 
+            final int maxClauses) {
+        this.filterRewriteTerms = filterRewriteTerms;
+        this.maxTerms = maxTerms;
+        this.maxPostings = maxPostings;
+        this.maxClauses = maxClauses;
+    }
+
+    /**
+     * Estimate cost of query, 
+     * rewrite expensive multi-term queries as filter 
+     * and reject queries above the thresholds.
+     * 
+     * @param reader
+     *            top-level reader the query gets executed on
+     * @param query
+     *            query
+     * @return Query query to execute 
+     *         (given query or clone with changed rewrite-methods)
+     * @throws IOException
+     *             e
+     * @throws SRWDiagnostic
+     *             if query is too expensive
+     */
+    public Query guard(final IndexReader reader, final Query query) 
+                                    throws IOException, SRWDiagnostic {
+        Cost cost = new Cost();
+        Query guarded = guard(reader, query, cost);
+        if (log.isInfoEnabled()) {
+            log.info("query cost: " + cost.terms + " terms scanned, " 
+                    + cost.postings + " postings, " 
+                    + cost.clauses + " clauses, " 
+                    + cost.filterRewrites + " rewritten as filter");
+        }
+        if (maxClauses > 0 && cost.clauses > maxClauses) {
+            throw new SRWDiagnostic(DIAGNOSTIC_CODE_THIRTYEIGHT, 
+                    "query has more than " + maxClauses + " clauses");
+        }
+        if (maxPostings > 0 && cost.postings > maxPostings) {
+            throw new SRWDiagnostic(DIAGNOSTIC_CODE_SIXTY, 
+                    "query matches more than " + maxPostings + " postings");
+        }
+        return guarded;
+    }
+
+    /**
+     * Guard query recursively.
+     * 
+     * @param reader
+     *            reader
+     * @param query
+     *            query
+     * @param cost
+     *            cost summed up so far
+     * @return Query guarded query
+     * @throws IOException
+     *             e
+     * @throws SRWDiagnostic
+     *             if query is too expensive
+     */
+    private Query guard(final IndexReader reader, final Query query, 
+            final Cost cost) throws IOException, SRWDiagnostic {
+        if (query instanceof BooleanQuery) {
+            BooleanClause[] clauses = ((BooleanQuery) query).getClauses();
+            cost.clauses += clauses.length;
+            BooleanQuery copy = null;
+            for (int i = 0; i < clauses.length; i++) {
+                Query clauseQuery = clauses[i].getQuery();
+                Query guarded = guard(reader, clauseQuery, cost);
+                if (guarded != clauseQuery) {
+                    if (copy == null) {
+                        copy = (BooleanQuery) query.clone();
+                    }
+                    copy.clauses().set(i, 
+                        new BooleanClause(guarded, clauses[i].getOccur()));
+                }
+            }
+            return copy == null ? query : copy;
+        }
+        if (query instanceof MultiTermQuery) {
+            return guard(reader, (MultiTermQuery) query, cost);
+        }
+        if (query instanceof TypedRangeQuery) {
+            // numeric or string range, depending on index
+            return guard(reader, query.rewrite(reader), cost);
+        }
+        Set<Term> terms = new HashSet<Term>();
+        try {
+            query.extractTerms(terms);
+        } catch (UnsupportedOperationException e) {
+            return query;
+        }
+        for (Term term : terms) {
+            cost.postings += reader.docFreq(term);
+        }
+        return query;
+    }
+
+    /**
+     * Scan terms a multi-term query expands to.
+     * 
+     * @param reader
+     *            reader
+     * @param query
+     *            multi-term query
+     * @param cost
+     *            cost summed up so far
+     * @return Query query or clone with changed rewrite-method
+     * @throws IOException
+     *             e
+     * @throws SRWDiagnostic
+     *             if query expands to too many terms
+     */
+    private Query guard(final IndexReader reader, 
+            final MultiTermQuery query, final Cost cost) 
+                                    throws IOException, SRWDiagnostic {
+        String field = null;
+        String prefix = "";
+        String start = "";
+        String upper = null;
+        boolean fuzzy = false;
+        if (query instanceof PrefixQuery) {
+            field = ((PrefixQuery) query).getPrefix().field();
+            prefix = ((PrefixQuery) query).getPrefix().text();
+            start = prefix;
+        } else if (query instanceof WildcardQuery) {
+            Term term = ((WildcardQuery) query).getTerm();
+            field = term.field();
+            prefix = getWildcardPrefix(term.text());
+            start = prefix;
+        } else if (query instanceof FuzzyQuery) {
+            Term term = ((FuzzyQuery) query).getTerm();
+            field = term.field();
+            prefix = term.text().substring(0, Math.min(
+                ((FuzzyQuery) query).getPrefixLength(), term.text().length()));
+            start = prefix;
+            fuzzy = true;
+        } else if (query instanceof TermRangeQuery) {
+            TermRangeQuery rangeQuery = (TermRangeQuery) query;
+            field = rangeQuery.getField();
+            // ranges with collator can match all terms of the field
+            if (rangeQuery.getCollator() == null) {
+                if (rangeQuery.getLowerTerm() != null) {
+                    start = rangeQuery.getLowerTerm();
+                }
+                upper = rangeQuery.getUpperTerm();
+            }
+        } else {
+            // eg NumericRangeQuery, expands to few trie-terms
+            return query;
+        }
+
+        // BooleanQuery can not get more clauses than maxClauseCount
+        int rewriteTerms = 
+            Math.min(filterRewriteTerms, BooleanQuery.getMaxClauseCount());
+
+        // postings of fuzzy-queries are limited by the number of 
+        // similar terms, scanning is the expensive part
+        boolean countPostings = maxPostings > 0 && !fuzzy;
+        int terms = 0;
+        long postings = 0;
+        TermEnum termEnum = reader.terms(new Term(field, start));
+        try {
+            do {
+                Term term = termEnum.term();
+                if (term == null || !term.field().equals(field)
+                    || !term.text().startsWith(prefix)
+                    || (upper != null && term.text().compareTo(upper) > 0)) {
+                    break;
+                }
+                terms++;
+                postings += termEnum.docFreq();
+                if (maxTerms > 0 && terms > maxTerms) {
+                    break;
+                }
+                if (countPostings) {
+                    if (cost.postings + postings > maxPostings) {
+                        break;
+                    }
+                } else if (terms > rewriteTerms) {
+                    break;
+                }
+            } while (termEnum.next());
+        } finally {
+            termEnum.close();
+        }
+        cost.terms += terms;
+
+        if (maxTerms > 0 && terms > maxTerms) {
+            throw new SRWDiagnostic(
+                SRWDiagnostic.TooManyTermsMatchedByMaskedQueryTerm, 
+                query.toString());
+        }
+        if (fuzzy) {
+            MultiTermQuery copy = (MultiTermQuery) query.clone();
+            copy.setRewriteMethod(
+                new MultiTermQuery.TopTermsScoringBooleanQueryRewrite(
+                        Math.min(Constants.FUZZY_BOOLEAN_MAX_CLAUSE_COUNT, 
+                                BooleanQuery.getMaxClauseCount())));
+            return copy;
+        }
+        cost.postings += postings;
+        if (terms > rewriteTerms && query.getRewriteMethod() 
+                    != MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE) {
+            cost.filterRewrites++;
+            MultiTermQuery copy = (MultiTermQuery) query.clone();
+            copy.setRewriteMethod(
+                    MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+            return copy;
+        }
+        return query;
+    }
+
+    /**
+     * Get text before the first wildcard-character.
+     * 
+     * @param text
+     *            wildcard-text
+     * @return String prefix all matching terms share
+     */
+    private static String getWildcardPrefix(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == WildcardTermEnum.WILDCARD_STRING 
+                || c == WildcardTermEnum.WILDCARD_CHAR) {
+                return text.substring(0, i);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Cost of a query summed up while guarding.
+     */
+    private static final class Cost {
+
+        private long terms = 0;
+
+        private long postings = 0;
+
+        private int filterRewrites = 0;
+
+        private long clauses = 0;
+    }
+
+}
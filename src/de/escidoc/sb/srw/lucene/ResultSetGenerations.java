@@ -0,0 +1,158 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+
+import de.escidoc.core.common.util.logger.AppLogger;
+
+/**
+ * Counts the lazy result sets keeping a reader-generation open 
+ * and limits the number of generations kept open.
+ * If the limit is reached, result sets of other generations 
+ * get rendered immediately.
+ * 
+ * Translators of the same index share one instance 
+ * (see {@link #getInstance(String, int)}), 
+ * so the limit applies to the index, not to each translator.
+ * 
+ * @author MIH
+ */
+public final class ResultSetGenerations {
+
+    private static AppLogger log =
+        new AppLogger(ResultSetGenerations.class.getName());
+
+    private static final Map<String, ResultSetGenerations> INSTANCES = 
+        new HashMap<String, ResultSetGenerations>();
+
+    /**
+     * Maximum number of reader-generations kept open. 
+     * 0: result sets are never lazy.
+     */
+    private volatile int maxGenerations;
+
+    /**
+     * reader-generation - number of lazy result sets keeping it open.
+     */
+    private final Map<IndexReader, int[]> generations = 
+                                    new HashMap<IndexReader, int[]>();
+
+    /**
+     * Constructor with maximum number of reader-generations.
+     * 
+     * @param maxGenerations
+     *            maximum number of reader-generations kept open
+     */
+    public ResultSetGenerations(final int maxGenerations) {
+        this.maxGenerations = maxGenerations;
+    }
+
+    /**
+     * get the instance of the index-path.
+     * Creates it if it doesnt exist, otherwise the maximum is updated.
+     * 
+     * @param indexPath
+     *            index-path
+     * @param maxGenerations
+     *            maximum number of reader-generations kept open
+     * @return ResultSetGenerations shared instance
+     */
+    public static ResultSetGenerations getInstance(
+            final String indexPath, final int maxGenerations) {
+        synchronized (INSTANCES) {
+            ResultSetGenerations instance = INSTANCES.get(indexPath);
+            if (instance == null) {
+                instance = new ResultSetGenerations(maxGenerations);
+                INSTANCES.put(indexPath, instance);
+            } else {
+                instance.maxGenerations = maxGenerations;
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * @return int maximum number of reader-generations kept open.
+     */
+    public int getMaxGenerations() {
+        return maxGenerations;
+    }
+
+    /**
+     * @param inp maximum number of reader-generations kept open.
+     */
+    public void setMaxGenerations(final int inp) {
+        maxGenerations = inp;
+    }
+
+    /**
+     * Register a lazy result set for the reader-generation, 
+     * if the generation is already kept open 
+     * or less than maxGenerations are kept open.
+     * 
+     * @param reader
+     *            top-level reader of the searcher
+     * @return boolean true if the result set may keep the reader open
+     */
+    public synchronized boolean keep(final IndexReader reader) {
+        int[] count = generations.get(reader);
+        if (count == null) {
+            if (generations.size() >= maxGenerations) {
+                if (log.isInfoEnabled()) {
+                    log.info(generations.size() 
+                        + " reader-generations kept by result sets, " 
+                        + "rendering result set immediately");
+                }
+                return false;
+            }
+            count = new int[1];
+            generations.put(reader, count);
+        }
+        count[0]++;
+        return true;
+    }
+
+    /**
+     * Unregister a closed lazy result set.
+     * 
+     * @param reader
+     *            top-level reader of the searcher
+     */
+    public synchronized void release(final IndexReader reader) {
+        int[] count = generations.get(reader);
+        if (count != null && --count[0] == 0) {
+            generations.remove(reader);
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.ScoreCachingWrappingScorer;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+
+/**
+ * Collector that only passes the hits positioned after a 
+ * {@link SearchCursor} to the wrapped collector, 
+ * so the wrapped collector only needs a queue of page-size.
+ * 
+ * Hits are compared with the cursor the same way TopScoreDocCollector 
+ * (score descending, doc-id ascending) 
+ * or TopFieldCollector (sort-fields, doc-id ascending) orders them.
+ * 
+ * If a DistinctCountCollector filled in a previous pass is given, 
+ * hits that do not survive collapsing duplicates are dropped, 
+ * same as EscidocCollapseCollector does when filtering latest releases.
+ * 
+ * @author MIH
+ */
+public class SearchAfterCollector extends Collector {
+
+    private final Collector collector;
+
+    private final SearchCursor cursor;
+
+    private final FieldComparator[] comparators;
+
+    private final int[] reverseMul;
+
+    private final Object[] cursorValues;
+
+    private final DistinctCountCollector duplicates;
+
+    private Scorer scorer = null;
+
+    private int docBase = 0;
+
+    private int totalHits = 0;
+
+    /**
+     * Construct.
+     * 
+     * @param collector
+     *            collector to pass the hits after the cursor to
+     * @param sort
+     *            sort or null (sort by relevance)
+     * @param cursor
+     *            cursor
+     * @param duplicates
+     *            collector of a previous pass 
+     *            or null if duplicates should not get dropped
+     * @throws IOException
+     *             e
+     */
+    public SearchAfterCollector(final Collector collector, 
+            final Sort sort, final SearchCursor cursor, 
+            final DistinctCountCollector duplicates) throws IOException {
+        this.collector = collector;
+        this.cursor = cursor;
+        this.duplicates = duplicates;
+        if (sort != null) {
+            SortField[] sortFields = sort.getSort();
+            comparators = new FieldComparator[sortFields.length];
+            reverseMul = new int[sortFields.length];
+            for (int i = 0; i < sortFields.length; i++) {
+                comparators[i] = sortFields[i].getComparator(1, i);
+                reverseMul[i] = sortFields[i].getReverse() ? -1 : 1;
+            }
+            cursorValues = cursor.getValues();
+        } else {
+            comparators = null;
+            reverseMul = null;
+            cursorValues = null;
+        }
+    }
+
+    /**
+     * @return int number of hits (before and after the cursor).
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setScorer(final Scorer scorer) throws IOException {
+        this.scorer = new ScoreCachingWrappingScorer(scorer);
+        if (comparators != null) {
+            for (int i = 0; i < comparators.length; i++) {
+                comparators[i].setScorer(this.scorer);
+            }
+        }
+        collector.setScorer(this.scorer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void collect(final int doc) throws IOException {
+        totalHits++;
+        if (duplicates != null && !duplicates.isKept(docBase + doc)) {
+            return;
+        }
+        if (isAfterCursor(doc)) {
+            collector.collect(doc);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNextReader(final IndexReader reader, final int base) 
+                                                    throws IOException {
+        docBase = base;
+        if (comparators != null) {
+            for (int i = 0; i < comparators.length; i++) {
+                comparators[i].setNextReader(reader, base);
+            }
+        }
+        collector.setNextReader(reader, base);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return collector.acceptsDocsOutOfOrder();
+    }
+
+    /**
+     * Check if hit is positioned after the cursor.
+     * 
+     * @param doc
+     *            doc-id in current segment
+     * @return boolean true if hit is after the cursor
+     * @throws IOException
+     *             e
+     */
+    private boolean isAfterCursor(final int doc) throws IOException {
+        if (comparators == null) {
+            float score = scorer.score();
+            if (score != cursor.getScore()) {
+                return score < cursor.getScore();
+            }
+        } else {
+            for (int i = 0; i < comparators.length; i++) {
+                comparators[i].copy(0, doc);
+                int c = reverseMul[i] * comparators[i].compareValues(
+                        cursorValues[i], comparators[i].value(0));
+                if (c != 0) {
+                    return c < 0;
+                }
+            }
+        }
+        return docBase + doc > cursor.getDoc();
+    }
+
+}
@@ -0,0 +1,417 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Position of the last hit of a result-page, 
+ * used to collect only the hits of the next page (search-after).
+ * 
+ * Holds the sort-values (or the score if sorted by relevance) 
+ * and the doc-id of the last hit, 
+ * the generation of the reader the hit was found with 
+ * and a hash of query and sort.
+ * 
+ * The cursor is passed to the client as opaque String 
+ * (url-safe base64) in extraResponseData 
+ * and sent back by the client in extraRequestData.
+ * If the reader-generation changed, the doc-id of the cursor 
+ * is only used to order hits with equal sort-values.
+ * 
+ * @author MIH
+ */
+public final class SearchCursor {
+
+    private static final byte VERSION = 1;
+
+    /**
+     * Maximum number of sort-values accepted when decoding a cursor, 
+     * the cursor-String comes from the client.
+     */
+    private static final int MAX_SORT_VALUES = 32;
+
+    private static final byte TYPE_NULL = 0;
+
+    private static final byte TYPE_STRING = 1;
+
+    private static final byte TYPE_INTEGER = 2;
+
+    private static final byte TYPE_LONG = 3;
+
+    private static final byte TYPE_FLOAT = 4;
+
+    private static final byte TYPE_DOUBLE = 5;
+
+    private final long generation;
+
+    private final int queryHash;
+
+    private final int doc;
+
+    private final float score;
+
+    private final Object[] values;
+
+    /**
+     * Constructor.
+     * 
+     * @param generation
+     *            generation of the reader
+     * @param queryHash
+     *            hash of query and sort
+     * @param doc
+     *            doc-id of last hit
+     * @param score
+     *            score of last hit
+     * @param values
+     *            sort-values of last hit or null
+     */
+    private SearchCursor(final long generation, final int queryHash, 
+            final int doc, final float score, final Object[] values) {
+        this.generation = generation;
+        this.queryHash = queryHash;
+        this.doc = doc;
+        this.score = score;
+        this.values = values;
+    }
+
+    /**
+     * Create cursor for a hit.
+     * 
+     * @param searcher
+     *            IndexSearcher the hit was found with
+     * @param query
+     *            query
+     * @param sort
+     *            sort or null (sort by relevance)
+     * @param hit
+     *            last hit of page
+     * @return SearchCursor cursor
+     * @throws IOException
+     *             e
+     */
+    public static SearchCursor create(
+            final IndexSearcher searcher, final Query query, 
+            final Sort sort, final ScoreDoc hit) throws IOException {
+        Object[] values = null;
+        if (sort != null) {
+            values = getSortValues(searcher, sort, hit);
+        }
+        return new SearchCursor(getGeneration(searcher.getIndexReader()), 
+                getQueryHash(query, sort), hit.doc, hit.score, values);
+    }
+
+    /**
+     * Decode cursor-String.
+     * 
+     * @param cursor
+     *            cursor-String
+     * @return SearchCursor cursor
+     * @throws IllegalArgumentException
+     *             if the String is no valid cursor
+     */
+    public static SearchCursor decode(final String cursor) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    Base64.decodeBase64(cursor.trim())));
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("unknown cursor-version");
+            }
+            long generation = in.readLong();
+            int queryHash = in.readInt();
+            int doc = in.readInt();
+            float score = in.readFloat();
+            int length = in.readInt();
+            if (length < -1 || length > MAX_SORT_VALUES) {
+                throw new IllegalArgumentException(
+                    "invalid number of sort-values");
+            }
+            Object[] values = null;
+            if (length >= 0) {
+                values = new Object[length];
+                for (int i = 0; i < length; i++) {
+                    values[i] = readValue(in);
+                }
+            }
+            return new SearchCursor(
+                    generation, queryHash, doc, score, values);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+
+    /**
+     * Encode cursor into opaque url-safe String.
+     * 
+     * @return String cursor-String
+     */
+    public String encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeLong(generation);
+            out.writeInt(queryHash);
+            out.writeInt(doc);
+            out.writeFloat(score);
+            if (values == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(values.length);
+                for (int i = 0; i < values.length; i++) {
+                    writeValue(out, values[i]);
+                }
+            }
+            out.flush();
+            return Base64.encodeBase64URLSafeString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    /**
+     * Check if cursor was created for same query and sort.
+     * 
+     * @param query
+     *            query
+     * @param sort
+     *            sort or null
+     * @return boolean true if cursor matches query and sort
+     */
+    public boolean matches(final Query query, final Sort sort) {
+        int length = sort == null ? -1 : sort.getSort().length;
+        int valuesLength = values == null ? -1 : values.length;
+        return queryHash == getQueryHash(query, sort) 
+            && length == valuesLength;
+    }
+
+    /**
+     * Check if cursor was created with the given reader-generation.
+     * 
+     * @param reader
+     *            top-level reader
+     * @return boolean true if generation is the same
+     */
+    public boolean isSameGeneration(final IndexReader reader) {
+        return generation == getGeneration(reader);
+    }
+
+    /**
+     * @return int doc-id of last hit.
+     */
+    public int getDoc() {
+        return doc;
+    }
+
+    /**
+     * @return float score of last hit.
+     */
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     * @return Object[] sort-values of last hit or null.
+     */
+    public Object[] getValues() {
+        return values;
+    }
+
+    /**
+     * Get generation of reader. 
+     * For readers without version (MultiReader of federated indexes)
+     * the versions of the subreaders are combined.
+     * 
+     * @param reader
+     *            reader
+     * @return long generation
+     */
+    public static long getGeneration(final IndexReader reader) {
+        try {
+            return reader.getVersion();
+        } catch (UnsupportedOperationException e) {
+            long generation = 17;
+            IndexReader[] subReaders = reader.getSequentialSubReaders();
+            if (subReaders != null) {
+                for (int i = 0; i < subReaders.length; i++) {
+                    generation = 31 * generation 
+                                + getGeneration(subReaders[i]);
+                }
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * @param query
+     *            query
+     * @param sort
+     *            sort or null
+     * @return int hash of query and sort
+     */
+    private static int getQueryHash(final Query query, final Sort sort) {
+        StringBuilder key = new StringBuilder(query.toString());
+        if (sort != null) {
+            // Sort.toString contains instance of custom comparator-source
+            SortField[] sortFields = sort.getSort();
+            for (int i = 0; i < sortFields.length; i++) {
+                key.append('|').append(sortFields[i].getField())
+                    .append(',').append(sortFields[i].getType())
+                    .append(',').append(sortFields[i].getReverse());
+                if (sortFields[i].getComparatorSource() != null) {
+                    key.append(',').append(sortFields[i]
+                            .getComparatorSource().getClass().getName());
+                }
+            }
+        }
+        return key.toString().hashCode();
+    }
+
+    /**
+     * Get sort-values of a hit. 
+     * Taken from FieldDoc if filled, otherwise 
+     * read with the comparators of the sort-fields.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param sort
+     *            sort
+     * @param hit
+     *            hit
+     * @return Object[] sort-values
+     * @throws IOException
+     *             e
+     */
+    private static Object[] getSortValues(final IndexSearcher searcher, 
+            final Sort sort, final ScoreDoc hit) throws IOException {
+        SortField[] sortFields = sort.getSort();
+        if (hit instanceof FieldDoc && ((FieldDoc) hit).fields != null
+            && ((FieldDoc) hit).fields.length == sortFields.length) {
+            return ((FieldDoc) hit).fields.clone();
+        }
+        IndexReader[] subReaders = searcher.getSubReaders();
+        int[] docStarts = new int[subReaders.length];
+        int docStart = 0;
+        for (int i = 0; i < subReaders.length; i++) {
+            docStarts[i] = docStart;
+            docStart += subReaders[i].maxDoc();
+        }
+        int subIndex = ReaderUtil.subIndex(hit.doc, docStarts);
+        Object[] values = new Object[sortFields.length];
+        for (int i = 0; i < sortFields.length; i++) {
+            if (sortFields[i].getType() == SortField.SCORE) {
+                values[i] = Float.valueOf(hit.score);
+            } else {
+                FieldComparator comparator = 
+                                sortFields[i].getComparator(1, i);
+                comparator.setNextReader(
+                        subReaders[subIndex], docStarts[subIndex]);
+                comparator.copy(0, hit.doc - docStarts[subIndex]);
+                values[i] = comparator.value(0);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param out
+     *            DataOutputStream
+     * @param value
+     *            sort-value
+     * @throws IOException
+     *             e
+     */
+    private static void writeValue(
+            final DataOutputStream out, final Object value) 
+                                            throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat(((Float) value).floatValue());
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    /**
+     * @param in
+     *            DataInputStream
+     * @return Object sort-value
+     * @throws IOException
+     *             e
+     */
+    private static Object readValue(final DataInputStream in) 
+                                            throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_INTEGER:
+            return Integer.valueOf(in.readInt());
+        case TYPE_LONG:
+            return Long.valueOf(in.readLong());
+        case TYPE_FLOAT:
+            return Float.valueOf(in.readFloat());
+        case TYPE_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case TYPE_STRING:
+            return in.readUTF();
+        default:
+            throw new IOException("unknown value-type " + type);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TimeLimitingCollector;
+
+/**
+ * Time budget of one search-request. 
+ * All collectors of the request are wrapped into 
+ * a TimeLimitingCollector with the remaining time, 
+ * so several passes over the index share one deadline.
+ * 
+ * If the deadline is reached, collecting stops 
+ * and the wrapped collectors hold the best hits found so far. 
+ * The deadline is then marked as exceeded, 
+ * so the search-result can get flagged as partial.
+ * 
+ * @author MIH
+ */
+public class SearchDeadline {
+
+    private final long deadline;
+
+    private volatile boolean exceeded = false;
+
+    /**
+     * Constructor.
+     * 
+     * @param timeout
+     *            time allowed in milliseconds, 0: no limit
+     */
+    public SearchDeadline(final long timeout) {
+        if (timeout > 0) {
+            deadline = System.currentTimeMillis() + timeout;
+        } else {
+            deadline = 0;
+        }
+    }
+
+    /**
+     * @return boolean true if search-time is limited.
+     */
+    public boolean isLimited() {
+        return deadline > 0;
+    }
+
+    /**
+     * @return boolean true if collecting was stopped at the deadline.
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * Mark deadline as exceeded.
+     */
+    public void setExceeded() {
+        exceeded = true;
+    }
+
+    /**
+     * Wrap collector into TimeLimitingCollector 
+     * with the remaining time.
+     * 
+     * @param collector
+     *            collector
+     * @return Collector time-limited collector 
+     *         or given collector if time is not limited
+     */
+    public Collector wrap(final Collector collector) {
+        if (!isLimited()) {
+            return collector;
+        }
+        return new TimeLimitingCollector(collector, 
+                Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    /**
+     * Search with time-limited collector. 
+     * If the deadline is reached, 
+     * the collector holds the hits collected so far.
+     * 
+     * @param searcher
+     *            IndexSearcher
+     * @param query
+     *            query
+     * @param filter
+     *            filter or null
+     * @param collector
+     *            collector
+     * @throws IOException
+     *             e
+     */
+    public void search(final IndexSearcher searcher, final Query query, 
+            final Filter filter, final Collector collector) 
+                                                throws IOException {
+        try {
+            searcher.search(query, filter, wrap(collector));
+        } catch (TimeLimitingCollector.TimeExceededException e) {
+            exceeded = true;
+        }
+    }
+
+}
@@ -44,14 +44,11 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
 import org.apache.lucene.search.vectorhighlight.FastVectorHighlighter;
 import org.apache.lucene.search.vectorhighlight.FieldQuery;
@@ -60,6 +57,7 @@ import org.apache.lucene.search.vectorhighlight.WhitespaceFragmentsBuilder;
 import org.apache.lucene.util.Version;
 
 import de.escidoc.sb.srw.Constants;
+import de.escidoc.sb.srw.lucene.queryParser.TypedRangeQuery;
 
 /**
  * Class implements lucene-highlighting of configurable lucene-fields
@@ -118,14 +116,6 @@ public class EscidocFastVectorHighlighter implements SrwHighlighter {
 
     private final String INTERNAL_FIELDS_REGEX = "type";
 
-	private static final String LUCENE_ESCAPE_CHARS = 
-					"[\\\\+\\-\\!\\(\\)\\:\\^\\]\\{\\}\\~\\*\\?]";
-
-	private static final Pattern LUCENE_PATTERN = 
-						Pattern.compile(LUCENE_ESCAPE_CHARS);
-
-	private static final String REPLACEMENT_STRING = "\\\\$0";
-
 	private static Log log = LogFactory.getLog(EscidocFastVectorHighlighter.class);
 
     /**
@@ -239,9 +229,6 @@ public class EscidocFastVectorHighlighter implements SrwHighlighter {
         throws Exception {
 
     	this.indexSearcher = indexSearcher;
-        QueryParser parser = new QueryParser(Constants.LUCENE_VERSION, "q", analyzer);
-        parser.setMultiTermRewriteMethod(
-        		MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
 
         searchFields = new HashSet<String>();
         Query fulltextQuery = null;
@@ -317,15 +304,13 @@ public class EscidocFastVectorHighlighter implements SrwHighlighter {
                 searchFields.add(FULLTEXT_IDENTIFIER);
                 fieldQueries.put(FULLTEXT_IDENTIFIER, 
                 		highlighter.getFieldQuery(
-                				parser.parse(
-                						fulltextQuery.toString())
+                				getHighlightQuery(fulltextQuery)
                 						.rewrite(indexSearcher.getIndexReader())));
             }
             if (nonFulltextFound) {
                 searchFields.add(METADATA_IDENTIFIER);
                fieldQueries.put(METADATA_IDENTIFIER, highlighter.getFieldQuery(
-                		parser.parse(
-						metadataQuery.toString())
+                		getHighlightQuery(metadataQuery)
 						.rewrite(indexSearcher.getIndexReader())));
             }
             // ////////////////////////////////////////////////////////////////
@@ -582,17 +567,6 @@ public class EscidocFastVectorHighlighter implements SrwHighlighter {
                             getBooleanClauses(
                                   ((BooleanQuery)clauseArr[i].getQuery())));
                 } else {
-                    if (clauseArr[i].getQuery() instanceof TermQuery) {
-                    	clauseArr[i].setQuery(new TermQuery(new Term(
-                    			((TermQuery)clauseArr[i].getQuery()).getTerm().field(), 
-                    			LUCENE_PATTERN.matcher(((TermQuery)clauseArr[i].getQuery())
-                    					.getTerm().text()).replaceAll(REPLACEMENT_STRING))));
-                    }
-//                    else if (clauseArr[i].getQuery() instanceof MultiTermQuery) {
-//                        ((MultiTermQuery)clauseArr[i].getQuery())
-//                            .setRewriteMethod(
-//                                MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
-//                    }
                     clauses.add(clauseArr[i]);
                 }
             }
@@ -600,4 +574,44 @@ public class EscidocFastVectorHighlighter implements SrwHighlighter {
         return clauses;
     }
     
+    /**
+     * Copy query for highlighting.
+     * MultiTermQueries (wildcard, prefix, fuzzy, range) of the search 
+     * may be constant-score-queries that dont provide terms.
+     * So rewrite them to boolean-queries with the matching terms, 
+     * limited to the best BooleanQuery.getMaxClauseCount() terms, 
+     * so broad wildcards dont fail with TooManyClauses.
+     * Copy MultiTermQueries so the query of the search stays untouched.
+     * Terms are already analyzed, so no reparsing is needed.
+     *
+     * @param query
+     *            the query
+     * @return Query query for highlighting
+     */
+    private Query getHighlightQuery(final Query query) {
+        if (query instanceof BooleanQuery) {
+            BooleanQuery highlightQuery = new BooleanQuery(
+                    ((BooleanQuery) query).isCoordDisabled());
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                highlightQuery.add(
+                        getHighlightQuery(clause.getQuery()), clause.getOccur());
+            }
+            highlightQuery.setBoost(query.getBoost());
+            return highlightQuery;
+        } else if (query instanceof MultiTermQuery) {
+            MultiTermQuery highlightQuery = 
+                        (MultiTermQuery) ((MultiTermQuery) query).clone();
+            highlightQuery.setRewriteMethod(
+                    new MultiTermQuery.TopTermsScoringBooleanQueryRewrite(
+                            BooleanQuery.getMaxClauseCount()));
+            return highlightQuery;
+        } else if (query instanceof TypedRangeQuery) {
+            // trie-encoded fields have no term-vectors, 
+            // highlight string-range
+            return getHighlightQuery(
+                    ((TypedRangeQuery) query).getStringQuery());
+        }
+        return query;
+    }
+    
 }
@@ -33,6 +33,8 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +43,8 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermRangeQuery;
@@ -64,6 +68,11 @@ public class EscidocQueryParser extends QueryParser {
      */
     private Analyzer wildcardAnalyzer;
     
+    /**
+     * Fields declared as date, long or double (fieldname - type).
+     */
+    private Map<String, String> numericFields;
+    
     /**
      * Constructs a query parser.
      * 
@@ -115,6 +124,70 @@ public class EscidocQueryParser extends QueryParser {
         setWildcardAnalyzer(wildcardAnalyzer);
     }
 
+    /**
+     * Builds a BooleanQuery of the clauses. 
+     * Disjunctions with more clauses than BooleanQuery.maxClauseCount 
+     * (eg permission-filters ORing many grants) are split into 
+     * nested disjunctions instead of raising the JVM-wide maxClauseCount. 
+     * The nested disjunctions are SplitBooleanQueries, 
+     * so PermissionFilterCache can flatten them 
+     * and cache the original clauses. 
+     * The number of clauses of search-queries is limited 
+     * by QueryCostEstimator.
+     * 
+     * @param clauses
+     *            clauses
+     * @param disableCoord
+     *            disable coord?
+     * @return Query BooleanQuery or null if there are no clauses
+     * @throws ParseException
+     *             e
+     */
+    @Override
+    protected Query getBooleanQuery(final List<BooleanClause> clauses, 
+            final boolean disableCoord) throws ParseException {
+        int maxClauseCount = BooleanQuery.getMaxClauseCount();
+        if (clauses.size() <= maxClauseCount) {
+            return super.getBooleanQuery(clauses, disableCoord);
+        }
+        for (BooleanClause clause : clauses) {
+            if (clause.getOccur() != BooleanClause.Occur.SHOULD) {
+                // conjunctions cannot be split, TooManyClauses
+                return super.getBooleanQuery(clauses, disableCoord);
+            }
+        }
+        List<BooleanClause> nested = new ArrayList<BooleanClause>();
+        for (int i = 0; i < clauses.size(); i += maxClauseCount) {
+            SplitBooleanQuery chunk = new SplitBooleanQuery();
+            for (BooleanClause clause : clauses.subList(
+                    i, Math.min(i + maxClauseCount, clauses.size()))) {
+                chunk.add(clause);
+            }
+            nested.add(newBooleanClause(chunk, BooleanClause.Occur.SHOULD));
+        }
+        return getBooleanQuery(nested, disableCoord);
+    }
+
+    /**
+     * Part of a disjunction that was split 
+     * because it had more clauses than BooleanQuery.maxClauseCount. 
+     * Matches the same documents as if its clauses 
+     * were added to the parent disjunction.
+     * 
+     * @author MIH
+     */
+    public static final class SplitBooleanQuery extends BooleanQuery {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor, coord is disabled.
+         */
+        public SplitBooleanQuery() {
+            super(true);
+        }
+    }
+
     /**
      * Constructs a TermRangeQuery.
      * TermRangeQuery with null as upper 
@@ -336,6 +409,162 @@ public class EscidocQueryParser extends QueryParser {
         }
     }
 
+    /**
+     * Constructs analyzed query for the term of a CQLTermNode.
+     * Is used to build the lucene-query directly while walking 
+     * the cql-tree instead of creating an unanalyzed query, 
+     * converting it to a String and parsing the String again.
+     * <p>
+     * The term is split at whitespace:
+     * relation any: OR-query of the words,
+     * relation all: AND-query of the words,
+     * other relations: phrase-query.
+     * Words containing unescaped * or ? become wildcard- or prefix-queries,
+     * fuzzy words become fuzzy-queries, all other words get analyzed.
+     * 
+     * @param field
+     *            Name of the field query will use.
+     * @param term
+     *            term of the CQLTermNode (cql-escaped).
+     * @param relation
+     *            relation of the CQLTermNode.
+     * @param fuzzy
+     *            CQLTermNode has modifier fuzzy.
+     * 
+     * @return Resulting {@link Query} or null if analyzer removed all terms
+     * @throws ParseException
+     *             e
+     */
+    public Query getCqlTermQuery(
+            final String field, final String term, 
+            final String relation, final boolean fuzzy) throws ParseException {
+        String value = term.replace("#quote#", "\\\"");
+        if (value.indexOf(" ") == -1) {
+            return getCqlWordQuery(field, value, fuzzy);
+        }
+        if (relation == null || relation.equals("=") || relation.equals("<>") 
+                || relation.equals("exact")) {
+            return getFieldQuery(field, unescape(value), true);
+        }
+        BooleanQuery query = newBooleanQuery(false);
+        StringTokenizer tokenizer = new StringTokenizer(value, " ");
+        while (tokenizer.hasMoreTokens()) {
+            Query wordQuery = 
+                getCqlWordQuery(field, tokenizer.nextToken(), fuzzy);
+            if (wordQuery != null) {
+                if (relation.equals("all")) {
+                    query.add(wordQuery, BooleanClause.Occur.MUST);
+                } else {
+                    query.add(wordQuery, BooleanClause.Occur.SHOULD);
+                }
+            }
+        }
+        if (query.clauses().isEmpty()) {
+            return null;
+        }
+        return query;
+    }
+
+    /**
+     * Constructs analyzed range-query for CQLTermNode 
+     * with relation &lt;, &gt;, &lt;= or &gt;=.
+     * 
+     * @param field
+     *            Name of the field query will use.
+     * @param lower
+     *            lower bound (cql-escaped) or null.
+     * @param upper
+     *            upper bound (cql-escaped) or null.
+     * @param inclusive
+     *            boundary-inclusive?.
+     * 
+     * @return Resulting {@link Query}
+     * @throws ParseException
+     *             e
+     */
+    public Query getCqlRangeQuery(
+            final String field, final String lower, 
+            final String upper, final boolean inclusive) throws ParseException {
+        Query query = getRangeQuery(field, 
+                lower == null ? "*" : unescape(lower), 
+                upper == null ? "*" : unescape(upper), inclusive);
+        if (numericFields != null && numericFields.get(field) != null) {
+            // numeric range-query if field is trie-encoded in index
+            Query numericQuery = TypedRangeQuery.newNumericRangeQuery(
+                    field, numericFields.get(field), 
+                    lower == null ? null : unescape(lower), 
+                    upper == null ? null : unescape(upper), inclusive);
+            if (numericQuery != null) {
+                query = new TypedRangeQuery(field, numericQuery, query);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Constructs query for one word of a CQLTermNode.
+     * 
+     * @param field
+     *            Name of the field query will use.
+     * @param word
+     *            word (cql-escaped, without whitespace).
+     * @param fuzzy
+     *            CQLTermNode has modifier fuzzy.
+     * 
+     * @return Resulting {@link Query} or null if analyzer removed all terms
+     * @throws ParseException
+     *             e
+     */
+    private Query getCqlWordQuery(
+            final String field, final String word, final boolean fuzzy) 
+                                                    throws ParseException {
+        boolean wildcard = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '*' || c == '?') {
+                wildcard = true;
+            }
+        }
+        String text = unescape(word);
+        if (wildcard) {
+            if (text.length() > 1 
+                    && text.indexOf('*') == text.length() - 1 
+                    && text.indexOf('?') == -1) {
+                return getPrefixQuery(
+                        field, text.substring(0, text.length() - 1));
+            }
+            return getWildcardQuery(field, text);
+        }
+        if (fuzzy) {
+            return getFuzzyQuery(field, text, getFuzzyMinSim());
+        }
+        return getFieldQuery(field, text, false);
+    }
+
+    /**
+     * Remove escape-characters (backslash) from cql-term.
+     * 
+     * @param text
+     *            cql-escaped text
+     * @return String unescaped text
+     */
+    private static String unescape(final String text) {
+        if (text.indexOf('\\') == -1) {
+            return text;
+        }
+        StringBuffer unescaped = new StringBuffer(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                c = text.charAt(++i);
+            }
+            unescaped.append(c);
+        }
+        return unescaped.toString();
+    }
+
     /**
      * @return the wildcardAnalyzer
      */
@@ -351,4 +580,19 @@ public class EscidocQueryParser extends QueryParser {
         this.wildcardAnalyzer = wildcardAnalyzer;
     }
 
+    /**
+     * @return the numericFields
+     */
+    public Map<String, String> getNumericFields() {
+        return numericFields;
+    }
+
+    /**
+     * @param numericFields
+     *            fields declared as date, long or double (fieldname - type)
+     */
+    public void setNumericFields(final Map<String, String> numericFields) {
+        this.numericFields = numericFields;
+    }
+
 }
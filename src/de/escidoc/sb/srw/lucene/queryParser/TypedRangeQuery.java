@@ -0,0 +1,298 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene.queryParser;
+
+import java.io.IOException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * Range-query on a field declared as date, long or double 
+ * (see cqlTranslator.numericFields).
+ * 
+ * Holds a NumericRangeQuery and the string-range-query 
+ * of the same bounds. Which one gets executed is decided when 
+ * the query gets rewritten with the IndexReader: 
+ * if the indexer wrote the field trie-encoded (NumericField), 
+ * the NumericRangeQuery is used, that only visits a few trie-terms 
+ * instead of all distinct terms in the range. 
+ * Otherwise the string-range-query is used.
+ * 
+ * Dates are converted to milliseconds UTC. Dates without time 
+ * or timezone are taken as start of the period in UTC, 
+ * so eg &gt; 2010-01-01 matches the same dates as the string-range.
+ * 
+ * @author MIH
+ */
+public class TypedRangeQuery extends Query {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String TYPE_DATE = "date";
+
+    public static final String TYPE_LONG = "long";
+
+    public static final String TYPE_DOUBLE = "double";
+
+    private static final String[] DATE_PATTERNS = {
+        "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss", 
+        "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd", "yyyy-MM", "yyyy" };
+
+    private static final Pattern TIMEZONE_PATTERN = 
+        Pattern.compile("(T.*)([+-]\\d{2}):?(\\d{2})$");
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final String field;
+
+    private final Query numericQuery;
+
+    private final Query stringQuery;
+
+    /**
+     * construct with numeric and string-range-query.
+     * 
+     * @param field
+     *            field
+     * @param numericQuery
+     *            NumericRangeQuery
+     * @param stringQuery
+     *            string-range-query
+     */
+    public TypedRangeQuery(final String field, 
+            final Query numericQuery, final Query stringQuery) {
+        this.field = field;
+        this.numericQuery = numericQuery;
+        this.stringQuery = stringQuery;
+    }
+
+    /**
+     * Create NumericRangeQuery for the given type.
+     * 
+     * @param field
+     *            field
+     * @param type
+     *            date, long or double
+     * @param lower
+     *            lower bound or null
+     * @param upper
+     *            upper bound or null
+     * @param inclusive
+     *            boundary-inclusive?
+     * @return Query NumericRangeQuery 
+     *          or null if type is unknown or a bound cannot get parsed
+     */
+    public static Query newNumericRangeQuery(final String field, 
+            final String type, final String lower, 
+            final String upper, final boolean inclusive) {
+        try {
+            if (TYPE_DATE.equals(type) || TYPE_LONG.equals(type)) {
+                Long min = null;
+                Long max = null;
+                if (TYPE_DATE.equals(type)) {
+                    if (lower != null && (min = parseDate(lower)) == null) {
+                        return null;
+                    }
+                    if (upper != null && (max = parseDate(upper)) == null) {
+                        return null;
+                    }
+                } else {
+                    min = lower == null ? null : Long.valueOf(lower.trim());
+                    max = upper == null ? null : Long.valueOf(upper.trim());
+                }
+                return NumericRangeQuery.newLongRange(
+                        field, min, max, inclusive, inclusive);
+            } else if (TYPE_DOUBLE.equals(type)) {
+                return NumericRangeQuery.newDoubleRange(field, 
+                        lower == null ? null : Double.valueOf(lower.trim()), 
+                        upper == null ? null : Double.valueOf(upper.trim()), 
+                        inclusive, inclusive);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Convert date to milliseconds UTC.
+     * 
+     * @param text
+     *            date (ISO 8601, eg 2010-01-01T12:00:00.000Z)
+     * @return Long milliseconds or null if text is no date
+     */
+    public static Long parseDate(final String text) {
+        String value = text.trim().toUpperCase();
+        TimeZone timeZone = UTC;
+        if (value.endsWith("Z")) {
+            value = value.substring(0, value.length() - 1);
+        } else {
+            Matcher matcher = TIMEZONE_PATTERN.matcher(value);
+            if (matcher.find()) {
+                timeZone = TimeZone.getTimeZone(
+                    "GMT" + matcher.group(2) + ":" + matcher.group(3));
+                value = value.substring(0, matcher.start(2));
+            }
+        }
+        for (int i = 0; i < DATE_PATTERNS.length; i++) {
+            SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERNS[i]);
+            format.setLenient(false);
+            format.setTimeZone(timeZone);
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(value, position);
+            if (date != null && position.getIndex() == value.length()) {
+                return Long.valueOf(date.getTime());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the indexer wrote the field trie-encoded (NumericField).
+     * The lowest term of a trie-encoded 64-bit field 
+     * is a full-precision prefix-coded value.
+     * 
+     * @param reader
+     *            reader
+     * @param field
+     *            field
+     * @return boolean true if field is trie-encoded
+     * @throws IOException
+     *             e
+     */
+    public static boolean isTrieEncoded(
+            final IndexReader reader, final String field) throws IOException {
+        TermEnum termEnum = reader.terms(new Term(field, ""));
+        try {
+            Term term = termEnum.term();
+            if (term == null || !term.field().equals(field)) {
+                return false;
+            }
+            String text = term.text();
+            if (text.length() != NumericUtils.BUF_SIZE_LONG 
+                    || text.charAt(0) != NumericUtils.SHIFT_START_LONG) {
+                return false;
+            }
+            for (int i = 1; i < text.length(); i++) {
+                if (text.charAt(i) > 0x7f) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            termEnum.close();
+        }
+    }
+
+    /**
+     * @return String field.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return Query NumericRangeQuery.
+     */
+    public Query getNumericQuery() {
+        return numericQuery;
+    }
+
+    /**
+     * @return Query string-range-query.
+     */
+    public Query getStringQuery() {
+        return stringQuery;
+    }
+
+    /**
+     * Use NumericRangeQuery if field is trie-encoded, 
+     * string-range-query otherwise.
+     * 
+     * @param reader
+     *            reader
+     * @return Query rewritten query
+     * @throws IOException
+     *             e
+     */
+    @Override
+    public Query rewrite(final IndexReader reader) throws IOException {
+        Query query = (Query) (isTrieEncoded(reader, field) 
+                ? numericQuery : stringQuery).clone();
+        query.setBoost(getBoost());
+        return query;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString(final String defaultField) {
+        return stringQuery.toString(defaultField);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TypedRangeQuery)) {
+            return false;
+        }
+        TypedRangeQuery other = (TypedRangeQuery) o;
+        return getBoost() == other.getBoost() 
+            && field.equals(other.field) 
+            && numericQuery.equals(other.numericQuery) 
+            && stringQuery.equals(other.stringQuery);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Float.floatToIntBits(getBoost()) ^ field.hashCode() 
+            ^ numericQuery.hashCode() ^ (stringQuery.hashCode() << 1);
+    }
+
+}
@@ -111,6 +111,15 @@ import org.apache.lucene.search.FieldComparatorSource;
 	        public Comparable value(final int slot) {
 	            return fieldValues[slot];
 	        }
+
+	        /**
+	         * Used when merging results of several segments or indexes.
+	         * Compare with collator, same as when collecting.
+	         */
+	        @Override
+	        public int compareValues(final Object first, final Object second) {
+	            return compare((String) first, (String) second);
+	        }
 	        
 	        private int compare(String fieldValue1, String fieldValue2) {
 	            int result = 0;
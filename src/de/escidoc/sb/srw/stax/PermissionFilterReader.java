@@ -0,0 +1,127 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.stax;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the permission-filter query from the response of AA 
+ * (/result/filter) while it is read from the connection.
+ * 
+ * If the first element is html, AA returned the login-page 
+ * because the handle expired.
+ * Reading stops as soon as the text of the filter-element is complete.
+ * 
+ * @author MIH
+ */
+public final class PermissionFilterReader {
+
+    private static final String ROOT_ELEMENT = "result";
+
+    private static final String FILTER_ELEMENT = "filter";
+
+    private static final String HTML_ELEMENT = "html";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * Only static methods.
+     * 
+     */
+    private PermissionFilterReader() {
+    }
+
+    /**
+     * Read permission-filter query.
+     * 
+     * @param in
+     *            response of AA
+     * @return String permission-filter query 
+     *          or null if response contains no filter
+     * @throws XMLStreamException
+     *             response is not well-formed
+     * @throws SecurityException
+     *             login-page was returned because handle expired
+     */
+    public static String read(final InputStream in) 
+                                        throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 1) {
+                        if (HTML_ELEMENT.equalsIgnoreCase(name)) {
+                            throw new SecurityException(
+                                "Authorization failed because of "
+                                + "expired handle. Try to login first.");
+                        }
+                        if (!ROOT_ELEMENT.equals(name)) {
+                            return null;
+                        }
+                    } else if (depth == 2 && FILTER_ELEMENT.equals(name)) {
+                        String filter = reader.getElementText();
+                        if (filter.length() == 0) {
+                            return null;
+                        }
+                        return filter;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Create factory that doesnt load DTDs (login-page).
+     * 
+     * @return XMLInputFactory factory
+     */
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(
+            XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+}
@@ -0,0 +1,793 @@
+package org.apache.lucene.search;
+
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.
+ * All rights reserved.  Use is subject to license terms.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Collector for filtering (eSciDoc) Documents with same id
+ * but different status: collapses all hits with the same 
+ * duplicate-identifier to the best document of the group.
+ * -The collapse-rule is defined once in {@link DuplicateFilter} 
+ *  and applied with {@link DuplicateGroups} by all duplicate-filtering 
+ *  searches (top-hits, count-only, search-after, facets and 
+ *  concurrent segment-search), so totals and hits are the same 
+ *  for all of them.
+ * -First pass (collect): the best document of each group is kept 
+ *  in a slot of the {@link DuplicateGroups}.
+ *  Documents that cannot get collapsed go directly into the 
+ *  TopScoreDocCollector or TopFieldCollector without lookup in the groups.
+ * -Second pass (topDocs): the slots are replayed into 
+ *  lucene's TopScoreDocCollector or TopFieldCollector. 
+ *  So the queue only holds numHits documents, 
+ *  the top-hits are exact and totalHits is the exact number of hits 
+ *  after collapsing.
+ * -Segments can also get collected by one collector each 
+ *  (concurrently), see {@link #merge(EscidocCollapseCollector[])}.
+ * -All state of duplicate-filtering belongs to the collector instance 
+ *  (see {@link DuplicateFilter}), each segment passed to setNextReader 
+ *  is checked to belong to the reader the collector was created for 
+ *  and resolved to its arrays once. 
+ *  So collectors of concurrent searches on different readers 
+ *  dont interfere.
+ *  
+ * @author MIH
+ */
+public final class EscidocCollapseCollector extends Collector {
+
+  /**
+   * Duplicate-identifiers and -distinguishers of one top-level reader 
+   * and the collapse-rule:
+   * -Documents without duplicate-identifier (ordinal 0) 
+   *  or with a duplicate-identifier found only once in the reader 
+   *  are not collapsed, each one is a hit of its own.
+   * -Of the other documents with the same duplicate-identifier 
+   *  only one is kept: the document with 
+   *  duplicate-distinguisher == distinguisherPriorityValue, 
+   *  otherwise (and between several such documents) 
+   *  the one with the lowest doc-id.
+   *  The choice does not depend on scores or sorting, 
+   *  so counting without scoring keeps the same documents.
+   * Arrays come from the FieldCache of the segment-readers, 
+   * so they are loaded once per segment and shared with sorting 
+   * and later reader generations. 
+   * Collectors resolve the group of a hit with the {@link Segment} 
+   * they get in setNextReader. 
+   * A group is identified by a group-id of the top-level reader, 
+   * the segment-ordinals of duplicate-identifiers found 
+   * in more than one document of the reader are mapped to it 
+   * by merging the sorted identifiers of the segments, 
+   * once per reader generation.
+   */
+  public static final class DuplicateFilter {
+
+    // FieldCache-array of duplicate-identifiers of a segment 
+    // - identifiers found more than once in the segment
+    private static final Map<int[], OpenBitSet> SHARED_IDENTIFIERS = 
+        Collections.synchronizedMap(new WeakHashMap<int[], OpenBitSet>());
+
+    // top-level reader - group-ids of the segment-ordinals per segment
+    private static final Map<IndexReader, GroupIds> GROUP_IDS = 
+        Collections.synchronizedMap(new WeakHashMap<IndexReader, GroupIds>());
+
+    final IndexReader[] subReaders;
+    final int[] docStarts;
+    final int maxDoc;
+    private final Segment[] segments;
+    private final Map<IndexReader, Segment> segmentsByReader = 
+                    new IdentityHashMap<IndexReader, Segment>();
+
+    public DuplicateFilter(IndexReader reader, 
+            String duplicateIdentifierField, 
+            String duplicateDistinguisherField, 
+            int distinguisherPriorityValue) throws IOException {
+      List<IndexReader> readers = new ArrayList<IndexReader>();
+      ReaderUtil.gatherSubReaders(readers, reader);
+      subReaders = readers.toArray(new IndexReader[readers.size()]);
+      docStarts = new int[subReaders.length];
+      FieldCache.StringIndex[] stringIndexes = 
+          new FieldCache.StringIndex[subReaders.length];
+      int docStart = 0;
+      for (int i = 0; i < subReaders.length; i++) {
+        docStarts[i] = docStart;
+        docStart += subReaders[i].maxDoc();
+        stringIndexes[i] = FieldCache.DEFAULT.getStringIndex(
+            subReaders[i], duplicateIdentifierField);
+      }
+      maxDoc = docStart;
+      int[][] groupIds = 
+          getGroupIds(reader, duplicateIdentifierField, stringIndexes);
+      segments = new Segment[subReaders.length];
+      for (int i = 0; i < subReaders.length; i++) {
+        segments[i] = new Segment(stringIndexes[i].order, groupIds[i], 
+            FieldCache.DEFAULT.getInts(
+                subReaders[i], duplicateDistinguisherField), 
+            distinguisherPriorityValue, docStarts[i]);
+        segmentsByReader.put(subReaders[i], segments[i]);
+      }
+    }
+
+    /**
+     * Get group-ids of the segment-ordinals from cache 
+     * or compute them.
+     */
+    private static int[][] getGroupIds(IndexReader reader, String field, 
+        FieldCache.StringIndex[] stringIndexes) {
+      GroupIds groupIds = GROUP_IDS.get(reader);
+      if (groupIds == null || !groupIds.field.equals(field)) {
+        groupIds = new GroupIds(field, mergeIdentifiers(stringIndexes));
+        GROUP_IDS.put(reader, groupIds);
+      }
+      return groupIds.ids;
+    }
+
+    /**
+     * Merge the sorted duplicate-identifiers of all segments, 
+     * give a group-id to each identifier found in more than one document.
+     * 
+     * @return per segment: group-id of each ordinal, 0 if not collapsible
+     */
+    private static int[][] mergeIdentifiers(
+        FieldCache.StringIndex[] stringIndexes) {
+      int[][] ids = new int[stringIndexes.length][];
+      OpenBitSet[] shared = new OpenBitSet[stringIndexes.length];
+      PriorityQueue<Cursor> queue = 
+          new PriorityQueue<Cursor>(Math.max(1, stringIndexes.length));
+      for (int i = 0; i < stringIndexes.length; i++) {
+        ids[i] = new int[stringIndexes[i].lookup.length];
+        shared[i] = getSharedIdentifiers(stringIndexes[i]);
+        // ordinal 0: documents without duplicate-identifier
+        if (stringIndexes[i].lookup.length > 1) {
+          queue.add(new Cursor(i, stringIndexes[i].lookup));
+        }
+      }
+      List<Cursor> group = new ArrayList<Cursor>();
+      int groupId = 0;
+      while (!queue.isEmpty()) {
+        String identifier = queue.peek().value();
+        boolean collapsible = false;
+        group.clear();
+        while (!queue.isEmpty() && queue.peek().value().equals(identifier)) {
+          Cursor cursor = queue.poll();
+          collapsible |= shared[cursor.segment].fastGet(cursor.ordinal);
+          group.add(cursor);
+        }
+        if (collapsible || group.size() > 1) {
+          groupId++;
+        }
+        for (Cursor cursor : group) {
+          if (collapsible || group.size() > 1) {
+            ids[cursor.segment][cursor.ordinal] = groupId;
+          }
+          if (++cursor.ordinal < cursor.lookup.length) {
+            queue.add(cursor);
+          }
+        }
+      }
+      return ids;
+    }
+
+    private static OpenBitSet getSharedIdentifiers(
+            FieldCache.StringIndex stringIndex) {
+      OpenBitSet shared = SHARED_IDENTIFIERS.get(stringIndex.order);
+      if (shared == null) {
+        OpenBitSet seen = new OpenBitSet(stringIndex.lookup.length);
+        shared = new OpenBitSet(stringIndex.lookup.length);
+        for (int ordinal : stringIndex.order) {
+          if (seen.fastGet(ordinal)) {
+            shared.fastSet(ordinal);
+          } else {
+            seen.fastSet(ordinal);
+          }
+        }
+        SHARED_IDENTIFIERS.put(stringIndex.order, shared);
+      }
+      return shared;
+    }
+
+    /**
+     * Get the arrays of a segment, 
+     * checks that the segment belongs to the reader 
+     * the filter was created for.
+     * 
+     * @param reader segment-reader passed to setNextReader
+     * @param docBase docBase passed to setNextReader
+     * @throws IllegalStateException if segment belongs to another reader
+     */
+    public Segment getSegment(IndexReader reader, int docBase) {
+      Segment segment = segmentsByReader.get(reader);
+      if (segment == null || segment.docBase != docBase) {
+        throw new IllegalStateException(
+            "segment does not belong to the reader of the collector");
+      }
+      return segment;
+    }
+
+    /**
+     * @param doc doc-id in the top-level reader
+     * @return Segment segment of the document
+     */
+    public Segment getSegment(int doc) {
+      return segments[ReaderUtil.subIndex(doc, docStarts)];
+    }
+
+    /**
+     * The collapse-rule: check if a document is kept 
+     * instead of another document of the same group.
+     * 
+     * @param priority true if doc has the priority-distinguisher
+     * @param doc doc-id in the top-level reader
+     * @param otherPriority true if otherDoc has the priority-distinguisher
+     * @param otherDoc doc-id in the top-level reader
+     * @return true if doc is kept instead of otherDoc
+     */
+    public static boolean isBetter(boolean priority, int doc, 
+        boolean otherPriority, int otherDoc) {
+      if (priority != otherPriority) {
+        return priority;
+      }
+      return doc < otherDoc;
+    }
+  }
+
+  /**
+   * Group-ids of the segment-ordinals of a top-level reader.
+   */
+  private static final class GroupIds {
+
+    final String field;
+    final int[][] ids;
+
+    GroupIds(String field, int[][] ids) {
+      this.field = field;
+      this.ids = ids;
+    }
+  }
+
+  /**
+   * Position in the sorted duplicate-identifiers of a segment.
+   */
+  private static final class Cursor implements Comparable<Cursor> {
+
+    final int segment;
+    final String[] lookup;
+    int ordinal = 1;
+
+    Cursor(int segment, String[] lookup) {
+      this.segment = segment;
+      this.lookup = lookup;
+    }
+
+    String value() {
+      return lookup[ordinal];
+    }
+
+    public int compareTo(Cursor other) {
+      return value().compareTo(other.value());
+    }
+  }
+
+  /**
+   * Duplicate-identifiers and -distinguishers of one segment, 
+   * read-only, shared by collectors searching the segment concurrently.
+   */
+  public static final class Segment {
+
+    private final int[] identifiers;
+    private final int[] groupIds;
+    private final int[] distinguishers;
+    private final int priorityValue;
+    final int docBase;
+
+    Segment(int[] identifiers, int[] groupIds, int[] distinguishers, 
+        int priorityValue, int docBase) {
+      this.identifiers = identifiers;
+      this.groupIds = groupIds;
+      this.distinguishers = distinguishers;
+      this.priorityValue = priorityValue;
+      this.docBase = docBase;
+    }
+
+    /**
+     * @param doc doc-id in the segment
+     * @return group-id of the document in the top-level reader, 
+     *         0 if the document cannot get collapsed
+     */
+    public int getGroup(int doc) {
+      return groupIds[identifiers[doc]];
+    }
+
+    /**
+     * @param doc doc-id in the segment
+     * @return true if the document has the priority-distinguisher
+     */
+    public boolean isPriority(int doc) {
+      return distinguishers[doc] == priorityValue;
+    }
+  }
+
+  /**
+   * The kept document of each group of collapsible hits, 
+   * see {@link DuplicateFilter} for the collapse-rule.
+   * Groups are mapped to their slot (doc-id, priority and score) 
+   * with a primitive open-addressing hashmap keyed by the group-id, 
+   * so memory is bounded by the number of groups in the result, 
+   * not by the size of the index.
+   * Not thread-safe, one instance per collector.
+   */
+  public static final class DuplicateGroups {
+
+    private final DuplicateFilter filter;
+    private final boolean keepScores;
+    private final GroupMap groups = new GroupMap();
+    private int[] slotGroups = new int[16];
+    private int[] slotDocs = new int[16];
+    private boolean[] slotPriorities = new boolean[16];
+    private float[] slotScores;
+    private int slotCount = 0;
+
+    /**
+     * @param filter duplicate-filter of the searched reader
+     * @param keepScores keep the score of the kept documents
+     */
+    public DuplicateGroups(DuplicateFilter filter, boolean keepScores) {
+      this.filter = filter;
+      this.keepScores = keepScores;
+      if (keepScores) {
+        slotScores = new float[16];
+      }
+    }
+
+    /**
+     * Add a collapsible document, 
+     * it replaces the kept document of its group if it is better.
+     * 
+     * @param group group-id of the document (> 0)
+     * @param doc doc-id in the top-level reader
+     * @param priority true if the document has the priority-distinguisher
+     * @param score score of the document (only kept if keepScores)
+     */
+    public void add(int group, int doc, boolean priority, float score) {
+      int slot = groups.putIfAbsent(group, slotCount);
+      if (slot < 0) {
+        addSlot(group, doc, priority, score);
+      } else if (DuplicateFilter.isBetter(
+          priority, doc, slotPriorities[slot], slotDocs[slot])) {
+        slotDocs[slot] = doc;
+        slotPriorities[slot] = priority;
+        if (keepScores) {
+          slotScores[slot] = score;
+        }
+      }
+    }
+
+    /**
+     * Add the kept documents of groups collected by another instance 
+     * (e.g. of another segment).
+     */
+    public void addAll(DuplicateGroups other) {
+      for (int slot = 0; slot < other.slotCount; slot++) {
+        add(other.slotGroups[slot], other.slotDocs[slot], 
+            other.slotPriorities[slot], 
+            other.keepScores ? other.slotScores[slot] : 0f);
+      }
+    }
+
+    /**
+     * Check if a document survives collapsing. 
+     * Documents of groups that were not collected are kept.
+     * 
+     * @param doc doc-id in the top-level reader
+     * @return false if another document of its group is kept
+     */
+    public boolean isKept(int doc) {
+      Segment segment = filter.getSegment(doc);
+      int group = segment.getGroup(doc - segment.docBase);
+      if (group == 0) {
+        return true;
+      }
+      int slot = groups.get(group);
+      return slot < 0 || slotDocs[slot] == doc;
+    }
+
+    /**
+     * @return number of groups (= number of kept documents)
+     */
+    public int size() {
+      return slotCount;
+    }
+
+    /**
+     * @return doc-ids of the kept documents in the top-level reader
+     */
+    public int[] getDocs() {
+      int[] docs = new int[slotCount];
+      System.arraycopy(slotDocs, 0, docs, 0, slotCount);
+      return docs;
+    }
+
+    private void addSlot(int group, int doc, boolean priority, float score) {
+      // double size (ArrayUtil.grow only adds 1/8)
+      if (slotCount == slotDocs.length) {
+        int[] groupIds = new int[slotCount * 2];
+        System.arraycopy(slotGroups, 0, groupIds, 0, slotCount);
+        slotGroups = groupIds;
+        int[] docs = new int[slotCount * 2];
+        System.arraycopy(slotDocs, 0, docs, 0, slotCount);
+        slotDocs = docs;
+        boolean[] priorities = new boolean[slotCount * 2];
+        System.arraycopy(slotPriorities, 0, priorities, 0, slotCount);
+        slotPriorities = priorities;
+        if (keepScores) {
+          float[] scores = new float[slotCount * 2];
+          System.arraycopy(slotScores, 0, scores, 0, slotCount);
+          slotScores = scores;
+        }
+      }
+      slotGroups[slotCount] = group;
+      slotDocs[slotCount] = doc;
+      slotPriorities[slotCount] = priority;
+      if (keepScores) {
+        slotScores[slotCount] = score;
+      }
+      slotCount++;
+    }
+
+    /**
+     * Replay the kept documents into a collector.
+     */
+    void replay(Collector collector) throws IOException {
+      EscidocCollapseCollector.replay(
+          collector, filter, slotDocs, slotScores, slotCount);
+    }
+  }
+
+  /**
+   * Open-addressing hashmap group-ordinal (> 0) - slot.
+   * Key and value are stored next to each other in one array, 
+   * so a lookup touches one cache-line.
+   */
+  private static final class GroupMap {
+
+    private int[] table = new int[32];
+    private int size = 0;
+
+    private static int hash(int key) {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get slot of group, add group with given slot if not in map.
+     * 
+     * @return slot of group or -1 if group was added.
+     */
+    int putIfAbsent(int key, int value) {
+      int mask = table.length - 2;
+      int i = (hash(key) << 1) & mask;
+      while (table[i] != 0) {
+        if (table[i] == key) {
+          return table[i + 1];
+        }
+        i = (i + 2) & mask;
+      }
+      table[i] = key;
+      table[i + 1] = value;
+      if (++size * 4 > table.length * 3 / 2) {
+        rehash();
+      }
+      return -1;
+    }
+
+    /**
+     * @return slot of group or -1 if group is not in map.
+     */
+    int get(int key) {
+      int mask = table.length - 2;
+      int i = (hash(key) << 1) & mask;
+      while (table[i] != 0) {
+        if (table[i] == key) {
+          return table[i + 1];
+        }
+        i = (i + 2) & mask;
+      }
+      return -1;
+    }
+
+    private void rehash() {
+      int[] oldTable = table;
+      table = new int[oldTable.length * 2];
+      int mask = table.length - 2;
+      for (int j = 0; j < oldTable.length; j += 2) {
+        if (oldTable[j] != 0) {
+          int i = (hash(oldTable[j]) << 1) & mask;
+          while (table[i] != 0) {
+            i = (i + 2) & mask;
+          }
+          table[i] = oldTable[j];
+          table[i + 1] = oldTable[j + 1];
+        }
+      }
+    }
+  }
+
+  /**
+   * Scorer returning the score of the replayed document.
+   */
+  private static final class ReplayScorer extends Scorer {
+
+    int doc = -1;
+    float score;
+
+    ReplayScorer() {
+      super((Weight) null);
+    }
+
+    @Override
+    public float score() {
+      return score;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int advance(int target) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final DuplicateFilter duplicateFilter;
+  private final Sort sort;
+  private final int numHits;
+  private final boolean trackDocScores;
+  private final boolean trackMaxScore;
+  private final boolean needsScores;
+  // collects the documents that cannot get collapsed 
+  // and the kept document of each group
+  private final TopDocsCollector< ? > collector;
+  private final DuplicateGroups groups;
+
+  private Scorer scorer;
+  private Segment segment;
+  private int docBase = 0;
+
+  private EscidocCollapseCollector(Sort sort, int numHits, 
+      boolean trackDocScores, boolean trackMaxScore, 
+      DuplicateFilter duplicateFilter) throws IOException {
+    this.duplicateFilter = duplicateFilter;
+    this.sort = sort;
+    this.numHits = numHits;
+    this.trackDocScores = trackDocScores;
+    this.trackMaxScore = trackMaxScore;
+    int queueSize = Math.max(1, 
+        Math.min(numHits, duplicateFilter.maxDoc));
+    // slots are replayed after collecting, so collect out of order
+    if (sort == null) {
+      collector = TopScoreDocCollector.create(queueSize, false);
+    } else {
+      collector = TopFieldCollector.create(sort, queueSize, true, 
+          trackDocScores, trackMaxScore, false);
+    }
+    boolean scores = sort == null || trackDocScores || trackMaxScore;
+    if (sort != null) {
+      for (SortField field : sort.getSort()) {
+        if (field.getType() == SortField.SCORE) {
+          scores = true;
+        }
+      }
+    }
+    this.needsScores = scores;
+    this.groups = new DuplicateGroups(duplicateFilter, needsScores);
+  }
+
+  /**
+   * Creates a collector sorting the groups by relevance.
+   */
+  public static EscidocCollapseCollector create(
+                                          int numHits, 
+                                          IndexReader reader, 
+                                          String duplicateIdentifierField, 
+                                          String duplicateDistinguisherField, 
+                                          int distinguisherPriorityVal) 
+                                                  throws IOException {
+    return new EscidocCollapseCollector(null, numHits, false, false, 
+        new DuplicateFilter(reader, duplicateIdentifierField, 
+            duplicateDistinguisherField, distinguisherPriorityVal));
+  }
+
+  /**
+   * Creates a collector sorting the groups by the given sort.
+   */
+  public static EscidocCollapseCollector create(Sort sort, int numHits, 
+                                          boolean trackDocScores, 
+                                          boolean trackMaxScore, 
+                                          IndexReader reader, 
+                                          String duplicateIdentifierField, 
+                                          String duplicateDistinguisherField, 
+                                          int distinguisherPriorityVal) 
+                                                  throws IOException {
+    return create(sort, numHits, trackDocScores, trackMaxScore, 
+        new DuplicateFilter(reader, duplicateIdentifierField, 
+            duplicateDistinguisherField, distinguisherPriorityVal));
+  }
+
+  /**
+   * Creates a collector with a duplicate-filter 
+   * shared with other collectors (e.g. one collector per segment).
+   * 
+   * @param sort sort or null (sort by relevance)
+   */
+  public static EscidocCollapseCollector create(Sort sort, int numHits, 
+                                          boolean trackDocScores, 
+                                          boolean trackMaxScore, 
+                                          DuplicateFilter duplicateFilter) 
+                                                  throws IOException {
+    if (sort != null && sort.fields.length == 0) {
+      throw new IllegalArgumentException("Sort must contain at least one field");
+    }
+    return new EscidocCollapseCollector(sort, numHits, 
+        trackDocScores, trackMaxScore, duplicateFilter);
+  }
+
+  @Override
+  public void setScorer(Scorer scorer) throws IOException {
+    this.scorer = scorer;
+    collector.setScorer(scorer);
+  }
+
+  @Override
+  public void setNextReader(IndexReader reader, int base) throws IOException {
+    segment = duplicateFilter.getSegment(reader, base);
+    docBase = base;
+    collector.setNextReader(reader, base);
+  }
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return true;
+  }
+
+  /**
+   * Documents of groups that cannot get collapsed go directly 
+   * into the collector, 
+   * other documents are kept in the slot of their group 
+   * if they are better than the document already kept.
+   */
+  @Override
+  public void collect(int doc) throws IOException {
+    int group = segment.getGroup(doc);
+    if (group == 0) {
+      collector.collect(doc);
+      return;
+    }
+    groups.add(group, docBase + doc, segment.isPriority(doc), 
+        needsScores ? scorer.score() : 0f);
+  }
+
+  /**
+   * Returns the top hits after collapsing, 
+   * totalHits is the number of hits after collapsing.
+   * Replays the slots into the collector first.
+   * <b>NOTE:</b> you cannot call this method more than once 
+   * for each search execution.
+   */
+  public TopDocs topDocs() throws IOException {
+    groups.replay(collector);
+    return collector.topDocs();
+  }
+
+  /**
+   * Merge collectors that collected different segments of the same reader 
+   * (with the same sort and duplicate-filter), 
+   * returns the same top hits and totalHits as one collector 
+   * collecting all segments.
+   * <b>NOTE:</b> the collectors cannot get used anymore afterwards.
+   */
+  public static TopDocs merge(EscidocCollapseCollector[] collectors) 
+                                                        throws IOException {
+    EscidocCollapseCollector first = collectors[0];
+    EscidocCollapseCollector merged = new EscidocCollapseCollector(
+        first.sort, first.numHits, first.trackDocScores, 
+        first.trackMaxScore, first.duplicateFilter);
+    int uncollapsed = 0;
+    for (EscidocCollapseCollector segmentCollector : collectors) {
+      // top documents that cannot get collapsed
+      TopDocs segmentDocs = segmentCollector.collector.topDocs();
+      uncollapsed += segmentDocs.totalHits;
+      int[] docs = new int[segmentDocs.scoreDocs.length];
+      float[] scores = new float[docs.length];
+      for (int i = 0; i < docs.length; i++) {
+        docs[i] = segmentDocs.scoreDocs[i].doc;
+        scores[i] = segmentDocs.scoreDocs[i].score;
+      }
+      replay(merged.collector, merged.duplicateFilter, 
+          docs, merged.needsScores ? scores : null, docs.length);
+      merged.groups.addAll(segmentCollector.groups);
+    }
+    TopDocs topDocs = merged.topDocs();
+    int totalHits = uncollapsed + merged.groups.size();
+    if (topDocs instanceof TopFieldDocs) {
+      return new TopFieldDocs(totalHits, topDocs.scoreDocs, 
+          ((TopFieldDocs) topDocs).fields, topDocs.getMaxScore());
+    }
+    return new TopDocs(totalHits, topDocs.scoreDocs, topDocs.getMaxScore());
+  }
+
+  /**
+   * Replays documents into a collector, 
+   * switching the segment whenever a document 
+   * belongs to another segment (documents are mostly in collecting order, 
+   * so this mostly happens once per segment).
+   */
+  private static void replay(Collector collector, 
+      DuplicateFilter duplicateFilter, 
+      int[] docs, float[] scores, int count) throws IOException {
+    IndexReader[] subReaders = duplicateFilter.subReaders;
+    int[] docStarts = duplicateFilter.docStarts;
+    ReplayScorer replayScorer = new ReplayScorer();
+    int segmentStart = 0;
+    int segmentEnd = 0;
+    for (int i = 0; i < count; i++) {
+      int doc = docs[i];
+      if (doc < segmentStart || doc >= segmentEnd) {
+        int segment = ReaderUtil.subIndex(doc, docStarts);
+        segmentStart = docStarts[segment];
+        segmentEnd = segmentStart + subReaders[segment].maxDoc();
+        collector.setNextReader(subReaders[segment], segmentStart);
+        collector.setScorer(replayScorer);
+      }
+      replayScorer.doc = doc - segmentStart;
+      if (scores != null) {
+        replayScorer.score = scores[i];
+      }
+      collector.collect(replayScorer.doc);
+    }
+  }
+
+}
@@ -19,6 +19,9 @@ package org.osuosl.srw;
 import gov.loc.www.zing.srw.ExtraDataType;
 import gov.loc.www.zing.srw.utils.Stream;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -34,12 +37,44 @@ public class ResolvingQueryResult extends QueryResult {
 
     static Log log= LogFactory.getLog(ResolvingQueryResult.class);
     /**
-     *  Identifiers
+     *  Size of the pages identifiers are stored in
+     */
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     *  Identifiers, stored sparse in pages of PAGE_SIZE identifiers.
+     *  Only pages containing identifiers are allocated,
+     *  so memory doesnt depend on numberOfRecords.
+     */
+    private Map<Long, Stream[]> pages = new HashMap<Long, Stream[]>();
+
+    /**
+     * @deprecated identifiers are stored sparse,
+     *             use {@link #getIdentifier(long)}.
      */
-    private Stream[] identifiers;
-    public Stream[] getIdentifiers(){return identifiers;}
+    @Deprecated
+    public Stream[] getIdentifiers(){
+        Stream[] identifiers = new Stream[(int) numberOfRecords];
+        for (int i = 0; i < identifiers.length; i++) {
+            identifiers[i] = getIdentifier(i);
+        }
+        return identifiers;
+    }
     public void setIdentifiers(Stream[] inp){
-        identifiers = inp;
+        pages.clear();
+        numberOfRecords = 0;
+        if (inp != null) {
+            numberOfRecords = inp.length;
+            setIdentifiers(0, inp);
+        }
+    }
+
+    /**
+     *  NumberOfRecords
+     */
+    private long numberOfRecords = 0;
+    public long getNumberOfRecords() {
+        return numberOfRecords;
     }
 
     /**
@@ -51,6 +86,24 @@ public class ResolvingQueryResult extends QueryResult {
         extraDataType = inp;
     }
 
+    /**
+     *  ExtraResponseData (xml-fragment added to the searchRetrieveResponse)
+     */
+    private String extraResponseData;
+    public String getExtraResponseData(){return extraResponseData;}
+    public void setExtraResponseData(String inp){
+        extraResponseData = inp;
+    }
+
+    /**
+     *  Partial (collecting hits was stopped at the search-timeout)
+     */
+    private boolean partial = false;
+    public boolean isPartial(){return partial;}
+    public void setPartial(boolean inp){
+        partial = inp;
+    }
+
     /**
      *  Resolver
      */
@@ -63,22 +116,85 @@ public class ResolvingQueryResult extends QueryResult {
     public ResolvingQueryResult() {}
 
     public ResolvingQueryResult(Stream[] identifiers) {
-        this.identifiers = identifiers;
+        setIdentifiers(identifiers);
     }
 
-    public long getNumberOfRecords() {
+    /**
+     * Count-only result without identifiers (maximumRecords=0).
+     *
+     * @param numberOfRecords number of records found
+     */
+    public ResolvingQueryResult(long numberOfRecords) {
+        this.numberOfRecords = numberOfRecords;
+    }
 
-        if(identifiers == null)
-            return 0;
+    /**
+     * Result containing only the identifiers of the requested records.
+     *
+     * @param numberOfRecords number of records found
+     * @param offset position of the first identifier (0-based)
+     * @param identifiers identifiers of the requested records
+     */
+    public ResolvingQueryResult(long numberOfRecords, long offset, Stream[] identifiers) {
+        this.numberOfRecords = numberOfRecords;
+        setIdentifiers(offset, identifiers);
+    }
 
-        return identifiers.length;
+    /**
+     * Store identifiers starting at position offset.
+     *
+     * @param offset position of the first identifier (0-based)
+     * @param identifiers identifiers
+     */
+    public void setIdentifiers(long offset, Stream[] identifiers) {
+        if (identifiers == null) {
+            return;
+        }
+        for (int i = 0; i < identifiers.length; i++) {
+            setIdentifier(offset + i, identifiers[i]);
+        }
+    }
+
+    /**
+     * Store identifier at position index.
+     *
+     * @param index position (0-based)
+     * @param identifier identifier
+     */
+    public void setIdentifier(long index, Stream identifier) {
+        if (identifier == null) {
+            return;
+        }
+        Long pageIndex = Long.valueOf(index / PAGE_SIZE);
+        Stream[] page = pages.get(pageIndex);
+        if (page == null) {
+            page = new Stream[PAGE_SIZE];
+            pages.put(pageIndex, page);
+        }
+        page[(int) (index % PAGE_SIZE)] = identifier;
+    }
+
+    /**
+     * Get identifier at position index.
+     *
+     * @param index position (0-based)
+     * @return Stream identifier or null if not stored
+     */
+    public Stream getIdentifier(long index) {
+        Stream[] page = pages.get(Long.valueOf(index / PAGE_SIZE));
+        if (page == null) {
+            return null;
+        }
+        return page[(int) (index % PAGE_SIZE)];
     }
 
     public RecordIterator newRecordIterator(long index, int numRecs, String schemaId, ExtraDataType extraDataType) throws InstantiationException {
 
         // create new array with subset of identifiers
     	Stream[] subset = new Stream[numRecs];
-        System.arraycopy(identifiers, (int)index, subset, 0, numRecs);
+        for (int i = 0; i < numRecs; i++) {
+            subset[i] = getIdentifier(index + i);
+        }
 
         return new ResolvingRecordIterator(
                 subset,
@@ -88,10 +88,13 @@ public class SRWDatabaseImpl extends ORG.oclc.os.SRW.SRWDatabase{
     }
 
     /**
-     *  Not implemented.
+     *  Returns the extraResponseData the translator set in the result.
      */
     public String getExtraResponseData(
             QueryResult queryresult, SearchRetrieveRequestType searchretrieverequesttype) {
+        if (queryresult instanceof ResolvingQueryResult) {
+            return ((ResolvingQueryResult) queryresult).getExtraResponseData();
+        }
         return null;
     }
     /**
@@ -21,7 +21,6 @@ import gov.loc.www.zing.srw.ScanRequestType;
 import gov.loc.www.zing.srw.TermType;
 import gov.loc.www.zing.srw.utils.Stream;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -45,7 +44,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Directory;
 import org.osuosl.srw.CQLTranslator;
 import org.osuosl.srw.ResolvingQueryResult;
 import org.osuosl.srw.SRWDiagnostic;
@@ -58,6 +57,7 @@ import org.z3950.zing.cql.CQLTermNode;
 
 import ORG.oclc.os.SRW.QueryResult;
 import de.escidoc.sb.srw.Constants;
+import de.escidoc.sb.srw.lucene.IndexDirectoryFactory;
 import de.escidoc.sb.srw.lucene.document.LazyFieldSelector;
 
 /**
@@ -117,20 +117,24 @@ public class LuceneTranslator implements CQLTranslator {
            identifierTerm = temp;
         }
 
+        IndexDirectoryFactory.getInstance().configure(indexPath, properties);
+
     }
 
     public QueryResult search(CQLNode queryRoot, ExtraDataType extraDataType) throws SRWDiagnostic {
 
     	Stream[] identifiers = null;
         IndexSearcher searcher = null;
+        Directory directory = null;
         try {
             //convert the CQL search to lucene search
             Query query=makeQuery(queryRoot);
             log.info("lucene search="+query);
 
             // perform search
-            searcher = new IndexSearcher(FSDirectory.open(
-                    new File(indexPath)));
+            directory = IndexDirectoryFactory.getInstance()
+                    .acquireDirectory(indexPath);
+            searcher = new IndexSearcher(directory);
             TopDocs results = searcher.search(query, 1000000);
             int size = results.totalHits;
 
@@ -163,6 +167,14 @@ public class LuceneTranslator implements CQLTranslator {
                 }
                 searcher = null;
             }
+            if (directory != null) {
+                try {
+                    IndexDirectoryFactory.getInstance()
+                            .releaseDirectory(directory);
+                } catch (IOException e) {
+                    log.error("Exception while releasing lucene index directory", e);
+                }
+            }
         }
 
         return new ResolvingQueryResult(identifiers);
@@ -180,6 +192,7 @@ public class LuceneTranslator implements CQLTranslator {
         TermType[] response = new TermType[0];
         Map termMap = new HashMap();
         IndexSearcher searcher = null;
+        Directory directory = null;
 
         try {
             //convert the CQL search to lucene search
@@ -194,8 +207,9 @@ public class LuceneTranslator implements CQLTranslator {
             boolean any = queryRoot.getRelation().toCQL().equalsIgnoreCase("any");
 
             // perform search
-            searcher = new IndexSearcher(FSDirectory.open(
-                    new File(indexPath)));
+            directory = IndexDirectoryFactory.getInstance()
+                    .acquireDirectory(indexPath);
+            searcher = new IndexSearcher(directory);
             TopDocs results = searcher.search(query, 1000000);
             int size = results.scoreDocs.length;
 
@@ -245,9 +259,16 @@ public class LuceneTranslator implements CQLTranslator {
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
-            if (searcher != null) {
-                searcher.close();
-                searcher = null;
+            try {
+                if (searcher != null) {
+                    searcher.close();
+                    searcher = null;
+                }
+            } finally {
+                if (directory != null) {
+                    IndexDirectoryFactory.getInstance()
+                            .releaseDirectory(directory);
+                }
             }
         }
 
@@ -0,0 +1,234 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.impl.cookie.BasicClientCookie;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs HttpClientPool against a stub http-server on localhost: 
+ * -connections are kept alive and reused
+ * -the response is streamed to the StreamHandler, cookie is sent
+ * -status 404 fails with HttpStatusException, status 503 with IOException,
+ *  the pool is still usable afterwards
+ * -read-timeout and refused connections fail within the timeout
+ * -changing the limits lets running requests finish on the old pool
+ * 
+ * Run with ant test, exits with an exception if a check fails.
+ * 
+ * @author MIH
+ */
+public final class HttpClientPoolTest {
+
+    private static final int TIMEOUT = 1000;
+
+    /**
+     * Reads the response into a String.
+     */
+    private static final HttpClientPool.StreamHandler<String> HANDLER = 
+        new HttpClientPool.StreamHandler<String>() {
+            public String handle(final InputStream in, 
+                    final String contentType) throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return contentType + ":" + out.toString("UTF-8");
+            }
+        };
+
+    /**
+     * Utility class.
+     */
+    private HttpClientPoolTest() {
+    }
+
+    /**
+     * @param args
+     *            none
+     * @throws Exception
+     *             check failed
+     */
+    public static void main(final String[] args) throws Exception {
+        final Set<String> clientAddresses = 
+            Collections.synchronizedSet(new HashSet<String>());
+        HttpServer server = 
+            HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/stub", new HttpHandler() {
+            public void handle(final HttpExchange exchange) 
+                                                throws IOException {
+                clientAddresses.add(
+                        exchange.getRemoteAddress().toString());
+                String query = exchange.getRequestURI().getQuery();
+                int status = 200;
+                if (query.startsWith("status=")) {
+                    status = Integer.parseInt(query.substring(7));
+                } else if (query.equals("sleep") || query.equals("slow")) {
+                    try {
+                        Thread.sleep(query.equals("sleep") 
+                                ? TIMEOUT * 3 : TIMEOUT / 2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] body = ("<result>" + query + " " 
+                        + exchange.getRequestHeaders().getFirst("Cookie") 
+                        + "</result>").getBytes("UTF-8");
+                exchange.getResponseHeaders().add(
+                        "Content-Type", "text/xml");
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" 
+                + server.getAddress().getPort() + "/stub?";
+            HttpClientPool pool = HttpClientPool.getInstance();
+
+            // keep-alive: sequential requests use one connection
+            for (int i = 0; i < 10; i++) {
+                String result = pool.get(new URL(base + "q" + i), 
+                        new BasicClientCookie("escidocCookie", "h" + i), 
+                        TIMEOUT, TIMEOUT, HANDLER);
+                check(result.equals(
+                        "text/xml:<result>q" + i + " escidocCookie=h" + i 
+                        + "</result>"), "unexpected response " + result);
+            }
+            check(clientAddresses.size() == 1, 
+                    "connection not reused, client-addresses: " 
+                    + clientAddresses);
+
+            // non-2xx
+            long failed = pool.getFailedRequests();
+            try {
+                pool.get(new URL(base + "status=404"), null, 
+                        TIMEOUT, TIMEOUT, HANDLER);
+                check(false, "status 404 not reported");
+            } catch (HttpClientPool.HttpStatusException e) {
+                check(e.getStatusCode() == 404, 
+                        "wrong status " + e.getStatusCode());
+            }
+            try {
+                pool.get(new URL(base + "status=503"), null, 
+                        TIMEOUT, TIMEOUT, HANDLER);
+                check(false, "status 503 not reported");
+            } catch (IOException e) {
+                check(e.getMessage().indexOf("503") >= 0, 
+                        "wrong message " + e.getMessage());
+            }
+            check(pool.getFailedRequests() == failed + 2, 
+                    "failed requests not counted: " + pool.getStatistics());
+            check(pool.get(new URL(base + "after"), null, 
+                    TIMEOUT, TIMEOUT, HANDLER).indexOf("after") >= 0, 
+                    "pool not usable after failed requests");
+
+            // read-timeout
+            long time = System.currentTimeMillis();
+            try {
+                pool.get(new URL(base + "sleep"), null, 
+                        TIMEOUT, TIMEOUT, HANDLER);
+                check(false, "read-timeout not reached");
+            } catch (IOException e) {
+                time = System.currentTimeMillis() - time;
+                check(time < TIMEOUT * 2, 
+                        "read-timeout took " + time + " ms");
+            }
+
+            // connection refused
+            try {
+                pool.get(new URL("http://127.0.0.1:1/stub?refused"), null, 
+                        TIMEOUT, TIMEOUT, HANDLER);
+                check(false, "refused connection not reported");
+            } catch (IOException e) {
+                check(true, null);
+            }
+            // new limits while a request is running
+            final URL slow = new URL(base + "slow");
+            Future<String> running = executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return HttpClientPool.getInstance().get(
+                            slow, null, TIMEOUT, TIMEOUT, HANDLER);
+                }
+            });
+            Thread.sleep(TIMEOUT / 5);
+            pool.setMaxConnections(HttpClientPool.DEFAULT_MAX_CONNECTIONS + 1, 
+                    HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE + 1);
+            check(running.get().indexOf("slow") >= 0, 
+                    "running request failed after changing limits");
+            check(pool.get(new URL(base + "changed"), null, 
+                    TIMEOUT, TIMEOUT, HANDLER).indexOf("changed") >= 0, 
+                    "pool not usable after changing limits");
+
+            check(pool.getActiveRequests() == 0, 
+                    "active requests left: " + pool.getStatistics());
+            System.out.println("HttpClientPoolTest passed: " 
+                    + pool.getStatistics());
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param condition
+     *            condition
+     * @param message
+     *            message if condition is false
+     */
+    private static void check(final boolean condition, final String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+}
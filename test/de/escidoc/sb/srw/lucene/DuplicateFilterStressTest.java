@@ -0,0 +1,282 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at license/ESCIDOC.LICENSE
+ * or http://www.escidoc.de/license.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at license/ESCIDOC.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright 2011 Fachinformationszentrum Karlsruhe Gesellschaft
+ * fuer wissenschaftlich-technische Information mbH and Max-Planck-
+ * Gesellschaft zur Foerderung der Wissenschaft e.V.  
+ * All rights reserved.  Use is subject to license terms.
+ */
+package de.escidoc.sb.srw.lucene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.EscidocCollapseCollector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * Stress-test for the duplicate-filtering searches: 
+ * 16 threads search three multi-segment indexes 
+ * (like different reader-generations or srw-databases) at the same time 
+ * with EscidocCollapseCollector, ConcurrentSegmentSearcher 
+ * and DistinctCountCollector, sorted by relevance and by field. 
+ * Every result has to be identical to the result of the same search 
+ * executed single-threaded before.
+ * 
+ * Run with ant test, exits with an exception if a result differs.
+ * 
+ * @author MIH
+ */
+public final class DuplicateFilterStressTest {
+
+    private static final String IDENTIFIER = "distinction.rootPid";
+
+    private static final String DISTINGUISHER = "distinction.type";
+
+    private static final int THREADS = 16;
+
+    private static final int SEARCHES_PER_THREAD = 300;
+
+    private static final int QUERIES = 4;
+
+    private static final int NUM_HITS = 50;
+
+    private static final Sort SORT = 
+        new Sort(new SortField("sort", SortField.STRING));
+
+    /**
+     * Utility class.
+     */
+    private DuplicateFilterStressTest() {
+    }
+
+    /**
+     * @param args
+     *            none
+     * @throws Exception
+     *             result differs
+     */
+    public static void main(final String[] args) throws Exception {
+        final IndexSearcher[] searchers = {
+                createSearcher(1, 30000, 20000), 
+                createSearcher(2, 45000, 10000), 
+                createSearcher(3, 15000, 14500) };
+        final ConcurrentSegmentSearcher concurrentSearcher = 
+            ConcurrentSegmentSearcher.getInstance("stress", 4, 2);
+
+        // expected results, single-threaded
+        final Map<String, String> expected = new HashMap<String, String>();
+        for (int i = 0; i < searchers.length; i++) {
+            for (int q = 0; q < QUERIES; q++) {
+                for (int s = 0; s < 2; s++) {
+                    String result = search(searchers[i], q, s == 1);
+                    check(result.equals(search(concurrentSearcher, 
+                            searchers[i], q, s == 1)), 
+                        "concurrent search differs from sequential search");
+                    check(result.startsWith(count(searchers[i], q) + ":"), 
+                        "count differs from totalHits");
+                    expected.put(i + "/" + q + "/" + s, result);
+                }
+            }
+        }
+
+        final AtomicInteger searches = new AtomicInteger();
+        final AtomicInteger mismatches = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future< ? >> futures = new ArrayList<Future< ? >>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int k = 0; k < SEARCHES_PER_THREAD; k++) {
+                        int i = random.nextInt(searchers.length);
+                        int q = random.nextInt(QUERIES);
+                        int s = random.nextInt(2);
+                        String result = expected.get(i + "/" + q + "/" + s);
+                        try {
+                            String actual;
+                            switch (random.nextInt(3)) {
+                            case 0:
+                                actual = search(searchers[i], q, s == 1);
+                                break;
+                            case 1:
+                                actual = search(concurrentSearcher, 
+                                        searchers[i], q, s == 1);
+                                break;
+                            default:
+                                actual = count(searchers[i], q) + ":";
+                                result = result.substring(
+                                        0, result.indexOf(':') + 1);
+                            }
+                            if (!result.equals(actual)) {
+                                mismatches.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                        searches.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future< ? > future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            ConcurrentSegmentSearcher.release("stress");
+        }
+        check(mismatches.get() == 0, 
+            mismatches + " of " + searches + " searches returned other results");
+        System.out.println("DuplicateFilterStressTest passed: " 
+                + searches + " concurrent searches, " 
+                + THREADS + " threads");
+    }
+
+    /**
+     * Create index with several segments, 
+     * documents with and without duplicate-identifier.
+     */
+    private static IndexSearcher createSearcher(final long seed, 
+            final int documents, final int identifiers) throws Exception {
+        Directory directory = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(
+                Version.LUCENE_34, new KeywordAnalyzer());
+        config.setMaxBufferedDocs(documents / 7);
+        config.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+        IndexWriter writer = new IndexWriter(directory, config);
+        Random random = new Random(seed);
+        for (int i = 0; i < documents; i++) {
+            Document document = new Document();
+            if (random.nextInt(10) > 0) {
+                document.add(new Field(IDENTIFIER, 
+                        "escidoc:" + random.nextInt(identifiers), 
+                        Field.Store.NO, Field.Index.NOT_ANALYZED));
+            }
+            document.add(new Field(DISTINGUISHER, 
+                    Integer.toString(random.nextInt(2)), 
+                    Field.Store.NO, Field.Index.NOT_ANALYZED));
+            document.add(new Field("sort", "v" + random.nextInt(5000), 
+                    Field.Store.NO, Field.Index.NOT_ANALYZED));
+            document.add(new Field("query", 
+                    "q" + random.nextInt(QUERIES), 
+                    Field.Store.NO, Field.Index.NOT_ANALYZED));
+            writer.addDocument(document);
+        }
+        writer.close();
+        return new IndexSearcher(IndexReader.open(directory));
+    }
+
+    private static Query query(final int q) {
+        return new TermQuery(new Term("query", "q" + q));
+    }
+
+    /**
+     * Search with EscidocCollapseCollector.
+     * 
+     * @return String totalHits and top-hits
+     */
+    private static String search(final IndexSearcher searcher, 
+            final int q, final boolean sorted) throws Exception {
+        EscidocCollapseCollector collector;
+        if (sorted) {
+            collector = EscidocCollapseCollector.create(SORT, NUM_HITS, 
+                    false, false, searcher.getIndexReader(), 
+                    IDENTIFIER, DISTINGUISHER, 0);
+        } else {
+            collector = EscidocCollapseCollector.create(NUM_HITS, 
+                    searcher.getIndexReader(), IDENTIFIER, DISTINGUISHER, 0);
+        }
+        searcher.search(query(q), collector);
+        return toString(collector.topDocs());
+    }
+
+    /**
+     * Search segments concurrently.
+     * 
+     * @return String totalHits and top-hits
+     */
+    private static String search(final ConcurrentSegmentSearcher 
+            concurrentSearcher, final IndexSearcher searcher, 
+            final int q, final boolean sorted) throws Exception {
+        return toString(concurrentSearcher.search(searcher, query(q), null, 
+                NUM_HITS, sorted ? SORT : null, false, 
+                IDENTIFIER, DISTINGUISHER, 0, new SearchDeadline(0)));
+    }
+
+    /**
+     * Count hits with DistinctCountCollector.
+     * 
+     * @return int number of hits after collapsing duplicates
+     */
+    private static int count(final IndexSearcher searcher, final int q) 
+                                                        throws Exception {
+        DistinctCountCollector collector = new DistinctCountCollector(
+                searcher.getIndexReader(), IDENTIFIER, DISTINGUISHER, 0);
+        searcher.search(query(q), collector);
+        return collector.getDistinctHits();
+    }
+
+    private static String toString(final TopDocs topDocs) {
+        StringBuilder result = new StringBuilder();
+        result.append(topDocs.totalHits).append(':');
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            result.append(scoreDoc.doc).append('/')
+                .append(scoreDoc.score).append(',');
+        }
+        return result.toString();
+    }
+
+    private static void check(final boolean condition, final String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+}